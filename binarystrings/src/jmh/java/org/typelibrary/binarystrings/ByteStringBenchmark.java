@@ -0,0 +1,136 @@
+package org.typelibrary.binarystrings;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ByteString operations on strings from the size of a DNS label to that of a capture
+ * segment. Searches look for a value that only occurs at the far end of the string, so
+ * they scan all of it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ByteStringBenchmark {
+
+    @Param({ "16", "256", "4096", "1048576" })
+    public int size;
+
+    private ByteString string;
+    private ByteString copy;
+    private ByteString rope;
+    private ByteString pattern;
+    private ByteString headPattern;
+    private ByteBuffer buffer;
+    private byte last;
+
+    @Setup
+    public void setup() {
+        byte[] bytes = new byte[size];
+        Random random = new Random(size);
+        for (int i=0; i<size; ++i) {
+            // Printable range, like names and text records
+            bytes[i] = (byte) ('a' + random.nextInt(26));
+        }
+        // Unique tail so that searches scan the whole string
+        bytes[size - 1] = (byte) 0xFF;
+        last = bytes[size - 1];
+        string = ByteString.from(bytes);
+        copy = ByteString.from(bytes);
+        rope = string.substring(0, size / 2).concat(string.substring(size / 2));
+        pattern = string.substring(size - Math.min(size, 8));
+        headPattern = string.substring(0, Math.min(size, 8));
+        buffer = ByteBuffer.wrap(bytes);
+    }
+
+    @Benchmark
+    public ByteString concat() {
+        return string.concat(copy);
+    }
+
+    @Benchmark
+    public ByteString substring() {
+        return string.substring(1, size - 1);
+    }
+
+    @Benchmark
+    public int indexOfByte() {
+        return string.indexOf(last);
+    }
+
+    @Benchmark
+    public int lastIndexOfByte() {
+        return string.lastIndexOf(string.byteAt(0));
+    }
+
+    @Benchmark
+    public int indexOfString() {
+        return string.indexOf(pattern);
+    }
+
+    @Benchmark
+    public int lastIndexOfString() {
+        return string.lastIndexOf(headPattern);
+    }
+
+    @Benchmark
+    public int indexOfStringRope() {
+        return rope.indexOf(pattern);
+    }
+
+    @Benchmark
+    public boolean equalsFlat() {
+        return string.equals(copy);
+    }
+
+    @Benchmark
+    public boolean equalsRope() {
+        return rope.equals(copy);
+    }
+
+    /**
+     * hashCode is cached, so this measures computing it.
+     */
+    @Benchmark
+    public int hashCodeUncached() {
+        return string.hash(0);
+    }
+
+    @Benchmark
+    public long hash64() {
+        return string.hash64();
+    }
+
+    @Benchmark
+    public boolean isAscii() {
+        return string.isAscii();
+    }
+
+    @Benchmark
+    public String toUtf8String() {
+        return string.substring(0, size - 1).toUtf8String();
+    }
+
+    @Benchmark
+    public ByteString fromByteBuffer() {
+        buffer.clear();
+        return ByteString.from(buffer);
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.typelibrary.binarystrings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building ByteStrings with the output streams, and reading them back with
+ * {@link ByteString#asInputStream()}, in writes and reads of a typical message size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StreamBenchmark {
+
+    @Param({ "4096", "65536", "1048576" })
+    public int size;
+
+    @Param({ "512" })
+    public int blockSize;
+
+    private byte[] block;
+    private byte[] readBuffer;
+    private ByteString string;
+    private ByteString rope;
+
+    @Setup
+    public void setup() {
+        block = new byte[blockSize];
+        for (int i=0; i<blockSize; ++i) {
+            block[i] = (byte) i;
+        }
+        readBuffer = new byte[blockSize];
+        byte[] bytes = new byte[size];
+        for (int i=0; i<size; ++i) {
+            bytes[i] = (byte) i;
+        }
+        string = ByteString.from(bytes);
+        rope = string.substring(0, size / 2).concat(string.substring(size / 2));
+    }
+
+    @Benchmark
+    public ByteString outputStream() throws IOException {
+        ByteStringOutputStream out = new ByteStringOutputStream();
+        for (int i=0; i<size; i+=blockSize) {
+            out.write(block, 0, blockSize);
+        }
+        return out.toByteString();
+    }
+
+    @Benchmark
+    public ByteString unsynchronizedOutputStream() {
+        UnsynchronizedByteStringOutputStream out = new UnsynchronizedByteStringOutputStream();
+        for (int i=0; i<size; i+=blockSize) {
+            out.write(block, 0, blockSize);
+        }
+        return out.toByteString();
+    }
+
+    @Benchmark
+    public long inputStream() throws IOException {
+        return read(string.asInputStream());
+    }
+
+    @Benchmark
+    public long inputStreamRope() throws IOException {
+        return read(rope.asInputStream());
+    }
+
+    private long read(InputStream in) throws IOException {
+        long total = 0;
+        int count;
+        while ((count = in.read(readBuffer, 0, blockSize)) >= 0) {
+            total += count;
+        }
+        return total;
+    }
+
+}
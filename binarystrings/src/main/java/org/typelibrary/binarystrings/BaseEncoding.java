@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Binary to text encodings of <a href="http://tools.ietf.org/html/rfc4648">RFC 4648</a>:
+ * base16 (hex), base32hex and base64.
+ *
+ * <p>
+ * Encoding works directly on ByteStrings and their slices, including rope and mapped
+ * strings, and produces each String with a single char array. Decoding produces a
+ * ByteString without an intermediate copy, ignores ASCII whitespace so that zone file
+ * fields split over several lines decode as one, and rejects any other character outside
+ * the alphabet with an IllegalArgumentException. Base16 and base32hex decode both upper and
+ * lower case.
+ * </p>
+ *
+ * <p>
+ * Large inputs can be encoded and decoded incrementally with {@link #encodingStream(Writer)}
+ * and {@link #decodingStream(Reader)}.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and thread safe. Variants are created with {@link #omitPadding()}
+ * and {@link #lowerCase()}.
+ * </p>
+ */
+public final class BaseEncoding {
+
+    /**
+     * Upper case hex, as used for DS digests and TLSA certificate data.
+     */
+    public static final BaseEncoding BASE16 = new BaseEncoding("0123456789ABCDEF", 4,
+            (char) 0);
+
+    /**
+     * Base32 with the extended hex alphabet and padding. NSEC3 hashed owner names use it
+     * without padding, {@code BASE32_HEX.omitPadding()}.
+     */
+    public static final BaseEncoding BASE32_HEX = new BaseEncoding(
+            "0123456789ABCDEFGHIJKLMNOPQRSTUV", 5, '=');
+
+    /**
+     * Standard base64 with padding, as used for DNSKEY public keys and RRSIG signatures.
+     */
+    public static final BaseEncoding BASE64 = new BaseEncoding(
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/", 6, '=');
+
+    private static final int STREAM_BLOCK_SIZE = 3 * 5 * 64;
+
+    private final char[] alphabet;
+    private final int bitsPerChar;
+    private final int mask;
+
+    /**
+     * Number of chars that encode a whole number of bytes.
+     */
+    private final int charsPerBlock;
+
+    /**
+     * The padding character, or 0 if encoded strings are not padded.
+     */
+    private final char padding;
+
+    /**
+     * Value of each ASCII char, -1 if it is not in the alphabet.
+     */
+    private final byte[] decodeTable = new byte[128];
+
+    private BaseEncoding(String alphabet, int bitsPerChar, char padding) {
+        this.alphabet = alphabet.toCharArray();
+        this.bitsPerChar = bitsPerChar;
+        this.mask = (1 << bitsPerChar) - 1;
+        this.charsPerBlock = 8 / gcd(8, bitsPerChar);
+        this.padding = padding;
+        Arrays.fill(decodeTable, (byte) -1);
+        for (int i=0; i<this.alphabet.length; ++i) {
+            char c = this.alphabet[i];
+            decodeTable[c] = (byte) i;
+            // Letters decode in either case unless both cases are in the alphabet
+            if (bitsPerChar < 6) {
+                decodeTable[Character.toLowerCase(c)] = (byte) i;
+                decodeTable[Character.toUpperCase(c)] = (byte) i;
+            }
+        }
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Returns this encoding without padding characters. Decoding accepts input with or
+     * without padding either way.
+     */
+    public BaseEncoding omitPadding() {
+        if (padding == 0)
+            return this;
+        return new BaseEncoding(new String(alphabet), bitsPerChar, (char) 0);
+    }
+
+    /**
+     * Returns this encoding with a lower case alphabet. Only meaningful for base16 and
+     * base32hex, whose alphabets have a single case.
+     */
+    public BaseEncoding lowerCase() {
+        if (bitsPerChar == 6)
+            throw new IllegalStateException("Alphabet has both cases");
+        return new BaseEncoding(new String(alphabet).toLowerCase(), bitsPerChar, padding);
+    }
+
+    /**
+     * Returns the number of chars encoding count bytes, including padding.
+     */
+    public int encodedLength(int count) {
+        long chars = ((long) count * 8 + bitsPerChar - 1) / bitsPerChar;
+        if (padding != 0)
+            chars = (chars + charsPerBlock - 1) / charsPerBlock * charsPerBlock;
+        if (chars > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Encoded length too large: " + chars);
+        return (int) chars;
+    }
+
+    public String encode(ByteString string) {
+        return encode(string, 0, string.length());
+    }
+
+    /**
+     * Encodes the bytes of string from beginIndex to endIndex - 1.
+     */
+    public String encode(ByteString string, int beginIndex, int endIndex) {
+        return new String(encodeToChars(string, beginIndex, endIndex));
+    }
+
+    /**
+     * Encodes the bytes of string from beginIndex to endIndex - 1 and appends the result
+     * to target.
+     */
+    public void encode(ByteString string, int beginIndex, int endIndex, StringBuilder target) {
+        target.append(encodeToChars(string, beginIndex, endIndex));
+    }
+
+    private char[] encodeToChars(ByteString string, int beginIndex, int endIndex) {
+        if (beginIndex < 0 || endIndex > string.length() || beginIndex > endIndex)
+            throw new IndexOutOfBoundsException("beginIndex=" + beginIndex + ", endIndex="
+                    + endIndex + ", length=" + string.length());
+        final char[] chars = new char[encodedLength(endIndex - beginIndex)];
+        final Encoder encoder = new Encoder();
+        string.forEachChunk(beginIndex, endIndex, new ByteChunkConsumer() {
+            @Override
+            public void accept(byte[] bytes, int offset, int length) {
+                encoder.update(bytes, offset, length, chars);
+            }
+        });
+        encoder.finish(chars);
+        return chars;
+    }
+
+    /**
+     * Decodes chars, ignoring ASCII whitespace.
+     *
+     * @param chars the encoded text
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if chars is not a valid encoding
+     */
+    public ByteString decode(CharSequence chars) {
+        int length = chars.length();
+        ByteStringBuilder builder = new ByteStringBuilder((int) ((long) length * bitsPerChar / 8));
+        Decoder decoder = new Decoder();
+        for (int i=0; i<length; ++i) {
+            int b = decoder.update(chars.charAt(i));
+            if (b >= 0)
+                builder.putByte(b);
+        }
+        decoder.finish();
+        return builder.toByteString();
+    }
+
+    /**
+     * Returns an output stream which encodes the bytes written to it and writes the text to
+     * writer. Closing the stream writes any final partial block, with padding, and closes
+     * writer.
+     */
+    public OutputStream encodingStream(final Writer writer) {
+        if (writer == null)
+            throw new NullPointerException("Writer cannot be null");
+        return new OutputStream() {
+
+            private final Encoder encoder = new Encoder();
+            private final char[] chars = new char[STREAM_BLOCK_SIZE * 8 / bitsPerChar + 8];
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                if (offset < 0 || length < 0 || length > bytes.length - offset)
+                    throw new IndexOutOfBoundsException();
+                while (length > 0) {
+                    int count = Math.min(length, STREAM_BLOCK_SIZE);
+                    encoder.position = 0;
+                    encoder.update(bytes, offset, count, chars);
+                    writer.write(chars, 0, encoder.position);
+                    offset += count;
+                    length -= count;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                writer.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                encoder.position = 0;
+                encoder.finish(chars);
+                writer.write(chars, 0, encoder.position);
+                writer.close();
+            }
+
+        };
+    }
+
+    /**
+     * Returns an input stream which reads text from reader and decodes it, ignoring ASCII
+     * whitespace. An invalid encoding is reported as an IOException whose cause is an
+     * IllegalArgumentException.
+     */
+    public InputStream decodingStream(final Reader reader) {
+        if (reader == null)
+            throw new NullPointerException("Reader cannot be null");
+        return new InputStream() {
+
+            private final Decoder decoder = new Decoder();
+            private final char[] chars = new char[STREAM_BLOCK_SIZE];
+            private final byte[] decoded = new byte[STREAM_BLOCK_SIZE];
+            private int pos;
+            private int limit;
+            private boolean eof;
+
+            private boolean fill() throws IOException {
+                while (pos == limit) {
+                    if (eof)
+                        return false;
+                    pos = 0;
+                    limit = 0;
+                    int count = reader.read(chars);
+                    try {
+                        if (count < 0) {
+                            eof = true;
+                            decoder.finish();
+                        } else {
+                            for (int i=0; i<count; ++i) {
+                                int b = decoder.update(chars[i]);
+                                if (b >= 0)
+                                    decoded[limit++] = (byte) b;
+                            }
+                        }
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (!fill())
+                    return -1;
+                return decoded[pos++] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (offset < 0 || length < 0 || length > bytes.length - offset)
+                    throw new IndexOutOfBoundsException();
+                if (length == 0)
+                    return 0;
+                if (!fill())
+                    return -1;
+                int count = Math.min(length, limit - pos);
+                System.arraycopy(decoded, pos, bytes, offset, count);
+                pos += count;
+                return count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+
+        };
+    }
+
+    @Override
+    public String toString() {
+        switch (bitsPerChar) {
+        case 4:
+            return "BASE16";
+        case 5:
+            return padding != 0 ? "BASE32_HEX" : "BASE32_HEX.omitPadding()";
+        default:
+            return padding != 0 ? "BASE64" : "BASE64.omitPadding()";
+        }
+    }
+
+    /**
+     * Encoding state carried between pieces of input.
+     */
+    private final class Encoder {
+
+        private int bits;
+        private int bitCount;
+        private int charsInBlock;
+        int position;
+
+        void update(byte[] bytes, int offset, int length, char[] chars) {
+            char[] localAlphabet = alphabet;
+            int localBitsPerChar = bitsPerChar;
+            int localMask = mask;
+            int localBits = bits;
+            int localBitCount = bitCount;
+            int pos = position;
+            for (int i=offset, end=offset+length; i<end; ++i) {
+                localBits = localBits << 8 | (bytes[i] & 0xFF);
+                localBitCount += 8;
+                while (localBitCount >= localBitsPerChar) {
+                    localBitCount -= localBitsPerChar;
+                    chars[pos++] = localAlphabet[(localBits >>> localBitCount) & localMask];
+                }
+            }
+            charsInBlock = (charsInBlock + pos - position) % charsPerBlock;
+            bits = localBits & ((1 << localBitCount) - 1);
+            bitCount = localBitCount;
+            position = pos;
+        }
+
+        void finish(char[] chars) {
+            int pos = position;
+            if (bitCount > 0) {
+                chars[pos++] = alphabet[(bits << (bitsPerChar - bitCount)) & mask];
+                charsInBlock = (charsInBlock + 1) % charsPerBlock;
+            }
+            if (padding != 0 && charsInBlock > 0) {
+                for (; charsInBlock<charsPerBlock; ++charsInBlock) {
+                    chars[pos++] = padding;
+                }
+            }
+            bits = 0;
+            bitCount = 0;
+            charsInBlock = 0;
+            position = pos;
+        }
+
+    }
+
+    /**
+     * Decoding state carried between pieces of input.
+     */
+    private final class Decoder {
+
+        private int bits;
+        private int bitCount;
+        private int charsInBlock;
+        private boolean padded;
+
+        /**
+         * Consumes c and returns the byte it completes, or -1 if it does not complete one.
+         */
+        int update(char c) {
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r')
+                return -1;
+            if (c == '=' && bitsPerChar != 4) {
+                padded = true;
+                return -1;
+            }
+            int value = c < 128 ? decodeTable[c] : -1;
+            if (value < 0)
+                throw new IllegalArgumentException("Invalid character '" + c + "' in " + BaseEncoding.this);
+            if (padded)
+                throw new IllegalArgumentException("Data after padding in " + BaseEncoding.this);
+            bits = bits << bitsPerChar | value;
+            bitCount += bitsPerChar;
+            charsInBlock = (charsInBlock + 1) % charsPerBlock;
+            if (bitCount < 8)
+                return -1;
+            bitCount -= 8;
+            int b = bits >>> bitCount;
+            bits &= (1 << bitCount) - 1;
+            return b;
+        }
+
+        void finish() {
+            // The last char of a partial block must complete a byte, and leave only zero bits
+            if (charsInBlock > 0) {
+                int previousBytes = (charsInBlock - 1) * bitsPerChar / 8;
+                int bytes = charsInBlock * bitsPerChar / 8;
+                if (bytes == previousBytes)
+                    throw new IllegalArgumentException("Truncated input for " + BaseEncoding.this);
+            }
+            if (bits != 0)
+                throw new IllegalArgumentException("Non-zero trailing bits in " + BaseEncoding.this);
+            bits = 0;
+            bitCount = 0;
+            charsInBlock = 0;
+            padded = false;
+        }
+
+    }
+
+}
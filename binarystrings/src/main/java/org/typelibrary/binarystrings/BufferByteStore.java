@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Store backed by a ByteBuffer without an accessible array, typically a direct buffer. The
+ * bytes stay where they are; reads use absolute gets or duplicates of the buffer, so the
+ * position and limit of the wrapped buffer are never changed.
+ */
+final class BufferByteStore extends ByteStore {
+
+    private final ByteBuffer buffer;
+    private final int footprint;
+
+    /**
+     * @param buffer a buffer whose position is 0 and whose limit is the length of the store
+     * @param footprint the capacity of the buffer that was originally wrapped
+     */
+    BufferByteStore(ByteBuffer buffer, int footprint) {
+        this.buffer = buffer;
+        this.footprint = footprint;
+    }
+
+    @Override
+    int length() {
+        return buffer.limit();
+    }
+
+    @Override
+    int depth() {
+        return 0;
+    }
+
+    @Override
+    int footprint() {
+        return footprint;
+    }
+
+    @Override
+    byte byteAt(int index) {
+        return buffer.get(index);
+    }
+
+    private ByteBuffer range(int index, int count) {
+        ByteBuffer range = buffer.duplicate();
+        range.limit(index + count);
+        range.position(index);
+        return range;
+    }
+
+    @Override
+    void copyTo(int index, byte[] target, int targetOffset, int count) {
+        range(index, count).get(target, targetOffset, count);
+    }
+
+    @Override
+    void copyTo(int index, ByteBuffer target, int count) {
+        target.put(range(index, count));
+    }
+
+    @Override
+    ByteString substring(int beginIndex, int endIndex) {
+        return new ByteString(new BufferByteStore(range(beginIndex, endIndex - beginIndex).slice(),
+                footprint));
+    }
+
+    @Override
+    ByteBuffer asReadOnlyByteBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    int hash(int h) {
+        ByteBuffer localBuffer = buffer;
+        int length = localBuffer.limit();
+        for (int i=0; i<length; ++i) {
+            h = 37 * h + (int) localBuffer.get(i);
+        }
+        return h;
+    }
+
+    @Override
+    void forEach(int beginIndex, int endIndex, ByteConsumer consumer) {
+        ByteBuffer localBuffer = buffer;
+        for (int i=beginIndex; i<endIndex; ++i) {
+            consumer.accept(localBuffer.get(i));
+        }
+    }
+
+    @Override
+    int indexOf(byte value, int fromIndex) {
+        ByteBuffer localBuffer = buffer;
+        int length = localBuffer.limit();
+        for (int i=Math.max(fromIndex, 0); i<length; ++i) {
+            if (localBuffer.get(i) == value)
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    int lastIndexOf(byte value, int fromIndex) {
+        ByteBuffer localBuffer = buffer;
+        for (int i=Math.min(fromIndex, localBuffer.limit() - 1); i>=0; --i) {
+            if (localBuffer.get(i) == value)
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    boolean regionMatches(int index, byte[] other, int otherOffset, int count) {
+        ByteBuffer localBuffer = buffer;
+        for (int i=index, j=otherOffset, k=0; k<count; ++i, ++j, ++k) {
+            if (localBuffer.get(i) != other[j])
+                return false;
+        }
+        return true;
+    }
+
+}
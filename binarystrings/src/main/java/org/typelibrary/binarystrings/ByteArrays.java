@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Word-at-a-time operations on byte arrays.
+ *
+ * <p>
+ * On Java 9 and later, eight bytes are read at a time as a little-endian long through a
+ * heap ByteBuffer, whose getLong the JIT compiles to a single bounds checked load. The
+ * remaining bytes are handled one at a time. Java 7 and 8 assemble such a long a byte at a
+ * time, which is slower than comparing the bytes directly, so there every byte is handled
+ * one at a time.
+ * </p>
+ */
+final class ByteArrays {
+
+    private ByteArrays() {}
+
+    private static final boolean WORD_AT_A_TIME = isJava9OrLater();
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /**
+     * Each byte value mapped to its ASCII lower case.
+     */
+    private static final byte[] LOWER_ASCII = new byte[256];
+
+    static {
+        for (int i=0; i<256; ++i) {
+            LOWER_ASCII[i] = (byte) (i >= 'A' && i <= 'Z' ? i + ('a' - 'A') : i);
+        }
+    }
+
+    private static boolean isJava9OrLater() {
+        try {
+            // "1.7" and "1.8" before Java 9, "9" and up after
+            return !System.getProperty("java.specification.version", "1.").startsWith("1.");
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    private static ByteBuffer littleEndian(byte[] array) {
+        return ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads eight bytes starting at index as a little-endian long, so that the byte at index
+     * is the least significant byte. Unlike the scans below, this is used on all versions.
+     */
+    static long readLongLittleEndian(byte[] array, int index) {
+        return (array[index] & 0xFFL) | (array[index + 1] & 0xFFL) << 8
+                | (array[index + 2] & 0xFFL) << 16 | (array[index + 3] & 0xFFL) << 24
+                | (array[index + 4] & 0xFFL) << 32 | (array[index + 5] & 0xFFL) << 40
+                | (array[index + 6] & 0xFFL) << 48 | (long) array[index + 7] << 56;
+    }
+
+    /**
+     * Reads four bytes starting at index as a little-endian int.
+     */
+    static int readIntLittleEndian(byte[] array, int index) {
+        return (array[index] & 0xFF) | (array[index + 1] & 0xFF) << 8
+                | (array[index + 2] & 0xFF) << 16 | array[index + 3] << 24;
+    }
+
+    /**
+     * Returns a word with the high bit of each byte set where the corresponding byte of word
+     * is zero, and all other bits clear. Unlike the shorter (x - 0x01..) &amp; ~x form this
+     * has no false positives, so it can be scanned from either end.
+     */
+    private static long zeroBytes(long word) {
+        long tmp = (word & LOW_BITS) + LOW_BITS;
+        return ~(tmp | word | LOW_BITS);
+    }
+
+    /**
+     * Returns the relative index of the first byte that differs between a[aIndex, aIndex +
+     * length) and b[bIndex, bIndex + length), or -1 if the ranges are equal.
+     */
+    static int mismatch(byte[] a, int aIndex, byte[] b, int bIndex, int length) {
+        int i = 0;
+        if (WORD_AT_A_TIME) {
+            ByteBuffer aWords = littleEndian(a);
+            ByteBuffer bWords = littleEndian(b);
+            for (int limit = length - 8; i <= limit; i += 8) {
+                long diff = aWords.getLong(aIndex + i) ^ bWords.getLong(bIndex + i);
+                if (diff != 0)
+                    return i + (Long.numberOfTrailingZeros(diff) >>> 3);
+            }
+        }
+        for (; i < length; ++i) {
+            if (a[aIndex + i] != b[bIndex + i])
+                return i;
+        }
+        return -1;
+    }
+
+    static byte toLowerAscii(byte value) {
+        return LOWER_ASCII[value & 0xFF];
+    }
+
+    /**
+     * Returns a word with the high bit of each byte set where the corresponding byte of word
+     * is an ASCII upper case letter, and all other bits clear.
+     */
+    private static long upperAsciiBytes(long word) {
+        long heptets = word & LOW_BITS;
+        long atLeastA = heptets + (0x80 - 'A') * ONES;
+        long aboveZ = heptets + (0x80 - 'Z' - 1) * ONES;
+        return atLeastA & ~aboveZ & ~word & HIGH_BITS;
+    }
+
+    /**
+     * Returns word with each ASCII upper case letter byte changed to lower case.
+     */
+    private static long toLowerAscii(long word) {
+        return word | upperAsciiBytes(word) >>> 2;
+    }
+
+    /**
+     * Returns the relative index of the first byte that differs, ignoring ASCII case,
+     * between a[aIndex, aIndex + length) and b[bIndex, bIndex + length), or -1.
+     */
+    static int mismatchIgnoreAsciiCase(byte[] a, int aIndex, byte[] b, int bIndex, int length) {
+        int i = 0;
+        if (WORD_AT_A_TIME) {
+            ByteBuffer aWords = littleEndian(a);
+            ByteBuffer bWords = littleEndian(b);
+            for (int limit = length - 8; i <= limit; i += 8) {
+                long diff = toLowerAscii(aWords.getLong(aIndex + i))
+                        ^ toLowerAscii(bWords.getLong(bIndex + i));
+                if (diff != 0)
+                    return i + (Long.numberOfTrailingZeros(diff) >>> 3);
+            }
+        }
+        byte[] lower = LOWER_ASCII;
+        for (; i < length; ++i) {
+            if (lower[a[aIndex + i] & 0xFF] != lower[b[bIndex + i] & 0xFF])
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first ASCII upper case letter in array[fromIndex, toIndex), or
+     * -1.
+     */
+    static int indexOfUpperAscii(byte[] array, int fromIndex, int toIndex) {
+        int i = fromIndex;
+        if (WORD_AT_A_TIME) {
+            ByteBuffer words = littleEndian(array);
+            for (int limit = toIndex - 8; i <= limit; i += 8) {
+                long found = upperAsciiBytes(words.getLong(i));
+                if (found != 0)
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < toIndex; ++i) {
+            if (array[i] >= 'A' && array[i] <= 'Z')
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if no byte in array[fromIndex, toIndex) has its high bit set.
+     */
+    static boolean isAscii(byte[] array, int fromIndex, int toIndex) {
+        int i = fromIndex;
+        if (WORD_AT_A_TIME) {
+            ByteBuffer words = littleEndian(array);
+            for (int limit = toIndex - 8; i <= limit; i += 8) {
+                if ((words.getLong(i) & HIGH_BITS) != 0)
+                    return false;
+            }
+        }
+        for (; i < toIndex; ++i) {
+            if (array[i] < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the first occurrence of value in array[fromIndex, toIndex), or -1.
+     */
+    static int indexOf(byte[] array, int fromIndex, int toIndex, byte value) {
+        int i = fromIndex;
+        if (WORD_AT_A_TIME) {
+            ByteBuffer words = littleEndian(array);
+            long pattern = (value & 0xFFL) * ONES;
+            for (int limit = toIndex - 8; i <= limit; i += 8) {
+                long found = zeroBytes(words.getLong(i) ^ pattern);
+                if (found != 0)
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < toIndex; ++i) {
+            if (array[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of value in array[fromIndex, toIndex), or -1.
+     */
+    static int lastIndexOf(byte[] array, int fromIndex, int toIndex, byte value) {
+        int i = toIndex;
+        if (WORD_AT_A_TIME) {
+            ByteBuffer words = littleEndian(array);
+            long pattern = (value & 0xFFL) * ONES;
+            for (; i - 8 >= fromIndex; i -= 8) {
+                long found = zeroBytes(words.getLong(i - 8) ^ pattern);
+                if (found != 0)
+                    return i - 1 - (Long.numberOfLeadingZeros(found) >>> 3);
+            }
+        }
+        for (--i; i >= fromIndex; --i) {
+            if (array[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+}
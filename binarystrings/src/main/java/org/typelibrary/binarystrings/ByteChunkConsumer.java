@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+/**
+ * Receives the bytes of a ByteString a contiguous chunk at a time.
+ *
+ * <p>
+ * The array may be the one backing the ByteString, so it must not be modified, and it must
+ * not be retained after accept returns since it may also be a reused temporary buffer.
+ * </p>
+ */
+public interface ByteChunkConsumer {
+
+    void accept(byte[] bytes, int offset, int length);
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Backing storage for a ByteString whose bytes are not held in a single contiguous on-heap
+ * array. A ByteString without a store uses its own array, offset and length fields.
+ *
+ * <p>
+ * Indexes passed to a store are relative to the start of the store and have already been
+ * bounds checked by the owning ByteString. The default implementations are byte-at-a-time;
+ * subclasses override the ones they can do better.
+ * </p>
+ */
+abstract class ByteStore {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private volatile byte[] flattened;
+
+    abstract int length();
+
+    /**
+     * Returns the depth of the store when viewed as a tree of ByteStrings. Stores that do not
+     * delegate to other ByteStrings have a depth of 0.
+     */
+    abstract int depth();
+
+    abstract int footprint();
+
+    abstract byte byteAt(int index);
+
+    abstract void copyTo(int index, byte[] target, int targetOffset, int count);
+
+    abstract void copyTo(int index, ByteBuffer target, int count);
+
+    abstract ByteString substring(int beginIndex, int endIndex);
+
+    ByteBuffer asReadOnlyByteBuffer() {
+        return ByteBuffer.wrap(flatten()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Adds read-only views of the bytes of this store to buffers, in order. By default this
+     * is the single buffer from {@link #asReadOnlyByteBuffer()}.
+     */
+    void addByteBuffers(List<ByteBuffer> buffers) {
+        buffers.add(asReadOnlyByteBuffer());
+    }
+
+    /**
+     * Continues the ByteString hash code computation over the bytes of this store.
+     */
+    int hash(int h) {
+        int length = length();
+        for (int i=0; i<length; ++i) {
+            h = 37 * h + (int) byteAt(i);
+        }
+        return h;
+    }
+
+    void forEach(int beginIndex, int endIndex, ByteConsumer consumer) {
+        for (int i=beginIndex; i<endIndex; ++i) {
+            consumer.accept(byteAt(i));
+        }
+    }
+
+    /**
+     * Passes a non-empty range to consumer. By default the range is copied out a block at a
+     * time into a temporary array.
+     */
+    void forEachChunk(int beginIndex, int endIndex, ByteChunkConsumer consumer) {
+        byte[] block = new byte[Math.min(endIndex - beginIndex, BLOCK_SIZE)];
+        for (int i=beginIndex; i<endIndex; i+=block.length) {
+            int count = Math.min(block.length, endIndex - i);
+            copyTo(i, block, 0, count);
+            consumer.accept(block, 0, count);
+        }
+    }
+
+    int indexOf(byte value, int fromIndex) {
+        int length = length();
+        for (int i=Math.max(fromIndex, 0); i<length; ++i) {
+            if (byteAt(i) == value)
+                return i;
+        }
+        return -1;
+    }
+
+    int lastIndexOf(byte value, int fromIndex) {
+        for (int i=Math.min(fromIndex, length() - 1); i>=0; --i) {
+            if (byteAt(i) == value)
+                return i;
+        }
+        return -1;
+    }
+
+    boolean regionMatches(int index, byte[] other, int otherOffset, int count) {
+        for (int i=0; i<count; ++i) {
+            if (byteAt(index + i) != other[otherOffset + i])
+                return false;
+        }
+        return true;
+    }
+
+    boolean regionMatches(int index, ByteString other, int otherIndex, int count) {
+        for (int i=0; i<count; ++i) {
+            if (byteAt(index + i) != other.byteAt(otherIndex + i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Same contract as {@link ByteString#indexOf(byte[], int, int, int)}.
+     */
+    int indexOf(byte[] target, int targetOffset, int targetCount, int fromIndex) {
+
+        int length = length();
+        if (fromIndex >= length)
+            return targetCount == 0 ? length : -1;
+        if (fromIndex < 0)
+            fromIndex = 0;
+        if (targetCount == 0)
+            return fromIndex;
+
+        byte first = target[targetOffset];
+        int max = length - targetCount;
+        for (int i = fromIndex; i <= max; ++i) {
+            i = indexOf(first, i);
+            if (i < 0 || i > max)
+                return -1;
+            if (regionMatches(i + 1, target, targetOffset + 1, targetCount - 1))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Same contract as {@link ByteString#lastIndexOf(byte[], int, int, int)}.
+     */
+    int lastIndexOf(byte[] target, int targetOffset, int targetCount, int fromIndex) {
+
+        int rightIndex = length() - targetCount;
+        if (fromIndex < 0)
+            return -1;
+        if (fromIndex > rightIndex)
+            fromIndex = rightIndex;
+        if (targetCount == 0)
+            return fromIndex;
+
+        byte first = target[targetOffset];
+        for (int i = fromIndex; i >= 0; --i) {
+            i = lastIndexOf(first, i);
+            if (i < 0)
+                return -1;
+            if (regionMatches(i + 1, target, targetOffset + 1, targetCount - 1))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the contents of this store as a single array. The array is built on first use
+     * and then cached, so it must never be modified or handed out to callers.
+     */
+    final byte[] flatten() {
+        byte[] localFlattened = flattened;
+        if (localFlattened == null) {
+            localFlattened = new byte[length()];
+            copyTo(0, localFlattened, 0, localFlattened.length);
+            flattened = localFlattened;
+        }
+        return localFlattened;
+    }
+
+}
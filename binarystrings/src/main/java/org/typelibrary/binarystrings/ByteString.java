@@ -15,10 +15,21 @@
  */
 package org.typelibrary.binarystrings;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Immutable sequence of bytes. Equivalent to java.lang.String but for byte values instead
@@ -28,10 +39,8 @@ import java.util.Arrays;
  * 
  * <p>
  * <ul>
- * <li> Doesn't implement Comparable&lt;T&gt;
  * <li> Doesn't implement Serializable
  * <li> Doesn't implement equivalent to CharSequence
- * <li> No equivalent builder classes such as StringBuilder/StringBuffer
  * <li> No intern capability
  * <li> No character/character-string specific methods.
  * <ul>
@@ -50,23 +59,39 @@ import java.util.Arrays;
  * <li> Doesn't implement Iterable.
  * <li> Doesn't implement Utf8 convenience methods
  * <li> Doesn't support CodedInputStream
- * <li> Doesn't implement Rope based ByteString.
- * <ul>
- * <li> Rope based ByteString has roughly O(1) vs. O(n)
- *      performance for concatenation, OutputStream (which concatenates writes) and certain
- *      other operations.
- * </ul>
  * </ul>
  * </p>
+ * 
+ * <p>
+ * Concatenations that produce strings of at least 128 bytes return a rope based ByteString,
+ * a balanced tree which references the concatenated strings instead of copying them. A rope
+ * is only flattened into a contiguous array when one is required, such as by
+ * {@link #toByteBuffer()} or {@link #toString(Charset)}, and the flattened array is then
+ * reused.
+ * </p>
+ * 
+ * <p>
+ * {@link ByteStringBuilder} is the equivalent of StringBuilder.
+ * </p>
  */
-public final class ByteString {
+public final class ByteString implements Comparable<ByteString> {
 
     public static final ByteString EMPTY = new ByteString(0, 0, new byte[0]);
+
+    private static final int MAPPED_SEGMENT_SIZE = 1 << 30;
+
+    /**
+     * Size of the temporary blocks store based strings are copied into by bulk operations
+     * that work on arrays.
+     */
+    private static final int BLOCK_SIZE = 256;
     
     private final byte[] string;
     private final int offset;
     private final int length;
+    private final ByteStore store;
     private int hashCodeCache = 0;
+    private boolean hashCodeIsZero;
 
     public ByteString(byte[] source) {
         this(source, 0, source != null ? source.length : 0);
@@ -77,6 +102,7 @@ public final class ByteString {
         this.string = new byte[length];
         this.offset = 0;
         this.length = length;
+        this.store = null;
         System.arraycopy(source, offset, this.string, 0, length);
     }
 
@@ -86,7 +112,8 @@ public final class ByteString {
         this.string = new byte[source.length];
         this.offset = 0;
         this.length = source.length;
-        System.arraycopy(source.string, source.offset, this.string, 0, source.length);
+        this.store = null;
+        source.copyTo(0, this.string, 0, source.length);
     }
 
     public ByteString(ByteString source, int offset, int length) {
@@ -95,14 +122,23 @@ public final class ByteString {
         this.string = new byte[length];
         this.offset = 0;
         this.length = length;
+        this.store = null;
         if (length > 0)
-            System.arraycopy(source.string, offset, this.string, 0, length);
+            source.copyTo(offset, this.string, 0, length);
     }
     
     ByteString(int offset, int length, byte[] source) {
         this.string = source;
         this.offset = offset;
         this.length = length;
+        this.store = null;
+    }
+
+    ByteString(ByteStore store) {
+        this.string = null;
+        this.offset = 0;
+        this.length = store.length();
+        this.store = store;
     }
 
     /**
@@ -122,8 +158,10 @@ public final class ByteString {
      */
     public byte byteAt(int index) {
         if (index < 0) throw new IndexOutOfBoundsException("Index cannot be < 0");
-        if (index > string.length)
-            throw new IndexOutOfBoundsException("Index cannot be > length. index=" + index + ", length=" + length);
+        if (index >= length)
+            throw new IndexOutOfBoundsException("Index cannot be >= length. index=" + index + ", length=" + length);
+        if (store != null)
+            return store.byteAt(index);
         return string[offset+index];
     }
 
@@ -179,10 +217,13 @@ public final class ByteString {
                     + ", source.length=" + source.length);
         if (length == 0)
             return this;
-        byte[] newString = new byte[this.length + length];
-        System.arraycopy(this.string, this.offset, newString, 0, this.length);
-        System.arraycopy(source, offset, newString, this.length, length);
-        return new ByteString(0, newString.length, newString);
+        if (store == null && this.length + length < RopeByteStore.CONCATENATE_BY_COPY_SIZE) {
+            byte[] newString = new byte[this.length + length];
+            System.arraycopy(this.string, this.offset, newString, 0, this.length);
+            System.arraycopy(source, offset, newString, this.length, length);
+            return new ByteString(0, newString.length, newString);
+        }
+        return RopeByteStore.concatenate(this, from(source, offset, length));
     }
 
     /**
@@ -203,6 +244,11 @@ public final class ByteString {
      * concatenation.
      * </p>
      * 
+     * <p>
+     * If the concatenated length is at least 128 bytes, the returned string is rope based
+     * and shares the bytes of this string and the argument strings.
+     * </p>
+     * 
      * @param strings the ByteStrings that are to be concatenated to the end of this string.
      * @return a string that represents the concatenation of this object's bytes followed by 
      *         the string argument's bytes.
@@ -212,17 +258,24 @@ public final class ByteString {
     public ByteString concat(ByteString... strings) {
         if (strings.length == 0)
             return this;
-        int totalLength = string.length;
+        long totalLength = length;
         for (ByteString string : strings) {
             totalLength += string.length;
         }
         if (totalLength == length)
             return this;
-        byte[] newString = new byte[totalLength];
-        System.arraycopy(this.string, this.offset, newString, 0, this.length);
+        if (totalLength >= RopeByteStore.CONCATENATE_BY_COPY_SIZE) {
+            ByteString result = this;
+            for (ByteString string : strings) {
+                result = RopeByteStore.concatenate(result, string);
+            }
+            return result;
+        }
+        byte[] newString = new byte[(int) totalLength];
+        copyTo(0, newString, 0, this.length);
         int newOffset = this.length;
         for (ByteString string : strings) {
-            System.arraycopy(string.string, string.offset, newString, newOffset, string.length);
+            string.copyTo(0, newString, newOffset, string.length);
             newOffset += string.length;
         }
         return new ByteString(0, newString.length, newString);
@@ -240,7 +293,7 @@ public final class ByteString {
     public boolean contains(ByteString string) {
         if (string == null)
             throw new NullPointerException("String cannot be null");
-        return indexOf(string.string, string.offset, string.length, 0) > -1;
+        return indexOf(string, 0) > -1;
     }
 
     /**
@@ -283,7 +336,7 @@ public final class ByteString {
      *         object as determined by the {@link #equals} method.
      */
     public boolean endsWith(ByteString suffix) {
-        return startsWith(suffix.string, suffix.offset, suffix.length, length - suffix.length);
+        return startsWith(suffix, length - suffix.length);
     }
 
     /**
@@ -317,21 +370,112 @@ public final class ByteString {
     }
     
     public int copyTo(byte[] buffer, int offset) {
+        if (store != null) {
+            if (offset < 0 || buffer.length - offset < length)
+                throw new IndexOutOfBoundsException();
+            store.copyTo(0, buffer, offset, length);
+            return length;
+        }
         System.arraycopy(string, this.offset, buffer, offset, length);
         return length;
     }
 
     public int copyTo(ByteBuffer buffer) {
+        if (store != null) {
+            if (buffer.remaining() < length)
+                throw new BufferOverflowException();
+            store.copyTo(0, buffer, length);
+            return length;
+        }
         buffer.put(string, offset, length);
         return length;
     }
 
+    void copyTo(int index, byte[] target, int targetOffset, int count) {
+        if (store != null)
+            store.copyTo(index, target, targetOffset, count);
+        else
+            System.arraycopy(string, offset + index, target, targetOffset, count);
+    }
+
+    void copyTo(int index, ByteBuffer target, int count) {
+        if (store != null)
+            store.copyTo(index, target, count);
+        else
+            target.put(string, offset + index, count);
+    }
+
+    /**
+     * Passes each byte of this string to consumer, in order.
+     * 
+     * @param consumer receives the bytes
+     */
     public void forEach(ByteConsumer consumer) {
-        for (byte b : string) {
-            consumer.accept(b);
+        forEach(0, length, consumer);
+    }
+
+    /**
+     * Passes each byte from beginIndex to endIndex - 1 to consumer, in order.
+     * 
+     * @param beginIndex the index of the first byte, inclusive
+     * @param endIndex the index of the last byte, exclusive
+     * @param consumer receives the bytes
+     * @throws IndexOutOfBoundsException if the range is not within this string
+     */
+    public void forEach(int beginIndex, int endIndex, ByteConsumer consumer) {
+        checkRange(beginIndex, endIndex);
+        if (store != null) {
+            store.forEach(beginIndex, endIndex, consumer);
+            return;
+        }
+        byte[] localThisString = this.string;
+        for (int i=offset+beginIndex, end=offset+endIndex; i<end; ++i) {
+            consumer.accept(localThisString[i]);
         }
     }
 
+    /**
+     * Passes the bytes of this string to consumer as a sequence of contiguous array ranges.
+     * A flat string is passed in a single call with its backing array; rope, mapped and
+     * buffer based strings are passed a segment or a block at a time. Empty ranges are not
+     * passed.
+     * 
+     * @param consumer receives the bytes
+     */
+    public void forEachChunk(ByteChunkConsumer consumer) {
+        forEachChunk(0, length, consumer);
+    }
+
+    /**
+     * Passes the bytes from beginIndex to endIndex - 1 to consumer as a sequence of
+     * contiguous array ranges, in order.
+     * 
+     * @param beginIndex the index of the first byte, inclusive
+     * @param endIndex the index of the last byte, exclusive
+     * @param consumer receives the bytes
+     * @throws IndexOutOfBoundsException if the range is not within this string
+     * @see #forEachChunk(ByteChunkConsumer)
+     */
+    public void forEachChunk(int beginIndex, int endIndex, ByteChunkConsumer consumer) {
+        checkRange(beginIndex, endIndex);
+        if (beginIndex == endIndex)
+            return;
+        if (store != null) {
+            store.forEachChunk(beginIndex, endIndex, consumer);
+            return;
+        }
+        consumer.accept(string, offset + beginIndex, endIndex - beginIndex);
+    }
+
+    private void checkRange(int beginIndex, int endIndex) {
+        if (beginIndex < 0)
+            throw new ArrayIndexOutOfBoundsException(beginIndex);
+        if (endIndex > this.length)
+            throw new ArrayIndexOutOfBoundsException(endIndex);
+        if (endIndex < beginIndex)
+            throw new ArrayIndexOutOfBoundsException(endIndex - beginIndex);
+    }
+
     /**
      * Compares this string to the specified object. The result is true if and only if the 
      * argument is not null and is a ByteString object that represents the same sequence of 
@@ -351,6 +495,12 @@ public final class ByteString {
             return true;
         if (this.length != string.length)
             return false;
+        if (this.store != null || string.store != null) {
+            if (hashCodeCache != 0 && string.hashCodeCache != 0
+                    && hashCodeCache != string.hashCodeCache)
+                return false;
+            return regionMatches(this, 0, string, 0, length);
+        }
         int localLength = this.length;
         byte[] localThisString = this.string;
         byte[] localThatString = string.string;
@@ -361,19 +511,303 @@ public final class ByteString {
         return true;
     }
     
+    /**
+     * Compares two strings lexicographically, treating bytes as unsigned values from 0 to
+     * 255. The result is consistent with {@link #equals(Object)}.
+     * 
+     * <p>
+     * If the strings differ at some index, the result is the difference of the unsigned byte
+     * values at the first such index, {@link #mismatch(ByteString)}. Otherwise one string is
+     * a prefix of the other and the result is the difference of their lengths.
+     * </p>
+     * 
+     * @param other the string to compare to
+     * @return 0 if the strings are equal, a value less than 0 if this string is ordered
+     *         before other, and a value greater than 0 if it is ordered after other
+     */
+    @Override
+    public int compareTo(ByteString other) {
+        if (this == other)
+            return 0;
+        int index = mismatch(this, other, Math.min(this.length, other.length));
+        if (index < 0)
+            return this.length - other.length;
+        return (byteAt(index) & 0xFF) - (other.byteAt(index) & 0xFF);
+    }
+
+    /**
+     * Returns the index of the first byte that differs between this string and other. If one
+     * string is a prefix of the other, the result is the length of the shorter string.
+     * 
+     * @param other the string to compare to
+     * @return the index of the first mismatch, or -1 if the strings are equal
+     */
+    public int mismatch(ByteString other) {
+        int length = Math.min(this.length, other.length);
+        int index = mismatch(this, other, length);
+        if (index >= 0)
+            return index;
+        return this.length == other.length ? -1 : length;
+    }
+
+    /**
+     * Compares this string to other, ignoring the case of ASCII letters. Bytes outside 'A' to
+     * 'Z' and 'a' to 'z' must be equal. Nothing is allocated; flat strings are compared eight
+     * bytes at a time.
+     * 
+     * @param other the string to compare to
+     * @return true if the strings are equal ignoring ASCII case
+     */
+    public boolean equalsIgnoreAsciiCase(ByteString other) {
+        if (this == other)
+            return true;
+        if (this.length != other.length)
+            return false;
+        return mismatchIgnoreAsciiCase(this, 0, other, 0, length) < 0;
+    }
+
+    /**
+     * Returns a hash code consistent with {@link #equalsIgnoreAsciiCase(ByteString)}. It is
+     * the same value as {@code toLowerAscii().hashCode()}, computed without a copy. Unlike
+     * hashCode it is not cached.
+     */
+    public int hashCodeIgnoreAsciiCase() {
+        int h = 0;
+        if (store != null) {
+            ByteStore localStore = store;
+            for (int i=0; i<length; ++i) {
+                h = 37 * h + ByteArrays.toLowerAscii(localStore.byteAt(i));
+            }
+            return h;
+        }
+        byte[] localThisString = this.string;
+        for (int i=offset, end=offset+length; i<end; ++i) {
+            h = 37 * h + ByteArrays.toLowerAscii(localThisString[i]);
+        }
+        return h;
+    }
+
+    /**
+     * Tests if this string starts with prefix, ignoring the case of ASCII letters.
+     */
+    public boolean startsWithIgnoreAsciiCase(ByteString prefix) {
+        if (prefix.length > this.length)
+            return false;
+        return mismatchIgnoreAsciiCase(this, 0, prefix, 0, prefix.length) < 0;
+    }
+
+    /**
+     * Tests if this string ends with suffix, ignoring the case of ASCII letters. DNS names in
+     * wire format can be tested for a common domain this way.
+     */
+    public boolean endsWithIgnoreAsciiCase(ByteString suffix) {
+        if (suffix.length > this.length)
+            return false;
+        return mismatchIgnoreAsciiCase(this, length - suffix.length, suffix, 0,
+                suffix.length) < 0;
+    }
+
+    /**
+     * Compares two strings lexicographically as {@link #compareTo(ByteString)} does, after
+     * mapping ASCII upper case letters to lower case. The result is consistent with
+     * {@link #equalsIgnoreAsciiCase(ByteString)}.
+     */
+    public int compareToIgnoreAsciiCase(ByteString other) {
+        if (this == other)
+            return 0;
+        int index = mismatchIgnoreAsciiCase(this, 0, other, 0,
+                Math.min(this.length, other.length));
+        if (index < 0)
+            return this.length - other.length;
+        return (ByteArrays.toLowerAscii(byteAt(index)) & 0xFF)
+                - (ByteArrays.toLowerAscii(other.byteAt(index)) & 0xFF);
+    }
+
+    /**
+     * Returns this string with ASCII upper case letters changed to lower case. If there are
+     * none, this string itself is returned and nothing is allocated.
+     */
+    public ByteString toLowerAscii() {
+        int index = -1;
+        if (store == null) {
+            index = ByteArrays.indexOfUpperAscii(string, offset, offset + length);
+            if (index >= 0)
+                index -= offset;
+        } else {
+            for (int i=0; i<length; ++i) {
+                byte value = store.byteAt(i);
+                if (value >= 'A' && value <= 'Z') {
+                    index = i;
+                    break;
+                }
+            }
+        }
+        if (index < 0)
+            return this;
+        byte[] lower = toByteArray();
+        for (int i=index; i<lower.length; ++i) {
+            lower[i] = ByteArrays.toLowerAscii(lower[i]);
+        }
+        return new ByteString(0, lower.length, lower);
+    }
+
+    /**
+     * Returns the index of the first difference, ignoring ASCII case, between count bytes of
+     * a starting at aIndex and count bytes of b starting at bIndex, relative to those
+     * indexes, or -1. Indexes are not bounds checked.
+     */
+    private static int mismatchIgnoreAsciiCase(ByteString a, int aIndex, ByteString b,
+            int bIndex, int count) {
+        if (a.store == null && b.store == null)
+            return ByteArrays.mismatchIgnoreAsciiCase(a.string, a.offset + aIndex, b.string,
+                    b.offset + bIndex, count);
+        for (int i=0; i<count; ++i) {
+            byte x = a.store != null ? a.store.byteAt(aIndex + i) : a.string[a.offset + aIndex + i];
+            byte y = b.store != null ? b.store.byteAt(bIndex + i) : b.string[b.offset + bIndex + i];
+            if (ByteArrays.toLowerAscii(x) != ByteArrays.toLowerAscii(y))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first difference between the first count bytes of a and b,
+     * or -1. Flat strings are compared eight bytes at a time in place; store based strings
+     * are copied out a block at a time first.
+     */
+    private static int mismatch(ByteString a, ByteString b, int count) {
+        if (a.store == null && b.store == null)
+            return ByteArrays.mismatch(a.string, a.offset, b.string, b.offset, count);
+        int blockSize = Math.min(count, BLOCK_SIZE);
+        byte[] aBlock = a.store != null ? new byte[blockSize] : null;
+        byte[] bBlock = b.store != null ? new byte[blockSize] : null;
+        for (int i=0; i<count; i+=blockSize) {
+            int n = Math.min(blockSize, count - i);
+            if (aBlock != null)
+                a.store.copyTo(i, aBlock, 0, n);
+            if (bBlock != null)
+                b.store.copyTo(i, bBlock, 0, n);
+            int index = ByteArrays.mismatch(
+                    aBlock != null ? aBlock : a.string, aBlock != null ? 0 : a.offset + i,
+                    bBlock != null ? bBlock : b.string, bBlock != null ? 0 : b.offset + i, n);
+            if (index >= 0)
+                return i + index;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares two byte array slices with the same unsigned lexicographic ordering as
+     * {@link #compareTo(ByteString)}, without creating ByteStrings for them.
+     * 
+     * @param a the first array
+     * @param aOffset the index of the first byte of the first slice
+     * @param aLength the length of the first slice
+     * @param b the second array
+     * @param bOffset the index of the first byte of the second slice
+     * @param bLength the length of the second slice
+     * @return 0 if the slices are equal, a value less than 0 if the first slice is ordered
+     *         before the second, and a value greater than 0 if it is ordered after it
+     */
+    public static int compare(byte[] a, int aOffset, int aLength, byte[] b, int bOffset,
+            int bLength) {
+        if (aOffset < 0 || aLength < 0 || aLength > a.length - aOffset)
+            throw new IndexOutOfBoundsException();
+        if (bOffset < 0 || bLength < 0 || bLength > b.length - bOffset)
+            throw new IndexOutOfBoundsException();
+        int index = ByteArrays.mismatch(a, aOffset, b, bOffset, Math.min(aLength, bLength));
+        if (index < 0)
+            return aLength - bLength;
+        return (a[aOffset + index] & 0xFF) - (b[bOffset + index] & 0xFF);
+    }
+
     public int hashCode() {
         int localHashCode = hashCodeCache;
-        if (localHashCode == 0) {
-            int endIndex = this.offset + this.length;
-            byte[] localThisString = this.string;
-            for (int i=offset; i<endIndex; ++i) {
-                localHashCode = 37 * localHashCode + (int) localThisString[i];
-            }
-            hashCodeCache = localHashCode;
+        if (localHashCode == 0 && !hashCodeIsZero) {
+            localHashCode = hash(0);
+            if (localHashCode == 0)
+                hashCodeIsZero = true;
+            else
+                hashCodeCache = localHashCode;
         }
         return localHashCode;
     }
 
+    /**
+     * Returns a 64-bit hash of the bytes of this string, computed with xxHash64 and a seed
+     * of 0. Equal strings have equal hashes.
+     * 
+     * <p>
+     * Unlike {@link #hashCode()}, which is kept compatible with earlier versions, this hash
+     * consumes eight bytes per step and mixes them thoroughly, so it is suited to large hash
+     * tables, sharding and Bloom filters. It is not cached.
+     * </p>
+     * 
+     * @return the hash
+     */
+    public long hash64() {
+        return hash64(0);
+    }
+
+    /**
+     * Returns a 64-bit xxHash64 hash of the bytes of this string using the specified seed.
+     * The result is the same as the reference xxHash64 implementation for the same bytes and
+     * seed.
+     * 
+     * @param seed the seed
+     * @return the hash
+     */
+    public long hash64(long seed) {
+        if (store == null)
+            return XxHash64.hash(string, offset, length, seed);
+        final XxHash64 hasher = new XxHash64(seed);
+        store.forEachChunk(0, length, new ByteChunkConsumer() {
+            @Override
+            public void accept(byte[] bytes, int offset, int length) {
+                hasher.update(bytes, offset, length);
+            }
+        });
+        return hasher.digest();
+    }
+
+    /**
+     * Returns the 64-bit xxHash64 hash of the specified slice of bytes, the same value
+     * {@link #hash64(long)} returns for a ByteString holding those bytes.
+     * 
+     * @param bytes the array holding the bytes
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @param seed the seed
+     * @return the hash
+     */
+    public static long hash64(byte[] bytes, int offset, int length, long seed) {
+        if (offset < 0 || length < 0 || length > bytes.length - offset)
+            throw new IndexOutOfBoundsException();
+        return XxHash64.hash(bytes, offset, length, seed);
+    }
+
+    /**
+     * Returns the hash code a ByteString holding the specified bytes would have.
+     */
+    static int hashCode(byte[] bytes, int offset, int length) {
+        int h = 0;
+        for (int i=offset, end=offset+length; i<end; ++i) {
+            h = 37 * h + (int) bytes[i];
+        }
+        return h;
+    }
+
+    int hash(int h) {
+        if (store != null)
+            return store.hash(h);
+        int endIndex = this.offset + this.length;
+        byte[] localThisString = this.string;
+        for (int i=offset; i<endIndex; ++i) {
+            h = 37 * h + (int) localThisString[i];
+        }
+        return h;
+    }
+
     /**
      * Returns the index within this string of the first occurrence of the specified byte.
      * 
@@ -423,13 +857,13 @@ public final class ByteString {
      *         by this object, or -1 if the byte does not occur.
      */
     public int indexOf(byte value, int fromIndex) {
-        int endIndex = this.offset + this.length;
-        byte[] localThisString = this.string;
-        for (int i=offset; i<endIndex; ++i) {
-            if (localThisString[i] == value)
-                return i - offset;
-        }
-        return -1;
+        if (store != null)
+            return store.indexOf(value, fromIndex);
+        if (fromIndex >= length)
+            return -1;
+        int index = ByteArrays.indexOf(string, offset + Math.max(fromIndex, 0), offset + length,
+                value);
+        return index < 0 ? -1 : index - offset;
     }
 
     /**
@@ -469,8 +903,7 @@ public final class ByteString {
      *         such occurrence.
      */
     public int indexOf(ByteString string, int fromIndex) {
-        return indexOf(this.string, offset, length, string.string, string.offset, string.length,
-                fromIndex);
+        return indexOf(string.array(), string.arrayOffset(), string.length, fromIndex);
     }
 
     /**
@@ -512,6 +945,8 @@ public final class ByteString {
      *         is no such occurrence.
      */
     public int indexOf(byte[] bytes, int offset, int length, int fromIndex) {
+        if (store != null)
+            return store.indexOf(bytes, offset, length, fromIndex);
         return indexOf(this.string, this.offset, this.length, bytes, offset, length,
                 fromIndex);
     }
@@ -570,13 +1005,13 @@ public final class ByteString {
      *         by this object, or -1 if the byte does not occur.
      */
     public int lastIndexOf(byte value, int fromIndex) {
-        int i = offset + ((fromIndex >= length) ? length - 1 : fromIndex);
-        byte[] localThisString = this.string;
-        for (; i>=offset; --i) {
-            if (localThisString[i] == value)
-                return i - offset;
-        }
-        return -1;
+        if (store != null)
+            return store.lastIndexOf(value, fromIndex);
+        if (fromIndex < 0)
+            return -1;
+        int toIndex = offset + ((fromIndex >= length) ? length : fromIndex + 1);
+        int index = ByteArrays.lastIndexOf(string, offset, toIndex, value);
+        return index < 0 ? -1 : index - offset;
     }
 
     /**
@@ -599,8 +1034,7 @@ public final class ByteString {
      *         no such occrrence.
      */
     public int lastIndexOf(ByteString string) {
-        return lastIndexOf(this.string, this.offset, this.length,
-                string.string, string.offset, string.length, this.offset + this.length);
+        return lastIndexOf(string.array(), string.arrayOffset(), string.length, this.length);
     }
 
     /**
@@ -623,8 +1057,7 @@ public final class ByteString {
      *         from the specified index, or -1 if there is no such occurrence.
      */
     public int lastIndexOf(ByteString string, int fromIndex) {
-        return lastIndexOf(this.string, this.offset, this.length,
-                           string.string, string.offset, string.length, fromIndex);
+        return lastIndexOf(string.array(), string.arrayOffset(), string.length, fromIndex);
     }
 
     /**
@@ -647,8 +1080,7 @@ public final class ByteString {
      *         no such occurrence.
      */
     public int lastIndexOf(byte[] bytes) {
-        return lastIndexOf(this.string, offset, length,
-                bytes, 0, bytes.length, this.offset + this.length);
+        return lastIndexOf(bytes, 0, bytes.length, this.length);
     }
 
     /**
@@ -673,6 +1105,8 @@ public final class ByteString {
      *         from the specified index, or -1 if there is no such occurrence.
      */
     public int lastIndexOf(byte[] bytes, int offset, int length, int fromIndex) {
+        if (store != null)
+            return store.lastIndexOf(bytes, offset, length, fromIndex);
         return lastIndexOf(this.string, this.offset, this.length,
                            bytes, offset, length, fromIndex);
     }
@@ -698,7 +1132,7 @@ public final class ByteString {
      *         this ByteString object as determined by the equals(Object) method.
      */
     public boolean startsWith(ByteString prefix) {
-        return startsWith(prefix.string, prefix.offset, prefix.length, 0);
+        return startsWith(prefix, 0);
     }
 
     /**
@@ -719,7 +1153,9 @@ public final class ByteString {
      *         </code></p>
      */
     public boolean startsWith(ByteString prefix, int toffset) {
-        return startsWith(prefix.string, prefix.offset, prefix.length, toffset);
+        if ((toffset < 0) || (toffset > this.length - prefix.length))
+            return false;
+        return regionMatches(this, toffset, prefix, 0, prefix.length);
     }
 
     /**
@@ -778,6 +1214,11 @@ public final class ByteString {
      *         </code></p>
      */
     public boolean startsWith(byte[] prefix, int offset, int length, int toffset) {
+        if (store != null) {
+            if ((toffset < 0) || (toffset > this.length - length))
+                return false;
+            return store.regionMatches(toffset, prefix, offset, length);
+        }
         byte targetArray[] = string;
         int targetOffset = this.offset + toffset;
         byte prefixArray[] = prefix;
@@ -833,6 +1274,8 @@ public final class ByteString {
             return this;
         if (beginIndex == endIndex)
             return EMPTY;
+        if (store != null)
+            return store.substring(beginIndex, endIndex);
         return new ByteString(offset + beginIndex, endIndex - beginIndex, string);
     }
 
@@ -841,10 +1284,17 @@ public final class ByteString {
     }
 
     public byte[] toByteArray() {
+        if (store != null) {
+            byte[] buffer = new byte[length];
+            store.copyTo(0, buffer, 0, length);
+            return buffer;
+        }
         return Arrays.copyOfRange(string, offset, offset + length);
     }
 
     public ByteBuffer toByteBuffer() {
+        if (store != null)
+            return store.asReadOnlyByteBuffer();
         return ByteBuffer.wrap(string, offset, length).asReadOnlyBuffer();
     }
 
@@ -853,16 +1303,79 @@ public final class ByteString {
         return "[len="+length+", hashCode="+hashCode+"]";
     }
 
+    /**
+     * Decodes this string with the specified charset. ASCII content in US-ASCII, UTF-8 or
+     * ISO-8859-1 is converted directly, without a charset decoder.
+     */
     public String toString(Charset charset) {
+        if ((charset.equals(StandardCharsets.US_ASCII) || charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.ISO_8859_1)) && isAscii())
+            return asciiString();
+        if (store != null)
+            return charset.decode(store.asReadOnlyByteBuffer()).toString();
         return new String(string, offset, length, charset);
     }
 
+    /**
+     * Returns true if every byte of this string is an ASCII character, 0 to 127. Flat strings
+     * are checked eight bytes at a time.
+     */
+    public boolean isAscii() {
+        if (store == null)
+            return ByteArrays.isAscii(string, offset, offset + length);
+        final boolean[] ascii = { true };
+        store.forEachChunk(0, length, new ByteChunkConsumer() {
+            @Override
+            public void accept(byte[] bytes, int offset, int length) {
+                if (ascii[0] && !ByteArrays.isAscii(bytes, offset, offset + length))
+                    ascii[0] = false;
+            }
+        });
+        return ascii[0];
+    }
+
+    /**
+     * Decodes this string as US-ASCII. Bytes outside the ASCII range are replaced with
+     * U+FFFD, as by {@code toString(StandardCharsets.US_ASCII)}.
+     */
+    public String toAsciiString() {
+        if (isAscii())
+            return asciiString();
+        return toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Decodes this string as UTF-8. Malformed input is replaced with U+FFFD, as by
+     * {@code toString(StandardCharsets.UTF_8)}.
+     */
+    public String toUtf8String() {
+        return toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the bytes of this string, which must all be ASCII, as the chars of a String.
+     */
+    private String asciiString() {
+        if (length == 0)
+            return "";
+        byte[] bytes = store != null ? toByteArray() : string;
+        int start = store != null ? 0 : offset;
+        // Widens each byte to a char without a charset decoder
+        char[] chars = new char[length];
+        for (int i=0; i<length; ++i) {
+            chars[i] = (char) bytes[start + i];
+        }
+        return new String(chars);
+    }
+
     public String toFullString() {
-        return Arrays.toString(string);
+        return Arrays.toString(array());
     }
     
     public ByteString compact() {
-        if (offset > 0) {
+        if (store != null)
+            return new ByteString(0, length, toByteArray());
+        if (offset > 0 || length < string.length) {
             byte[] newString = new byte[length];
             System.arraycopy(string, offset, newString, 0, length);
             return new ByteString(newString);
@@ -872,16 +1385,188 @@ public final class ByteString {
     }
 
     public int footprint() {
+        if (store != null)
+            return store.footprint();
         return string.length;
     }
 
     public ByteBuffer asReadOnlyByteBuffer() {
-        return ByteBuffer.wrap(string, offset, length);
+        if (store != null)
+            return store.asReadOnlyByteBuffer();
+        return ByteBuffer.wrap(string, offset, length).asReadOnlyBuffer();
     }
     
+    /**
+     * Returns read-only buffers which together hold the bytes of this string, in order,
+     * without copying them. A flat string is a single buffer; rope and mapped strings
+     * return one buffer per segment.
+     * 
+     * @return the list of buffers, each with position 0
+     */
+    public List<ByteBuffer> asReadOnlyByteBufferList() {
+        if (store == null) {
+            return Collections.singletonList(
+                    ByteBuffer.wrap(string, offset, length).slice().asReadOnlyBuffer());
+        }
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+        store.addByteBuffers(buffers);
+        return buffers;
+    }
+
+    /**
+     * Adds read-only views of the bytes of this string to buffers, in order.
+     */
+    void addByteBuffers(List<ByteBuffer> buffers) {
+        if (store != null)
+            store.addByteBuffers(buffers);
+        else if (length > 0)
+            buffers.add(ByteBuffer.wrap(string, offset, length).slice().asReadOnlyBuffer());
+    }
+
+    /**
+     * Writes the bytes of this string to channel without copying them. A gathering channel
+     * receives all the segments of the string in a single gathering write where possible.
+     * 
+     * <p>
+     * The channel must be in blocking mode; this method keeps writing until every byte has
+     * been written.
+     * </p>
+     * 
+     * @param channel the channel to write to
+     * @return the number of bytes written, which is the length of this string
+     * @throws IOException if an I/O error occurs
+     */
+    public int writeTo(WritableByteChannel channel) throws IOException {
+        if (channel instanceof GatheringByteChannel)
+            return (int) writeAll((GatheringByteChannel) channel, this);
+        for (ByteBuffer buffer : asReadOnlyByteBufferList()) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the bytes of this string to out. A flat string is written in a single call
+     * straight from its backing array; other strings are copied out a block at a time.
+     * 
+     * @param out the stream to write to
+     * @return the number of bytes written, which is the length of this string
+     * @throws IOException if an I/O error occurs
+     */
+    public int writeTo(OutputStream out) throws IOException {
+        if (store != null)
+            return (int) new ByteStringInputStream(store).transferTo(out);
+        out.write(string, offset, length);
+        return length;
+    }
+
+    /**
+     * Writes the bytes of all the strings to channel, in order, using gathering writes over
+     * read-only views of the strings rather than copies. For blocking socket and file
+     * channels this is normally a single write system call.
+     * 
+     * <p>
+     * The channel must be in blocking mode; this method keeps writing until every byte has
+     * been written.
+     * </p>
+     * 
+     * @param channel the channel to write to
+     * @param strings the strings to write
+     * @return the total number of bytes written
+     * @throws IOException if an I/O error occurs
+     */
+    public static long writeAll(GatheringByteChannel channel, ByteString... strings)
+            throws IOException {
+        List<ByteBuffer> list = new ArrayList<ByteBuffer>(strings.length);
+        long total = 0;
+        for (ByteString string : strings) {
+            string.addByteBuffers(list);
+            total += string.length;
+        }
+        ByteBuffer[] buffers = list.toArray(new ByteBuffer[list.size()]);
+        int first = 0;
+        while (first < buffers.length) {
+            channel.write(buffers, first, buffers.length - first);
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                ++first;
+            }
+        }
+        return total;
+    }
+
     public InputStream asInputStream() {
+        if (store != null)
+            return new ByteStringInputStream(store);
         return new ByteStringInputStream(string, offset, length);
     }
+
+    /**
+     * Returns a channel which reads the bytes of this string. Reads copy directly into the
+     * destination buffer.
+     */
+    public ReadableByteChannel asReadableByteChannel() {
+        return new ByteStringChannel(this);
+    }
+
+    ByteStore store() {
+        return store;
+    }
+
+    int depth() {
+        return store != null ? store.depth() : 0;
+    }
+
+    /**
+     * Returns an array holding the bytes of this string starting at {@link #arrayOffset()}.
+     * Store based strings are flattened on first use. The array must not be modified.
+     */
+    private byte[] array() {
+        return store != null ? store.flatten() : string;
+    }
+
+    /**
+     * Returns the array backing a flat string, or null if this string is store based. The
+     * bytes of a flat string start at {@link #arrayOffset()}. The array must not be modified.
+     */
+    byte[] backingArray() {
+        return string;
+    }
+
+    int arrayOffset() {
+        return store != null ? 0 : offset;
+    }
+
+    /**
+     * Returns true if count bytes of this string starting at index equal count bytes of
+     * other starting at otherOffset. Indexes are not bounds checked.
+     */
+    boolean regionMatches(int index, byte[] other, int otherOffset, int count) {
+        if (store != null)
+            return store.regionMatches(index, other, otherOffset, count);
+        byte[] localThisString = this.string;
+        for (int i=offset+index, j=otherOffset, k=0; k<count; ++i, ++j, ++k) {
+            if (localThisString[i] != other[j])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if count bytes of a starting at aIndex equal count bytes of b starting at
+     * bIndex. Indexes are not bounds checked.
+     */
+    static boolean regionMatches(ByteString a, int aIndex, ByteString b, int bIndex, int count) {
+        if (b.store == null)
+            return a.regionMatches(aIndex, b.string, b.offset + bIndex, count);
+        if (a.store == null)
+            return b.store.regionMatches(bIndex, a.string, a.offset + aIndex, count);
+        // Let the deeper store split the region into its children
+        if (a.store.depth() >= b.store.depth())
+            return a.store.regionMatches(aIndex, b, bIndex, count);
+        return b.store.regionMatches(bIndex, a, aIndex, count);
+    }
     
     public static final ByteString from(int... bytes) {
         if (bytes.length == 0)
@@ -911,6 +1596,103 @@ public final class ByteString {
         return new ByteString(0, length, buffer);
     }
 
+    /**
+     * Returns the ASCII encoding of chars.
+     *
+     * @param chars the text to encode
+     * @return a string holding one byte per char
+     * @throws IllegalArgumentException if chars contains a char outside the ASCII range
+     */
+    public static final ByteString fromAscii(CharSequence chars) {
+        int length = chars.length();
+        if (length == 0)
+            return EMPTY;
+        byte[] buffer = new byte[length];
+        for (int i=0; i<length; ++i) {
+            char c = chars.charAt(i);
+            if (c >= 0x80)
+                throw new IllegalArgumentException("Non-ASCII character at index " + i);
+            buffer[i] = (byte) c;
+        }
+        return new ByteString(0, length, buffer);
+    }
+
+    /**
+     * Returns the UTF-8 encoding of chars, the same bytes as
+     * {@code String.getBytes(StandardCharsets.UTF_8)}: unpaired surrogates are encoded as
+     * '?'. A leading run of ASCII chars is copied directly; the rest is encoded without a
+     * CharsetEncoder.
+     *
+     * @param chars the text to encode
+     * @return the encoded string
+     */
+    public static final ByteString fromUtf8(CharSequence chars) {
+        int length = chars.length();
+        if (length == 0)
+            return EMPTY;
+        byte[] buffer = new byte[length];
+        int i = 0;
+        for (; i<length; ++i) {
+            char c = chars.charAt(i);
+            if (c >= 0x80)
+                break;
+            buffer[i] = (byte) c;
+        }
+        if (i == length)
+            return new ByteString(0, length, buffer);
+
+        buffer = Arrays.copyOf(buffer, i + utf8Length(chars, i, length));
+        int pos = i;
+        for (; i<length; ++i) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                buffer[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[pos++] = (byte) (0xC0 | c >> 6);
+                buffer[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                buffer[pos++] = (byte) (0xE0 | c >> 12);
+                buffer[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                buffer[pos++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[pos++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[pos++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[pos++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                buffer[pos++] = '?';
+            }
+        }
+        return new ByteString(0, pos, buffer);
+    }
+
+    /**
+     * Returns the number of bytes of the UTF-8 encoding of chars from beginIndex to
+     * endIndex - 1.
+     */
+    private static int utf8Length(CharSequence chars, int beginIndex, int endIndex) {
+        int count = 0;
+        for (int i=beginIndex; i<endIndex; ++i) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                count += 1;
+            } else if (c < 0x800) {
+                count += 2;
+            } else if (!Character.isSurrogate(c)) {
+                count += 3;
+            } else if (Character.isHighSurrogate(c) && i + 1 < endIndex
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                count += 4;
+                ++i;
+            } else {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
     public static final ByteString from(ByteBuffer byteBuffer) {
         if (byteBuffer == null)
             throw new IllegalArgumentException();
@@ -924,6 +1706,89 @@ public final class ByteString {
         byteBuffer.get(buffer);
         return new ByteString(0, count, buffer);
     }
+
+    /**
+     * Returns a ByteString that shares the remaining bytes of the specified buffer instead
+     * of copying them. Direct buffers stay off-heap. The position and limit of the buffer
+     * are not changed.
+     * 
+     * <p>
+     * ByteStrings are immutable, so the caller must not modify the shared bytes through the
+     * buffer, or any other view of the same memory, for as long as the returned string is in
+     * use.
+     * </p>
+     * 
+     * @param byteBuffer the buffer to wrap
+     * @return a ByteString backed by the remaining bytes of byteBuffer
+     */
+    public static final ByteString wrap(ByteBuffer byteBuffer) {
+        if (byteBuffer == null)
+            throw new IllegalArgumentException();
+        int count = byteBuffer.remaining();
+        if (count == 0)
+            return EMPTY;
+        if (byteBuffer.hasArray())
+            return new ByteString(byteBuffer.arrayOffset() + byteBuffer.position(), count,
+                    byteBuffer.array());
+        return new ByteString(new BufferByteStore(byteBuffer.slice(), byteBuffer.capacity()));
+    }
+
+    /**
+     * Returns a ByteString backed by a read-only memory mapping of a region of a file. The 
+     * file is not read into the heap; the operating system pages it in as it is accessed.
+     * 
+     * <p>
+     * The region is mapped in segments of up to 1 GB which are stitched together into a 
+     * single ByteString. Like all ByteStrings, the result is indexed by int so the region
+     * cannot be larger than Integer.MAX_VALUE bytes. Larger files can be mapped as several 
+     * consecutive regions.
+     * </p>
+     * 
+     * <p>
+     * The mapping remains valid after the channel is closed. ByteStrings are immutable, so 
+     * the mapped region of the file must not be modified while the returned string is in use.
+     * </p>
+     * 
+     * @param channel the channel of the file to map
+     * @param position the position within the file at which the region starts
+     * @param size the size of the region
+     * @return a ByteString backed by the mapped region
+     * @throws IOException if the file cannot be mapped
+     * @see FileChannel#map
+     */
+    public static final ByteString map(FileChannel channel, long position, long size)
+            throws IOException {
+        return map(channel, position, size, MAPPED_SEGMENT_SIZE);
+    }
+
+    static final ByteString map(FileChannel channel, long position, long size, int segmentSize)
+            throws IOException {
+        if (channel == null)
+            throw new IllegalArgumentException("Channel cannot be null");
+        if (position < 0)
+            throw new IllegalArgumentException("Position cannot be < 0. position=" + position);
+        if (size < 0)
+            throw new IllegalArgumentException("Size cannot be < 0. size=" + size);
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Size cannot be > " + Integer.MAX_VALUE
+                    + ". size=" + size);
+        if (size == 0)
+            return EMPTY;
+
+        int numSegments = (int) ((size + segmentSize - 1) / segmentSize);
+        ByteString[] segments = new ByteString[numSegments];
+        for (int i=0; i<numSegments; ++i) {
+            long segmentStart = (long) i * segmentSize;
+            int segmentLength = (int) Math.min(segmentSize, size - segmentStart);
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    position + segmentStart, segmentLength);
+            segments[i] = new ByteString(new BufferByteStore(buffer, segmentLength));
+        }
+
+        if (numSegments == 1)
+            return segments[0];
+        return new ByteString(new ChunkedByteStore(segments));
+    }
     
     static final int indexOf(byte[] source, int sourceOffset, int sourceCount,
             byte[] target, int targetOffset, int targetCount, int fromIndex) {
@@ -938,8 +1803,11 @@ public final class ByteString {
         byte first = target[targetOffset];
         int max = sourceOffset + sourceCount - targetCount;
         for (int i = sourceOffset + fromIndex; i <= max; ++i) {
-            if (source[i] != first)
-                while (++i <= max && source[i] != first);
+            if (source[i] != first) {
+                i = ByteArrays.indexOf(source, i + 1, max + 1, first);
+                if (i < 0)
+                    return -1;
+            }
 
             if (i <= max) {
                 int j = i + 1;
@@ -973,9 +1841,8 @@ public final class ByteString {
         int i = min + fromIndex;
 
         startSearchForLastByte: while (true) {
-            while (i >= min && source[i] != strLastByte) {
-                i--;
-            }
+            if (i >= min && source[i] != strLastByte)
+                i = ByteArrays.lastIndexOf(source, min, i, strLastByte);
             if (i < min) {
                 return -1;
             }
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.util.Arrays;
+
+/**
+ * Mutable sequence of bytes used to build a ByteString. Equivalent to
+ * java.lang.StringBuilder, with writers for big-endian (network order) primitives.
+ *
+ * <p>
+ * Fields whose value is only known later, such as length prefixes, can be written by
+ * reserving their bytes with {@link #reserve(int)} and filling them in afterwards with the
+ * setXxxAt methods.
+ * </p>
+ *
+ * <p>
+ * {@link #toByteString()} hands the internal array over to the returned ByteString without
+ * copying it. The builder can still be used afterwards; its next modification copies the
+ * array first so that the returned string never changes.
+ * </p>
+ *
+ * <p>
+ * Not thread safe.
+ * </p>
+ */
+public final class ByteStringBuilder {
+
+    private byte[] buffer;
+    private int length;
+
+    /**
+     * True if buffer is referenced by a ByteString returned from toByteString.
+     */
+    private boolean shared;
+
+    public ByteStringBuilder() {
+        this(64);
+    }
+
+    public ByteStringBuilder(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Capacity cannot be negative: " + capacity);
+        this.buffer = new byte[capacity];
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Ensures that count more bytes can be added without growing the internal array.
+     */
+    public void ensureCapacity(int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("Count cannot be negative: " + count);
+        prepareWrite(count);
+    }
+
+    /**
+     * Prepares the buffer to be written, growing it to hold count more bytes and unsharing
+     * it, and returns the index of the first byte to write.
+     */
+    private int prepareWrite(int count) {
+        int required = length + count;
+        if (required < 0)
+            throw new OutOfMemoryError("Required length exceeds maximum array size");
+        if (required > buffer.length) {
+            int newCapacity = buffer.length << 1;
+            if (newCapacity < required)
+                newCapacity = required;
+            buffer = Arrays.copyOf(buffer, newCapacity);
+            shared = false;
+        } else if (shared) {
+            buffer = buffer.clone();
+            shared = false;
+        }
+        return length;
+    }
+
+    private void checkIndex(int index, int count) {
+        if (index < 0 || index > length - count)
+            throw new IndexOutOfBoundsException("index=" + index + ", length=" + length);
+        if (shared) {
+            buffer = buffer.clone();
+            shared = false;
+        }
+    }
+
+    public ByteStringBuilder putByte(int value) {
+        int pos = prepareWrite(1);
+        buffer[pos] = (byte) value;
+        length = pos + 1;
+        return this;
+    }
+
+    public ByteStringBuilder putShort(int value) {
+        int pos = prepareWrite(2);
+        byte[] localBuffer = buffer;
+        localBuffer[pos] = (byte) (value >> 8);
+        localBuffer[pos + 1] = (byte) value;
+        length = pos + 2;
+        return this;
+    }
+
+    public ByteStringBuilder putInt(int value) {
+        int pos = prepareWrite(4);
+        writeInt(buffer, pos, value);
+        length = pos + 4;
+        return this;
+    }
+
+    public ByteStringBuilder putLong(long value) {
+        int pos = prepareWrite(8);
+        writeInt(buffer, pos, (int) (value >> 32));
+        writeInt(buffer, pos + 4, (int) value);
+        length = pos + 8;
+        return this;
+    }
+
+    private static void writeInt(byte[] buffer, int pos, int value) {
+        buffer[pos] = (byte) (value >> 24);
+        buffer[pos + 1] = (byte) (value >> 16);
+        buffer[pos + 2] = (byte) (value >> 8);
+        buffer[pos + 3] = (byte) value;
+    }
+
+    public ByteStringBuilder put(byte[] bytes) {
+        return put(bytes, 0, bytes.length);
+    }
+
+    public ByteStringBuilder put(byte[] bytes, int offset, int count) {
+        if (bytes == null)
+            throw new NullPointerException("Bytes cannot be null");
+        if (offset < 0 || count < 0 || count > bytes.length - offset)
+            throw new IndexOutOfBoundsException();
+        int pos = prepareWrite(count);
+        System.arraycopy(bytes, offset, buffer, pos, count);
+        length = pos + count;
+        return this;
+    }
+
+    public ByteStringBuilder put(ByteString string) {
+        if (string == null)
+            throw new NullPointerException("String cannot be null");
+        int count = string.length();
+        int pos = prepareWrite(count);
+        string.copyTo(0, buffer, pos, count);
+        length = pos + count;
+        return this;
+    }
+
+    /**
+     * Appends count zero bytes to be filled in later with the setXxxAt methods.
+     *
+     * @param count the number of bytes to reserve
+     * @return the index of the first reserved byte
+     */
+    public int reserve(int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("Count cannot be negative: " + count);
+        int pos = prepareWrite(count);
+        Arrays.fill(buffer, pos, pos + count, (byte) 0);
+        length = pos + count;
+        return pos;
+    }
+
+    public byte byteAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index=" + index + ", length=" + length);
+        return buffer[index];
+    }
+
+    public ByteStringBuilder setByteAt(int index, int value) {
+        checkIndex(index, 1);
+        buffer[index] = (byte) value;
+        return this;
+    }
+
+    public ByteStringBuilder setShortAt(int index, int value) {
+        checkIndex(index, 2);
+        buffer[index] = (byte) (value >> 8);
+        buffer[index + 1] = (byte) value;
+        return this;
+    }
+
+    public ByteStringBuilder setIntAt(int index, int value) {
+        checkIndex(index, 4);
+        writeInt(buffer, index, value);
+        return this;
+    }
+
+    /**
+     * Shortens the builder to the specified length.
+     */
+    public void setLength(int newLength) {
+        if (newLength < 0 || newLength > length)
+            throw new IndexOutOfBoundsException("newLength=" + newLength + ", length=" + length);
+        length = newLength;
+    }
+
+    /**
+     * Removes all bytes. The internal array is kept for reuse unless it has been handed out
+     * by toByteString.
+     */
+    public void clear() {
+        if (shared) {
+            buffer = new byte[buffer.length];
+            shared = false;
+        }
+        length = 0;
+    }
+
+    /**
+     * Returns a ByteString holding the bytes written so far. The internal array is shared
+     * with the returned string rather than copied.
+     */
+    public ByteString toByteString() {
+        if (length == 0)
+            return ByteString.EMPTY;
+        shared = true;
+        return new ByteString(0, length, buffer);
+    }
+
+    @Override
+    public String toString() {
+        return "[len=" + length + ", capacity=" + buffer.length + "]";
+    }
+
+}
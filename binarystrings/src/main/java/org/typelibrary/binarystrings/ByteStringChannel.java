@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * ReadableByteChannel over the bytes of a ByteString. Not thread safe.
+ */
+final class ByteStringChannel implements ReadableByteChannel {
+
+    private final ByteString string;
+    private int pos;
+    private boolean open = true;
+
+    ByteStringChannel(ByteString string) {
+        this.string = string;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+        int remaining = string.length() - pos;
+        if (remaining == 0)
+            return -1;
+        int count = Math.min(remaining, dst.remaining());
+        string.copyTo(pos, dst, count);
+        pos += count;
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+}
@@ -2,18 +2,29 @@ package org.typelibrary.binarystrings;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 final class ByteStringInputStream extends InputStream {
 
     private final byte[] buffer;
     private final int offset;
     private final int length;
+    private final ByteStore store;
     private int pos;
+    private int mark;
 
     ByteStringInputStream(byte[] buffer, int offset, int length) {
         this.buffer = buffer;
         this.offset = offset;
         this.length = length;
+        this.store = null;
+    }
+
+    ByteStringInputStream(ByteStore store) {
+        this.buffer = null;
+        this.offset = 0;
+        this.length = store.length();
+        this.store = store;
     }
     
     @Override
@@ -27,7 +38,10 @@ final class ByteStringInputStream extends InputStream {
         if (pos == length)
             return -1;
 
-        return buffer[offset + pos++];
+        if (store != null)
+            return store.byteAt(pos++) & 0xFF;
+
+        return buffer[offset + pos++] & 0xFF;
     }
 
     @Override
@@ -35,14 +49,22 @@ final class ByteStringInputStream extends InputStream {
 
         if (b == null)
             throw new NullPointerException();
-        if (offset < 0)
+        if (offset < 0 || length < 0)
             throw new IndexOutOfBoundsException();
         if (b.length < (offset + length))
             throw new IndexOutOfBoundsException();
+        if (length == 0)
+            return 0;
+        if (this.pos == this.length)
+            return -1;
         
         length = Math.min(length, this.length - this.pos);
         
-        System.arraycopy(this.buffer, this.offset + this.pos, b, offset, length);
+        if (store != null)
+            store.copyTo(this.pos, b, offset, length);
+        else
+            System.arraycopy(this.buffer, this.offset + this.pos, b, offset, length);
+        this.pos += length;
         
         return length;
     }
@@ -58,5 +80,51 @@ final class ByteStringInputStream extends InputStream {
         
         return count;
     }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        mark = pos;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        pos = mark;
+    }
+
+    /**
+     * Writes all remaining bytes to out. Flat strings are written in a single call straight
+     * from their backing array.
+     * 
+     * @return the number of bytes transferred
+     */
+    public long transferTo(OutputStream out) throws IOException {
+
+        if (out == null)
+            throw new NullPointerException();
+
+        int count = length - pos;
+        if (count == 0)
+            return 0;
+
+        if (store == null) {
+            out.write(buffer, offset + pos, count);
+        } else {
+            byte[] block = new byte[Math.min(count, 8192)];
+            for (int i=pos, end=length; i<end; i+=block.length) {
+                int n = Math.min(block.length, end - i);
+                store.copyTo(i, block, 0, n);
+                out.write(block, 0, n);
+                pos = i + n;
+            }
+        }
+        pos = length;
+
+        return count;
+    }
     
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Size bounded pool of canonical ByteStrings, the equivalent of {@link String#intern()} for
+ * ByteStrings.
+ *
+ * <p>
+ * Interning returns a canonical instance equal to the argument, so that repeated values such
+ * as DNS labels or record tags share one copy, and equal canonical instances can be compared
+ * by identity. {@link #intern(byte[], int, int)} looks up a slice of an array directly and
+ * only allocates a ByteString when the value is not already in the pool.
+ * </p>
+ *
+ * <p>
+ * The pool is a fixed size, 4-way set associative table. When all slots for a hash value
+ * are taken, one of them is replaced at random, so the pool never holds more than its
+ * capacity and rarely used values drift out. As a consequence interning is best effort: a
+ * value that has been evicted gets a new canonical instance the next time it is interned,
+ * and two threads interning the same new value at the same time may each get their own
+ * instance. Callers that compare by identity must fall back to equals.
+ * </p>
+ *
+ * <p>
+ * An interner is thread safe. Lookups and inserts are lock free.
+ * </p>
+ */
+public final class ByteStringInterner {
+
+    private static final int WAYS = 4;
+
+    private final AtomicReferenceArray<ByteString> table;
+    private final int bucketMask;
+
+    /**
+     * Creates an interner holding at most capacity strings, rounded up to a power of two.
+     *
+     * @param capacity the maximum number of strings to keep
+     */
+    public ByteStringInterner(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        int size = Math.max(WAYS, Integer.highestOneBit(capacity - 1) << 1);
+        this.table = new AtomicReferenceArray<ByteString>(size);
+        this.bucketMask = size / WAYS - 1;
+    }
+
+    /**
+     * Returns the canonical instance equal to string. If there is none, a compact copy of
+     * string becomes the canonical instance, so that interning a substring never keeps the
+     * rest of its backing array alive.
+     *
+     * @param string the string to intern
+     * @return the canonical instance
+     */
+    public ByteString intern(ByteString string) {
+        if (string == null)
+            throw new NullPointerException("String cannot be null");
+        int hash = string.hashCode();
+        int base = bucket(hash);
+        for (int i=0; i<WAYS; ++i) {
+            ByteString candidate = table.get(base + i);
+            if (candidate == null)
+                break;
+            if (candidate == string || candidate.hashCode() == hash && candidate.equals(string))
+                return candidate;
+        }
+        ByteString canonical = string.footprint() > string.length() ? string.compact() : string;
+        return insert(base, canonical);
+    }
+
+    /**
+     * Returns the canonical instance equal to the specified slice of bytes. A ByteString is
+     * only created, copying the slice, if there is no canonical instance yet.
+     *
+     * @param bytes the array holding the bytes
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @return the canonical instance
+     */
+    public ByteString intern(byte[] bytes, int offset, int length) {
+        if (bytes == null)
+            throw new NullPointerException("Bytes cannot be null");
+        if (offset < 0 || length < 0 || length > bytes.length - offset)
+            throw new IndexOutOfBoundsException();
+        int hash = ByteString.hashCode(bytes, offset, length);
+        int base = bucket(hash);
+        for (int i=0; i<WAYS; ++i) {
+            ByteString candidate = table.get(base + i);
+            if (candidate == null)
+                break;
+            if (candidate.length() == length && candidate.hashCode() == hash
+                    && candidate.regionMatches(0, bytes, offset, length))
+                return candidate;
+        }
+        return insert(base, ByteString.from(bytes, offset, length));
+    }
+
+    private int bucket(int hash) {
+        int h = hash * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & bucketMask) * WAYS;
+    }
+
+    private ByteString insert(int base, ByteString canonical) {
+        for (int i=0; i<WAYS; ++i) {
+            ByteString candidate = table.get(base + i);
+            if (candidate == null) {
+                if (table.compareAndSet(base + i, null, canonical))
+                    return canonical;
+                candidate = table.get(base + i);
+            }
+            // Another thread may have added the same value meanwhile
+            if (candidate.equals(canonical))
+                return candidate;
+        }
+        table.set(base + ThreadLocalRandom.current().nextInt(WAYS), canonical);
+        return canonical;
+    }
+
+    /**
+     * Returns the maximum number of strings this interner holds.
+     */
+    public int capacity() {
+        return table.length();
+    }
+
+    /**
+     * Returns the number of strings currently held. This walks the whole table.
+     */
+    public int size() {
+        int size = 0;
+        for (int i=0; i<table.length(); ++i) {
+            if (table.get(i) != null)
+                ++size;
+        }
+        return size;
+    }
+
+    /**
+     * Removes all strings. Previously returned instances stay valid but are no longer
+     * canonical.
+     */
+    public void clear() {
+        for (int i=0; i<table.length(); ++i) {
+            table.set(i, null);
+        }
+    }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+/**
+ * Precompiled search for a single byte pattern.
+ *
+ * <p>
+ * The pattern is preprocessed once when the matcher is compiled, so searching the same
+ * pattern in many strings only pays the search cost. Searches use the Two-Way algorithm of
+ * Crochemore and Perrin, which runs in linear time without the O(n*m) worst case of
+ * {@link ByteString#indexOf(ByteString)}, combined with a Horspool style table on the last
+ * byte of the window to skip ahead on a mismatch.
+ * </p>
+ *
+ * <p>
+ * A matcher is immutable and can be shared between threads.
+ * </p>
+ */
+public final class ByteStringMatcher {
+
+    private final ByteString pattern;
+    private final Searcher forward;
+    private final Searcher backward;
+
+    private ByteStringMatcher(ByteString pattern) {
+        this.pattern = pattern;
+        byte[] bytes = pattern.toByteArray();
+        this.forward = new Searcher(bytes);
+        byte[] reversed = new byte[bytes.length];
+        for (int i=0; i<bytes.length; ++i) {
+            reversed[i] = bytes[bytes.length - 1 - i];
+        }
+        this.backward = new Searcher(reversed);
+    }
+
+    /**
+     * Compiles a matcher for the specified pattern.
+     *
+     * @param pattern the byte sequence to search for
+     * @return the matcher
+     * @throws IllegalArgumentException if pattern is empty
+     */
+    public static ByteStringMatcher compile(ByteString pattern) {
+        if (pattern == null)
+            throw new NullPointerException("Pattern cannot be null");
+        if (pattern.isEmpty())
+            throw new IllegalArgumentException("Pattern cannot be empty");
+        return new ByteStringMatcher(pattern);
+    }
+
+    /**
+     * Compiles a matcher for the specified pattern. The bytes are copied.
+     *
+     * @param pattern the byte sequence to search for
+     * @return the matcher
+     * @throws IllegalArgumentException if pattern is empty
+     */
+    public static ByteStringMatcher compile(byte[] pattern) {
+        return compile(ByteString.from(pattern));
+    }
+
+    /**
+     * Returns the pattern this matcher searches for.
+     */
+    public ByteString pattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns the index within string of the first occurrence of the pattern.
+     *
+     * @param string the string to search
+     * @return the index of the first occurrence of the pattern, or -1 if there is no such
+     *         occurrence
+     */
+    public int indexIn(ByteString string) {
+        return indexIn(string, 0);
+    }
+
+    /**
+     * Returns the index within string of the first occurrence of the pattern, starting the
+     * search at the specified index. Same result as
+     * {@link ByteString#indexOf(ByteString, int) string.indexOf(pattern(), fromIndex)}.
+     *
+     * @param string the string to search
+     * @param fromIndex the index from which to start the search
+     * @return the index of the first occurrence of the pattern that starts at or after
+     *         fromIndex, or -1 if there is no such occurrence
+     */
+    public int indexIn(ByteString string, int fromIndex) {
+        return indexIn(string, fromIndex, string.length());
+    }
+
+    /**
+     * Returns the index of the first occurrence of the pattern that lies entirely within
+     * fromIndex to toIndex - 1, or -1.
+     */
+    int indexIn(ByteString string, int fromIndex, int toIndex) {
+        if (fromIndex < 0)
+            fromIndex = 0;
+        int available = toIndex - fromIndex;
+        if (available < pattern.length())
+            return -1;
+        int found = forward.search(string.backingArray(), string.arrayOffset(), string.store(),
+                fromIndex, 1, available);
+        return found < 0 ? -1 : fromIndex + found;
+    }
+
+    /**
+     * Returns the index within string of the last occurrence of the pattern.
+     *
+     * @param string the string to search
+     * @return the index of the last occurrence of the pattern, or -1 if there is no such
+     *         occurrence
+     */
+    public int lastIndexIn(ByteString string) {
+        return lastIndexIn(string, string.length());
+    }
+
+    /**
+     * Returns the index within string of the last occurrence of the pattern, searching
+     * backward starting at the specified index. Same result as
+     * {@link ByteString#lastIndexOf(ByteString, int) string.lastIndexOf(pattern(), fromIndex)}.
+     *
+     * @param string the string to search
+     * @param fromIndex the index from which to start the search
+     * @return the index of the last occurrence of the pattern that starts at or before
+     *         fromIndex, or -1 if there is no such occurrence
+     */
+    public int lastIndexIn(ByteString string, int fromIndex) {
+        if (fromIndex < 0)
+            return -1;
+        int patternLength = pattern.length();
+        int end = (int) Math.min((long) fromIndex + patternLength, string.length());
+        if (end < patternLength)
+            return -1;
+        int found = backward.search(string.backingArray(), string.arrayOffset(), string.store(),
+                end - 1, -1, end);
+        return found < 0 ? -1 : end - found - patternLength;
+    }
+
+    /**
+     * Returns true if the pattern occurs anywhere in string.
+     */
+    public boolean isContainedIn(ByteString string) {
+        return indexIn(string, 0) > -1;
+    }
+
+    /**
+     * Returns the number of non-overlapping occurrences of the pattern in string, counted from
+     * the start of the string. For example the pattern {1, 1} occurs twice in {1, 1, 1, 1, 1}.
+     *
+     * @param string the string to search
+     * @return the number of occurrences
+     */
+    public int countIn(ByteString string) {
+        int count = 0;
+        int patternLength = pattern.length();
+        for (int i = indexIn(string, 0); i >= 0; i = indexIn(string, i + patternLength)) {
+            ++count;
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "ByteStringMatcher" + pattern;
+    }
+
+    /**
+     * Two-Way search for one direction. The needle is held in the order it is compared, so
+     * backward searches use the reversed pattern against the string read from right to left.
+     */
+    private static final class Searcher {
+
+        private final byte[] needle;
+
+        /**
+         * For each byte value, 1 + the index of its last occurrence in the needle, or 0.
+         */
+        private final int[] shift = new int[256];
+
+        /**
+         * Index of the last byte of the left half of the critical factorization, -1 if the
+         * left half is empty.
+         */
+        private final int split;
+
+        private final int period;
+
+        /**
+         * Length of the prefix known to match after shifting by a period, non-zero only for
+         * periodic needles.
+         */
+        private final int memoryAfterPeriod;
+
+        Searcher(byte[] needle) {
+
+            this.needle = needle;
+            int length = needle.length;
+            for (int i=0; i<length; ++i) {
+                shift[needle[i] & 0xFF] = i + 1;
+            }
+
+            // Maximal suffix with respect to both orderings, the longer of the two gives
+            // the critical factorization
+            int[] greater = maximalSuffix(needle, false);
+            int[] lesser = maximalSuffix(needle, true);
+            int split;
+            int period;
+            if (lesser[0] > greater[0]) {
+                split = lesser[0];
+                period = lesser[1];
+            } else {
+                split = greater[0];
+                period = greater[1];
+            }
+
+            if (isPeriodic(needle, split, period)) {
+                this.memoryAfterPeriod = length - period;
+            } else {
+                this.memoryAfterPeriod = 0;
+                period = Math.max(split, length - split - 1) + 1;
+            }
+            this.split = split;
+            this.period = period;
+
+        }
+
+        /**
+         * Returns { index before the maximal suffix, period of the suffix } of the needle,
+         * comparing bytes as unsigned values, in reversed order if reverse is true.
+         */
+        private static int[] maximalSuffix(byte[] needle, boolean reverse) {
+            int length = needle.length;
+            int i = -1;
+            int j = 0;
+            int k = 1;
+            int period = 1;
+            while (j + k < length) {
+                int a = needle[i + k] & 0xFF;
+                int b = needle[j + k] & 0xFF;
+                if (a == b) {
+                    if (k == period) {
+                        j += period;
+                        k = 1;
+                    } else {
+                        ++k;
+                    }
+                } else if (reverse ? a < b : a > b) {
+                    j += k;
+                    k = 1;
+                    period = j - i;
+                } else {
+                    i = j++;
+                    k = period = 1;
+                }
+            }
+            return new int[] { i, period };
+        }
+
+        private static boolean isPeriodic(byte[] needle, int split, int period) {
+            for (int i=0; i<=split; ++i) {
+                if (needle[i] != needle[i + period])
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Searches the window positions 0..available - needle.length where position h is
+         * read from the string at index base + step * h. Exactly one of array and store is
+         * non-null; array indexes are further offset by arrayOffset.
+         *
+         * @return the position of the first match in search order, or -1
+         */
+        int search(byte[] array, int arrayOffset, ByteStore store, int base, int step,
+                int available) {
+
+            byte[] localNeedle = needle;
+            int[] localShift = shift;
+            int length = localNeedle.length;
+            int localSplit = split;
+            int limit = available - length;
+            if (store == null)
+                base += arrayOffset;
+
+            int h = 0;
+            int memory = 0;
+            while (h <= limit) {
+
+                int last = base + step * (h + length - 1);
+                byte value = store == null ? array[last] : store.byteAt(last);
+                int skip = length - localShift[value & 0xFF];
+                if (skip != 0) {
+                    h += Math.max(skip, memory);
+                    memory = 0;
+                    continue;
+                }
+
+                // Right half, left to right
+                int k = Math.max(localSplit + 1, memory);
+                while (k < length) {
+                    int index = base + step * (h + k);
+                    if (localNeedle[k] != (store == null ? array[index] : store.byteAt(index)))
+                        break;
+                    ++k;
+                }
+                if (k < length) {
+                    h += k - localSplit;
+                    memory = 0;
+                    continue;
+                }
+
+                // Left half, right to left
+                k = localSplit + 1;
+                while (k > memory) {
+                    int index = base + step * (h + k - 1);
+                    if (localNeedle[k - 1] != (store == null ? array[index] : store.byteAt(index)))
+                        break;
+                    --k;
+                }
+                if (k <= memory)
+                    return h;
+                h += period;
+                memory = memoryAfterPeriod;
+
+            }
+            return -1;
+
+        }
+
+    }
+
+}
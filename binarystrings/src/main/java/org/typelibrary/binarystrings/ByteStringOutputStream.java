@@ -6,8 +6,27 @@ import java.util.LinkedList;
 
 public final class ByteStringOutputStream extends OutputStream {
 
+    private static final ChunkAllocator HEAP_ALLOCATOR = new ChunkAllocator() {
+
+        @Override
+        public byte[] allocate(int size) {
+            return new byte[size];
+        }
+
+        @Override
+        public void release(byte[] chunk) {
+        }
+
+    };
+
     private final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
     private final int chunkSize;
+    private final ChunkAllocator allocator;
+
+    /**
+     * The array returned by toByteString, which must never be released.
+     */
+    private byte[] sharedChunk;
     
     private byte[] currentChunk;
     private int chunkPos;
@@ -18,9 +37,31 @@ public final class ByteStringOutputStream extends OutputStream {
     }
     
     public ByteStringOutputStream(int chunkSize) {
+        this(chunkSize, HEAP_ALLOCATOR);
+    }
+
+    /**
+     * Creates a stream which obtains its chunks from allocator and releases them back to it
+     * on {@link #reset()} and {@link #toByteString()}. With a pooling allocator such as
+     * {@link PooledChunkAllocator}, a stream that is reset after each message reuses the same
+     * chunks instead of allocating new ones. A single write larger
+     * than chunkSize still gets a chunk of its own size.
+     *
+     * @throws IllegalArgumentException if allocator is a PooledChunkAllocator whose chunk size
+     *         is not chunkSize, since it would pool none of the stream's chunks
+     */
+    public ByteStringOutputStream(int chunkSize, ChunkAllocator allocator) {
         if (chunkSize < 1)
             throw new IllegalArgumentException();
+        if (allocator == null)
+            throw new NullPointerException("Allocator cannot be null");
+        if (allocator instanceof PooledChunkAllocator
+                && ((PooledChunkAllocator) allocator).chunkSize() != chunkSize)
+            throw new IllegalArgumentException("Chunk size " + chunkSize
+                    + " does not match the allocator's chunk size "
+                    + ((PooledChunkAllocator) allocator).chunkSize());
         this.chunkSize = chunkSize;
+        this.allocator = allocator;
     }
     
     @Override
@@ -59,9 +100,9 @@ public final class ByteStringOutputStream extends OutputStream {
         
         if (currentChunk == null) {
             if (currentWrite < chunkSize)
-                currentChunk = new byte[chunkSize];
+                currentChunk = allocator.allocate(chunkSize);
             else
-                currentChunk = new byte[currentWrite];
+                currentChunk = allocator.allocate(currentWrite);
         }
 
         if (chunkPos == currentChunk.length) {
@@ -69,9 +110,9 @@ public final class ByteStringOutputStream extends OutputStream {
             flushedBytes += currentChunk.length;
 
             if (currentWrite < chunkSize)
-                currentChunk = new byte[chunkSize];
+                currentChunk = allocator.allocate(chunkSize);
             else
-                currentChunk = new byte[currentWrite];
+                currentChunk = allocator.allocate(currentWrite);
             
             chunkPos = 0;
         }
@@ -87,7 +128,14 @@ public final class ByteStringOutputStream extends OutputStream {
     }
 
     public synchronized void reset() {
+        for (byte[] chunk : chunks) {
+            if (chunk != sharedChunk)
+                allocator.release(chunk);
+        }
+        if (currentChunk != null)
+            allocator.release(currentChunk);
         chunks.clear();
+        sharedChunk = null;
         currentChunk = null;
         flushedBytes = 0;
         chunkPos = 0;
@@ -117,6 +165,7 @@ public final class ByteStringOutputStream extends OutputStream {
         reset();
         
         chunks.add(buffer);
+        sharedChunk = buffer;
         flushedBytes = buffer.length; 
         
         return new ByteString(0, totalLength, buffer);
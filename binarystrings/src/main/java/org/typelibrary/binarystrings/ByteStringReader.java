@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.nio.BufferUnderflowException;
+
+/**
+ * Cursor over a ByteString for decoding big-endian (network order) binary formats.
+ *
+ * <p>
+ * The relative getXxx methods read at the current position and advance it, throwing
+ * BufferUnderflowException if the field extends past the end of the string. The absolute
+ * variants take an index, leave the position unchanged, and throw IndexOutOfBoundsException.
+ * Each field is bounds checked once and then read directly from the backing array of the
+ * string, without allocating. {@link #readSlice(int)} returns a substring which shares the
+ * bytes of the string rather than copying them.
+ * </p>
+ *
+ * <p>
+ * Not thread safe. The underlying ByteString can be shared by any number of readers.
+ * </p>
+ */
+public final class ByteStringReader {
+
+    private final ByteString string;
+    private final byte[] array;
+    private final int arrayOffset;
+    private final int length;
+    private int position;
+
+    public ByteStringReader(ByteString string) {
+        if (string == null)
+            throw new NullPointerException("String cannot be null");
+        this.string = string;
+        this.array = string.backingArray();
+        this.arrayOffset = string.arrayOffset();
+        this.length = string.length();
+    }
+
+    public ByteString string() {
+        return string;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public ByteStringReader position(int newPosition) {
+        if (newPosition < 0 || newPosition > length)
+            throw new IllegalArgumentException("position=" + newPosition + ", length=" + length);
+        this.position = newPosition;
+        return this;
+    }
+
+    public int remaining() {
+        return length - position;
+    }
+
+    public boolean hasRemaining() {
+        return position < length;
+    }
+
+    public ByteStringReader skip(int count) {
+        advance(count);
+        return this;
+    }
+
+    /**
+     * Returns the current position and advances it by count, after checking that count bytes
+     * remain.
+     */
+    private int advance(int count) {
+        int pos = position;
+        if (count < 0 || count > length - pos)
+            throw new BufferUnderflowException();
+        position = pos + count;
+        return pos;
+    }
+
+    private void checkIndex(int index, int count) {
+        if (index < 0 || index > length - count)
+            throw new IndexOutOfBoundsException("index=" + index + ", length=" + length);
+    }
+
+    private byte at(int index) {
+        return array != null ? array[arrayOffset + index] : string.byteAt(index);
+    }
+
+    private int readShort(int index) {
+        if (array != null) {
+            int i = arrayOffset + index;
+            return array[i] << 8 | (array[i + 1] & 0xFF);
+        }
+        return at(index) << 8 | (at(index + 1) & 0xFF);
+    }
+
+    private int readInt(int index) {
+        if (array != null) {
+            byte[] localArray = array;
+            int i = arrayOffset + index;
+            return localArray[i] << 24 | (localArray[i + 1] & 0xFF) << 16
+                    | (localArray[i + 2] & 0xFF) << 8 | (localArray[i + 3] & 0xFF);
+        }
+        return at(index) << 24 | (at(index + 1) & 0xFF) << 16 | (at(index + 2) & 0xFF) << 8
+                | (at(index + 3) & 0xFF);
+    }
+
+    private long readLong(int index) {
+        return (long) readInt(index) << 32 | (readInt(index + 4) & 0xFFFFFFFFL);
+    }
+
+    public byte getByte() {
+        return at(advance(1));
+    }
+
+    public int getUnsignedByte() {
+        return at(advance(1)) & 0xFF;
+    }
+
+    public short getShort() {
+        return (short) readShort(advance(2));
+    }
+
+    public int getUnsignedShort() {
+        return readShort(advance(2)) & 0xFFFF;
+    }
+
+    public int getInt() {
+        return readInt(advance(4));
+    }
+
+    public long getUnsignedInt() {
+        return readInt(advance(4)) & 0xFFFFFFFFL;
+    }
+
+    public long getLong() {
+        return readLong(advance(8));
+    }
+
+    public byte getByte(int index) {
+        checkIndex(index, 1);
+        return at(index);
+    }
+
+    public int getUnsignedByte(int index) {
+        checkIndex(index, 1);
+        return at(index) & 0xFF;
+    }
+
+    public short getShort(int index) {
+        checkIndex(index, 2);
+        return (short) readShort(index);
+    }
+
+    public int getUnsignedShort(int index) {
+        checkIndex(index, 2);
+        return readShort(index) & 0xFFFF;
+    }
+
+    public int getInt(int index) {
+        checkIndex(index, 4);
+        return readInt(index);
+    }
+
+    public long getUnsignedInt(int index) {
+        checkIndex(index, 4);
+        return readInt(index) & 0xFFFFFFFFL;
+    }
+
+    public long getLong(int index) {
+        checkIndex(index, 8);
+        return readLong(index);
+    }
+
+    /**
+     * Returns the next count bytes as a substring sharing the bytes of the underlying string,
+     * and advances the position past them.
+     *
+     * @param count the number of bytes
+     * @return the substring
+     */
+    public ByteString readSlice(int count) {
+        int pos = advance(count);
+        return string.substring(pos, pos + count);
+    }
+
+    /**
+     * Returns count bytes starting at index as a substring sharing the bytes of the
+     * underlying string. The position is not changed.
+     */
+    public ByteString slice(int index, int count) {
+        if (count < 0)
+            throw new IndexOutOfBoundsException("count=" + count);
+        checkIndex(index, count);
+        return string.substring(index, index + count);
+    }
+
+    @Override
+    public String toString() {
+        return "[pos=" + position + ", len=" + length + "]";
+    }
+
+}
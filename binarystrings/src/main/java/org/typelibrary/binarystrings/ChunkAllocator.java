@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+/**
+ * Supplies the chunks a {@link ByteStringOutputStream} writes into, and takes them back when
+ * the stream no longer needs them.
+ *
+ * <p>
+ * Implementations must be thread safe, since streams sharing an allocator may be used from
+ * different threads.
+ * </p>
+ *
+ * @see PooledChunkAllocator
+ */
+public interface ChunkAllocator {
+
+    /**
+     * Returns an array of exactly size bytes. Its contents are unspecified.
+     */
+    byte[] allocate(int size);
+
+    /**
+     * Returns a chunk obtained from {@link #allocate(int)} that the caller will no longer
+     * use. The allocator may hand it out again.
+     */
+    void release(byte[] chunk);
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Flat sequence of ByteString segments, such as the chunks written to an output stream.
+ * Segments are located by a binary search over their start indexes.
+ */
+final class ChunkedByteStore extends ByteStore {
+
+    private final ByteString[] segments;
+    private final int[] starts;
+    private final int depth;
+
+    /**
+     * @param segments the segments, none of which may be empty. The array is not copied.
+     */
+    ChunkedByteStore(ByteString[] segments) {
+        this.segments = segments;
+        this.starts = new int[segments.length + 1];
+        long length = 0;
+        int depth = 0;
+        for (int i=0; i<segments.length; ++i) {
+            starts[i] = (int) length;
+            length += segments[i].length();
+            depth = Math.max(depth, segments[i].depth());
+        }
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Total length cannot be > "
+                    + Integer.MAX_VALUE + ". length=" + length);
+        this.starts[segments.length] = (int) length;
+        this.depth = depth + 1;
+    }
+
+    int numSegments() {
+        return segments.length;
+    }
+
+    private int segmentAt(int index) {
+        int segment = Arrays.binarySearch(starts, 0, segments.length, index);
+        return segment >= 0 ? segment : -(segment + 1) - 1;
+    }
+
+    @Override
+    int length() {
+        return starts[segments.length];
+    }
+
+    @Override
+    int depth() {
+        return depth;
+    }
+
+    @Override
+    int footprint() {
+        int footprint = 0;
+        for (ByteString segment : segments) {
+            footprint += segment.footprint();
+        }
+        return footprint;
+    }
+
+    @Override
+    byte byteAt(int index) {
+        int segment = segmentAt(index);
+        return segments[segment].byteAt(index - starts[segment]);
+    }
+
+    @Override
+    void copyTo(int index, byte[] target, int targetOffset, int count) {
+        int segment = segmentAt(index);
+        int segmentIndex = index - starts[segment];
+        while (count > 0) {
+            int n = Math.min(count, segments[segment].length() - segmentIndex);
+            segments[segment].copyTo(segmentIndex, target, targetOffset, n);
+            targetOffset += n;
+            count -= n;
+            segmentIndex = 0;
+            ++segment;
+        }
+    }
+
+    @Override
+    void copyTo(int index, ByteBuffer target, int count) {
+        int segment = segmentAt(index);
+        int segmentIndex = index - starts[segment];
+        while (count > 0) {
+            int n = Math.min(count, segments[segment].length() - segmentIndex);
+            segments[segment].copyTo(segmentIndex, target, n);
+            count -= n;
+            segmentIndex = 0;
+            ++segment;
+        }
+    }
+
+    @Override
+    ByteString substring(int beginIndex, int endIndex) {
+        int first = segmentAt(beginIndex);
+        int last = segmentAt(endIndex - 1);
+        if (first == last)
+            return segments[first].substring(beginIndex - starts[first], endIndex - starts[first]);
+
+        ByteString[] subSegments = new ByteString[last - first + 1];
+        subSegments[0] = segments[first].substring(beginIndex - starts[first]);
+        for (int i=first+1; i<last; ++i) {
+            subSegments[i - first] = segments[i];
+        }
+        subSegments[last - first] = segments[last].substring(0, endIndex - starts[last]);
+        return new ByteString(new ChunkedByteStore(subSegments));
+    }
+
+    @Override
+    int hash(int h) {
+        for (ByteString segment : segments) {
+            h = segment.hash(h);
+        }
+        return h;
+    }
+
+    @Override
+    void addByteBuffers(List<ByteBuffer> buffers) {
+        for (ByteString segment : segments) {
+            segment.addByteBuffers(buffers);
+        }
+    }
+
+    @Override
+    void forEach(int beginIndex, int endIndex, ByteConsumer consumer) {
+        if (beginIndex == endIndex)
+            return;
+        for (int segment=segmentAt(beginIndex); segment<segments.length
+                && starts[segment]<endIndex; ++segment) {
+            int start = starts[segment];
+            segments[segment].forEach(Math.max(beginIndex - start, 0),
+                    Math.min(endIndex - start, segments[segment].length()), consumer);
+        }
+    }
+
+    @Override
+    void forEachChunk(int beginIndex, int endIndex, ByteChunkConsumer consumer) {
+        for (int segment=segmentAt(beginIndex); segment<segments.length
+                && starts[segment]<endIndex; ++segment) {
+            int start = starts[segment];
+            segments[segment].forEachChunk(Math.max(beginIndex - start, 0),
+                    Math.min(endIndex - start, segments[segment].length()), consumer);
+        }
+    }
+
+    @Override
+    int indexOf(byte value, int fromIndex) {
+        if (fromIndex < 0)
+            fromIndex = 0;
+        if (fromIndex >= length())
+            return -1;
+        for (int segment=segmentAt(fromIndex); segment<segments.length; ++segment) {
+            int index = segments[segment].indexOf(value, fromIndex - starts[segment]);
+            if (index >= 0)
+                return index + starts[segment];
+            fromIndex = starts[segment + 1];
+        }
+        return -1;
+    }
+
+    @Override
+    int lastIndexOf(byte value, int fromIndex) {
+        if (fromIndex < 0)
+            return -1;
+        if (fromIndex >= length())
+            fromIndex = length() - 1;
+        for (int segment=segmentAt(fromIndex); segment>=0; --segment) {
+            int index = segments[segment].lastIndexOf(value, fromIndex - starts[segment]);
+            if (index >= 0)
+                return index + starts[segment];
+            fromIndex = starts[segment] - 1;
+        }
+        return -1;
+    }
+
+    @Override
+    boolean regionMatches(int index, byte[] other, int otherOffset, int count) {
+        if (count == 0)
+            return true;
+        int segment = segmentAt(index);
+        int segmentIndex = index - starts[segment];
+        while (count > 0) {
+            int n = Math.min(count, segments[segment].length() - segmentIndex);
+            if (!segments[segment].regionMatches(segmentIndex, other, otherOffset, n))
+                return false;
+            otherOffset += n;
+            count -= n;
+            segmentIndex = 0;
+            ++segment;
+        }
+        return true;
+    }
+
+    @Override
+    boolean regionMatches(int index, ByteString other, int otherIndex, int count) {
+        if (count == 0)
+            return true;
+        int segment = segmentAt(index);
+        int segmentIndex = index - starts[segment];
+        while (count > 0) {
+            int n = Math.min(count, segments[segment].length() - segmentIndex);
+            if (!ByteString.regionMatches(segments[segment], segmentIndex, other, otherIndex, n))
+                return false;
+            otherIndex += n;
+            count -= n;
+            segmentIndex = 0;
+            ++segment;
+        }
+        return true;
+    }
+
+}
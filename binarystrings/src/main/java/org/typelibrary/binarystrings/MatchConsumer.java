@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+/**
+ * Receives the matches reported by a {@link MultiPatternMatcher}.
+ */
+public interface MatchConsumer {
+
+    /**
+     * @param pattern the index of the matching pattern in the matcher
+     * @param start the position of the first byte of the match
+     */
+    void accept(int pattern, long start);
+
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Precompiled search for many byte patterns at once, using an Aho-Corasick automaton.
+ *
+ * <p>
+ * All occurrences of all patterns are found in a single pass over the searched bytes, in time
+ * proportional to the number of bytes plus the number of matches, regardless of how many
+ * patterns there are. Patterns are identified by their index in the list they were compiled
+ * from. Overlapping matches, and matches of patterns that are substrings of other patterns,
+ * are all reported.
+ * </p>
+ *
+ * <p>
+ * The automaton is built as a complete transition table over the byte values that occur in
+ * the patterns; all other byte values share a single column. A matcher is immutable and can
+ * be shared between threads. To search data that arrives in pieces, use a {@link Scanner}
+ * from {@link #newScanner()}, which finds matches that span the pieces.
+ * </p>
+ */
+public final class MultiPatternMatcher {
+
+    /**
+     * Largest number of entries in the transition table, which is the largest int array most
+     * VMs will allocate.
+     */
+    static final int MAX_TABLE_SIZE = Integer.MAX_VALUE - 8;
+
+    private final ByteString[] patterns;
+
+    /**
+     * Maps each byte value to its column in the transition table.
+     */
+    private final int[] columns = new int[256];
+    private final int numColumns;
+
+    /**
+     * Next state for each state and column, at transitions[state * numColumns + column].
+     * State 0 is the root.
+     */
+    private final int[] transitions;
+
+    /**
+     * Patterns that end at each state, including those reached through failure links, or
+     * null if none.
+     */
+    private final int[][] outputs;
+
+    private MultiPatternMatcher(ByteString[] patterns) {
+
+        this.patterns = patterns;
+
+        long maxStates = 1;
+        int numColumns = 1;
+        for (ByteString pattern : patterns) {
+            maxStates += pattern.length();
+            for (int i=0; i<pattern.length(); ++i) {
+                int value = pattern.byteAt(i) & 0xFF;
+                if (columns[value] == 0)
+                    columns[value] = numColumns++;
+            }
+        }
+        this.numColumns = numColumns;
+
+        // The trie has at most one state per pattern byte, plus the root
+        long tableSize = maxStates * numColumns;
+        if (tableSize > MAX_TABLE_SIZE)
+            throw new IllegalArgumentException("Patterns too large: " + (maxStates - 1)
+                    + " bytes over " + numColumns + " columns need a transition table of "
+                    + tableSize + " entries, more than the limit of " + MAX_TABLE_SIZE);
+
+        // Trie
+        int[] table = new int[(int) tableSize];
+        Arrays.fill(table, -1);
+        int[][] own = new int[(int) maxStates][];
+        int numStates = 1;
+        for (int p=0; p<patterns.length; ++p) {
+            ByteString pattern = patterns[p];
+            int state = 0;
+            for (int i=0; i<pattern.length(); ++i) {
+                int slot = state * numColumns + columns[pattern.byteAt(i) & 0xFF];
+                if (table[slot] < 0)
+                    table[slot] = numStates++;
+                state = table[slot];
+            }
+            own[state] = append(own[state], p);
+        }
+
+        // Failure links in breadth first order, turning the trie into a complete automaton
+        int[] fail = new int[numStates];
+        int[][] outputs = new int[numStates][];
+        int[] queue = new int[numStates];
+        int head = 0;
+        int tail = 0;
+        outputs[0] = own[0];
+        for (int c=0; c<numColumns; ++c) {
+            int next = table[c];
+            if (next < 0) {
+                table[c] = 0;
+            } else {
+                fail[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            outputs[state] = concat(own[state], outputs[fail[state]]);
+            for (int c=0; c<numColumns; ++c) {
+                int slot = state * numColumns + c;
+                int fallback = table[fail[state] * numColumns + c];
+                if (table[slot] < 0) {
+                    table[slot] = fallback;
+                } else {
+                    fail[table[slot]] = fallback;
+                    queue[tail++] = table[slot];
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(table, numStates * numColumns);
+        this.outputs = outputs;
+
+    }
+
+    private static int[] append(int[] values, int value) {
+        if (values == null)
+            return new int[] { value };
+        int[] result = Arrays.copyOf(values, values.length + 1);
+        result[values.length] = value;
+        return result;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /**
+     * Compiles a matcher for the specified patterns. Pattern i is reported with index i.
+     *
+     * @param patterns the byte sequences to search for
+     * @return the matcher
+     * @throws IllegalArgumentException if any pattern is empty, or if the transition table,
+     *         with a row for each pattern byte and a column for each distinct byte value, would
+     *         need more than Integer.MAX_VALUE - 8 entries
+     */
+    public static MultiPatternMatcher compile(ByteString... patterns) {
+        if (patterns == null)
+            throw new NullPointerException("Patterns cannot be null");
+        ByteString[] copy = patterns.clone();
+        for (ByteString pattern : copy) {
+            if (pattern == null)
+                throw new NullPointerException("Pattern cannot be null");
+            if (pattern.isEmpty())
+                throw new IllegalArgumentException("Pattern cannot be empty");
+        }
+        return new MultiPatternMatcher(copy);
+    }
+
+    /**
+     * Compiles a matcher for the specified patterns, indexed in iteration order.
+     *
+     * @param patterns the byte sequences to search for
+     * @return the matcher
+     * @throws IllegalArgumentException if any pattern is empty, or if the transition table,
+     *         with a row for each pattern byte and a column for each distinct byte value, would
+     *         need more than Integer.MAX_VALUE - 8 entries
+     */
+    public static MultiPatternMatcher compile(Collection<ByteString> patterns) {
+        if (patterns == null)
+            throw new NullPointerException("Patterns cannot be null");
+        return compile(patterns.toArray(new ByteString[patterns.size()]));
+    }
+
+    public int numPatterns() {
+        return patterns.length;
+    }
+
+    public ByteString pattern(int index) {
+        return patterns[index];
+    }
+
+    /**
+     * Reports every occurrence of every pattern in string to consumer, in order of the end
+     * of the match. Start positions are indexes into string.
+     *
+     * @param string the string to search
+     * @param consumer receives the matches
+     */
+    public void findIn(ByteString string, MatchConsumer consumer) {
+        if (consumer == null)
+            throw new NullPointerException("Consumer cannot be null");
+        newScanner().scan(string, consumer);
+    }
+
+    /**
+     * Returns true if any pattern occurs in string. Stops at the first match.
+     */
+    public boolean isAnyContainedIn(ByteString string) {
+        return firstMatchState(string) > 0;
+    }
+
+    /**
+     * Returns the index of the pattern with the earliest ending occurrence in string, or -1
+     * if none occurs. If several patterns end at the same position, the longest one is
+     * returned. Stops at the first match.
+     */
+    public int firstMatchIn(ByteString string) {
+        int state = firstMatchState(string);
+        return state > 0 ? outputs[state][0] : -1;
+    }
+
+    /**
+     * Returns the state reached at the end of the first match in string, or -1 if none.
+     */
+    private int firstMatchState(ByteString string) {
+        int[] localTransitions = transitions;
+        int[] localColumns = columns;
+        int[][] localOutputs = outputs;
+        int localNumColumns = numColumns;
+        int length = string.length();
+        int state = 0;
+        byte[] array = string.backingArray();
+        if (array != null) {
+            int offset = string.arrayOffset();
+            for (int i=0; i<length; ++i) {
+                state = localTransitions[state * localNumColumns
+                        + localColumns[array[offset + i] & 0xFF]];
+                if (localOutputs[state] != null)
+                    return state;
+            }
+        } else {
+            for (int i=0; i<length; ++i) {
+                state = next(state, string.byteAt(i));
+                if (localOutputs[state] != null)
+                    return state;
+            }
+        }
+        return -1;
+    }
+
+    private int next(int state, byte value) {
+        return transitions[state * numColumns + columns[value & 0xFF]];
+    }
+
+    /**
+     * Creates a scanner positioned at the start of a new stream.
+     */
+    public Scanner newScanner() {
+        return new Scanner();
+    }
+
+    /**
+     * Searches a stream of bytes supplied in pieces. Matches that span the boundary between
+     * two pieces are found, and positions are counted from the start of the stream.
+     *
+     * <p>
+     * A scanner holds the state of one stream and is not thread safe. The matcher that
+     * created it can be used by other scanners concurrently.
+     * </p>
+     */
+    public final class Scanner {
+
+        private int state;
+        private long position;
+
+        private Scanner() {
+        }
+
+        /**
+         * Returns the number of bytes scanned since this scanner was created or reset.
+         */
+        public long position() {
+            return position;
+        }
+
+        /**
+         * Scans the next piece of the stream.
+         *
+         * @param string the next bytes of the stream
+         * @param consumer receives the matches ending in this piece
+         */
+        public void scan(ByteString string, final MatchConsumer consumer) {
+            if (consumer == null)
+                throw new NullPointerException("Consumer cannot be null");
+            string.forEachChunk(new ByteChunkConsumer() {
+                @Override
+                public void accept(byte[] bytes, int offset, int length) {
+                    scan(bytes, offset, length, consumer);
+                }
+            });
+        }
+
+        /**
+         * Scans the next piece of the stream.
+         *
+         * @param bytes the array holding the next bytes of the stream
+         * @param off the index of the first byte
+         * @param len the number of bytes
+         * @param consumer receives the matches ending in this piece
+         */
+        public void scan(byte[] bytes, int off, int len, MatchConsumer consumer) {
+
+            if (bytes == null)
+                throw new NullPointerException("Bytes cannot be null");
+            if (consumer == null)
+                throw new NullPointerException("Consumer cannot be null");
+            if (off < 0 || len < 0 || len > bytes.length - off)
+                throw new IndexOutOfBoundsException();
+
+            int[] localTransitions = transitions;
+            int[] localColumns = columns;
+            int[][] localOutputs = outputs;
+            ByteString[] localPatterns = patterns;
+            int localNumColumns = numColumns;
+            int localState = state;
+            long base = position - off + 1;
+            for (int i=off, end=off+len; i<end; ++i) {
+                localState = localTransitions[localState * localNumColumns
+                        + localColumns[bytes[i] & 0xFF]];
+                int[] matched = localOutputs[localState];
+                if (matched != null) {
+                    for (int pattern : matched) {
+                        consumer.accept(pattern, base + i - localPatterns[pattern].length());
+                    }
+                }
+            }
+            state = localState;
+            position += len;
+
+        }
+
+        /**
+         * Returns this scanner to the start of a new stream.
+         */
+        public void reset() {
+            state = 0;
+            position = 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,530 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Parallel versions of searching, counting, hashing and comparing operations for very large
+ * ByteStrings, such as mapped capture files.
+ *
+ * <p>
+ * Each operation splits the string into segments of at least {@link #MIN_SEGMENT_SIZE}
+ * bytes, processes them as tasks of the specified ForkJoinPool and combines the results.
+ * The results are always the same as those of the sequential operations: a match that
+ * straddles two segments is found by the segment in which it starts, and each segment is
+ * counted for every number of its first bytes that a match of the previous segment may
+ * cover, so that counts combine without scanning a segment again. Strings shorter than two
+ * segments are processed in the calling thread.
+ * </p>
+ *
+ * <p>
+ * Searches for the first occurrence or difference stop scheduling segments beyond one that
+ * has already found a result.
+ * </p>
+ */
+public final class ParallelByteStrings {
+
+    /**
+     * The smallest number of bytes processed by one task.
+     */
+    public static final int MIN_SEGMENT_SIZE = 1 << 20;
+
+    private ParallelByteStrings() {
+    }
+
+    /**
+     * Returns the segment size giving each worker of pool about four segments of string.
+     */
+    private static int segmentSize(ForkJoinPool pool, int length) {
+        int segments = pool.getParallelism() * 4;
+        return Math.max(MIN_SEGMENT_SIZE, (int) (((long) length + segments - 1) / segments));
+    }
+
+    /**
+     * Returns the index within string of the first occurrence of the pattern of matcher.
+     * Same result as {@link ByteStringMatcher#indexIn(ByteString)}.
+     */
+    public static int indexOf(ForkJoinPool pool, ByteString string, ByteStringMatcher matcher) {
+        return indexOf(pool, string, matcher, segmentSize(pool, string.length()));
+    }
+
+    static int indexOf(ForkJoinPool pool, final ByteString string,
+            final ByteStringMatcher matcher, int segmentSize) {
+        final int patternLength = matcher.pattern().length();
+        final int length = string.length();
+        return findFirst(pool, length, segmentSize, new RangeSearch() {
+            @Override
+            public int search(int begin, int end) {
+                // Matches starting in the segment may extend past its end
+                int limit = (int) Math.min((long) end + patternLength - 1, length);
+                return matcher.indexIn(string, begin, limit);
+            }
+        });
+    }
+
+    /**
+     * Returns the number of non-overlapping occurrences of the pattern of matcher in string,
+     * counted from the start of the string. Same result as
+     * {@link ByteStringMatcher#countIn(ByteString)}.
+     */
+    public static int count(ForkJoinPool pool, ByteString string, ByteStringMatcher matcher) {
+        return count(pool, string, matcher, segmentSize(pool, string.length()));
+    }
+
+    static int count(ForkJoinPool pool, ByteString string, ByteStringMatcher matcher,
+            int segmentSize) {
+        return pool.invoke(new CountTask(string, matcher, 0, string.length(), segmentSize))
+                .counts[0];
+    }
+
+    /**
+     * Returns the same value as {@link ByteString#hashCode()}, computing the hash of each
+     * segment in parallel.
+     */
+    public static int hashCode(ForkJoinPool pool, ByteString string) {
+        return hashCode(pool, string, segmentSize(pool, string.length()));
+    }
+
+    static int hashCode(ForkJoinPool pool, ByteString string, int segmentSize) {
+        return pool.invoke(new HashTask(string, 0, string.length(), segmentSize));
+    }
+
+    /**
+     * Returns the CRC-32 of the bytes of string, the same value as {@link CRC32} updated with
+     * all of them.
+     */
+    public static long crc32(ForkJoinPool pool, ByteString string) {
+        return crc32(pool, string, segmentSize(pool, string.length()));
+    }
+
+    static long crc32(ForkJoinPool pool, ByteString string, int segmentSize) {
+        return pool.invoke(new Crc32Task(string, 0, string.length(), segmentSize));
+    }
+
+    /**
+     * Returns the index of the first byte that differs between a and b. Same result as
+     * {@link ByteString#mismatch(ByteString)}.
+     */
+    public static int mismatch(ForkJoinPool pool, ByteString a, ByteString b) {
+        return mismatch(pool, a, b, segmentSize(pool, Math.min(a.length(), b.length())));
+    }
+
+    static int mismatch(ForkJoinPool pool, final ByteString a, final ByteString b,
+            int segmentSize) {
+        int length = Math.min(a.length(), b.length());
+        int index = findFirst(pool, length, segmentSize, new RangeSearch() {
+            @Override
+            public int search(int begin, int end) {
+                int index = a.substring(begin, end).mismatch(b.substring(begin, end));
+                return index < 0 ? -1 : begin + index;
+            }
+        });
+        if (index >= 0)
+            return index;
+        return a.length() == b.length() ? -1 : length;
+    }
+
+    /**
+     * Returns true if a and b hold the same bytes. Same result as
+     * {@link ByteString#equals(Object)}.
+     */
+    public static boolean equals(ForkJoinPool pool, ByteString a, ByteString b) {
+        if (a == b)
+            return true;
+        if (a.length() != b.length())
+            return false;
+        return mismatch(pool, a, b) < 0;
+    }
+
+    /**
+     * Searches a range for the first index satisfying some condition.
+     */
+    private interface RangeSearch {
+
+        /**
+         * Returns the first index in begin to end - 1 satisfying the condition, or -1.
+         */
+        int search(int begin, int end);
+
+    }
+
+    private static int findFirst(ForkJoinPool pool, int length, int segmentSize,
+            RangeSearch search) {
+        if (length <= segmentSize)
+            return search.search(0, length);
+        AtomicInteger found = new AtomicInteger(Integer.MAX_VALUE);
+        pool.invoke(new FindFirstTask(search, found, 0, length, segmentSize));
+        int index = found.get();
+        return index == Integer.MAX_VALUE ? -1 : index;
+    }
+
+    /**
+     * Finds the first index of a range, publishing the smallest index found so far so that
+     * segments beyond it are skipped.
+     */
+    private static final class FindFirstTask extends RecursiveTask<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RangeSearch search;
+        private final AtomicInteger found;
+        private final int begin;
+        private final int end;
+        private final int segmentSize;
+
+        FindFirstTask(RangeSearch search, AtomicInteger found, int begin, int end,
+                int segmentSize) {
+            this.search = search;
+            this.found = found;
+            this.begin = begin;
+            this.end = end;
+            this.segmentSize = segmentSize;
+        }
+
+        @Override
+        protected Void compute() {
+            if (found.get() < begin)
+                return null;
+            if (end - begin <= segmentSize) {
+                int index = search.search(begin, end);
+                if (index >= 0) {
+                    int current;
+                    while (index < (current = found.get())
+                            && !found.compareAndSet(current, index)) {
+                    }
+                }
+                return null;
+            }
+            int middle = begin + (end - begin) / 2;
+            FindFirstTask right = new FindFirstTask(search, found, middle, end, segmentSize);
+            right.fork();
+            new FindFirstTask(search, found, begin, middle, segmentSize).compute();
+            if (found.get() < middle) {
+                right.cancel(false);
+                if (right.isCancelled())
+                    return null;
+            }
+            right.join();
+            return null;
+        }
+
+    }
+
+    /**
+     * Greedy counts of the matches starting in a range, for each entry offset: the number of
+     * bytes at the start of the range covered by a match of an earlier range.
+     */
+    private static final class CountResult {
+
+        /**
+         * Number of matches counted for each entry offset.
+         */
+        final int[] counts;
+
+        /**
+         * Entry offset of the next range for each entry offset: the number of bytes past the
+         * end of this range covered by its last counted match.
+         */
+        final int[] exits;
+
+        CountResult(int[] counts, int[] exits) {
+            this.counts = counts;
+            this.exits = exits;
+        }
+
+    }
+
+    private static final class CountTask extends RecursiveTask<CountResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ByteString string;
+        private final ByteStringMatcher matcher;
+        private final int begin;
+        private final int end;
+        private final int segmentSize;
+
+        /**
+         * End of the matches that start in the range.
+         */
+        private final int limit;
+
+        CountTask(ByteString string, ByteStringMatcher matcher, int begin, int end,
+                int segmentSize) {
+            this.string = string;
+            this.matcher = matcher;
+            this.begin = begin;
+            this.end = end;
+            this.segmentSize = segmentSize;
+            this.limit = (int) Math.min((long) end + matcher.pattern().length() - 1,
+                    string.length());
+        }
+
+        /**
+         * Returns the first match at or after from that starts before end, or -1.
+         */
+        private int next(int from) {
+            return from >= end ? -1 : matcher.indexIn(string, from, limit);
+        }
+
+        @Override
+        protected CountResult compute() {
+
+            if (end - begin <= segmentSize)
+                return scan(matcher.pattern().length());
+
+            int middle = begin + (end - begin) / 2;
+            CountTask rightTask = new CountTask(string, matcher, middle, end, segmentSize);
+            rightTask.fork();
+            CountResult left = new CountTask(string, matcher, begin, middle, segmentSize)
+                    .compute();
+            CountResult right = rightTask.join();
+
+            int[] counts = left.counts;
+            int[] exits = left.exits;
+            for (int e=0; e<counts.length; ++e) {
+                int x = exits[e];
+                counts[e] += right.counts[x];
+                exits[e] = right.exits[x];
+            }
+            return left;
+
+        }
+
+        /**
+         * Counts the matches of the range from every entry offset. Scans from entry offsets
+         * with different first matches interleave: the k-th match of each lies between the
+         * k-th and the k+1-th match of the scan before it. So the scans advance one match at
+         * a time in turn, and a scan that reaches the next match of its neighbour joins it.
+         * Scans only stay apart on periodic input, where each covers the range once.
+         */
+        private CountResult scan(int patternLength) {
+
+            int[] counts = new int[patternLength];
+            int[] exits = new int[patternLength];
+
+            // The distinct scans in order: the next match, the number of matches counted
+            // before it and the scan joined, or -1
+            int[] next = new int[patternLength];
+            int[] counted = new int[patternLength];
+            int[] joined = new int[patternLength];
+            int[] scanOf = new int[patternLength];
+            int scans = 0;
+            for (int e=0, previous=-1; e<patternLength; ++e) {
+                int first = next((int) Math.min((long) begin + e, end));
+                if (first < 0) {
+                    scanOf[e] = -1;
+                    exits[e] = (int) Math.max(0, (long) begin + e - end);
+                } else if (first == previous) {
+                    scanOf[e] = scans - 1;
+                } else {
+                    next[scans] = first;
+                    joined[scans] = -1;
+                    scanOf[e] = scans++;
+                }
+                previous = first;
+            }
+
+            int[] scanExits = new int[scans];
+            int[] order = new int[scans];
+            for (int i=0; i<scans; ++i) {
+                order[i] = i;
+            }
+            for (int live=scans; live>0; ) {
+                int kept = 0;
+                for (int i=0; i<live; ++i) {
+                    int j = order[i];
+                    int matchEnd = next[j] + patternLength;
+                    ++counted[j];
+                    int n = next(matchEnd);
+                    if (n < 0) {
+                        scanExits[j] = Math.max(0, matchEnd - end);
+                        continue;
+                    }
+                    next[j] = n;
+                    if (kept > 0) {
+                        int before = order[kept - 1];
+                        if (next[before] == n) {
+                            joined[j] = before;
+                            counted[j] -= counted[before];
+                            continue;
+                        }
+                    } else if (i == 0 && live > 1 && next[order[live - 1]] == n) {
+                        // The first scan reached the last, which has not advanced yet
+                        int last = order[--live];
+                        joined[last] = j;
+                        counted[last] -= counted[j];
+                    }
+                    order[kept++] = j;
+                }
+                live = kept;
+            }
+
+            for (int e=0; e<patternLength; ++e) {
+                int j = scanOf[e];
+                if (j < 0)
+                    continue;
+                int count = counted[j];
+                while (joined[j] >= 0) {
+                    j = joined[j];
+                    count += counted[j];
+                }
+                counts[e] = count;
+                exits[e] = scanExits[j];
+            }
+            return new CountResult(counts, exits);
+
+        }
+
+    }
+
+    private static final class HashTask extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ByteString string;
+        private final int begin;
+        private final int end;
+        private final int segmentSize;
+
+        HashTask(ByteString string, int begin, int end, int segmentSize) {
+            this.string = string;
+            this.begin = begin;
+            this.end = end;
+            this.segmentSize = segmentSize;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (end - begin <= segmentSize)
+                return string.substring(begin, end).hash(0);
+            int middle = begin + (end - begin) / 2;
+            HashTask right = new HashTask(string, middle, end, segmentSize);
+            right.fork();
+            int left = new HashTask(string, begin, middle, segmentSize).compute();
+            // hash(a + b) = hash(a) * 37^length(b) + hash(b)
+            return left * power(37, end - middle) + right.join();
+        }
+
+        private static int power(int base, int exponent) {
+            int result = 1;
+            for (; exponent > 0; exponent >>= 1) {
+                if ((exponent & 1) != 0)
+                    result *= base;
+                base *= base;
+            }
+            return result;
+        }
+
+    }
+
+    private static final class Crc32Task extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ByteString string;
+        private final int begin;
+        private final int end;
+        private final int segmentSize;
+
+        Crc32Task(ByteString string, int begin, int end, int segmentSize) {
+            this.string = string;
+            this.begin = begin;
+            this.end = end;
+            this.segmentSize = segmentSize;
+        }
+
+        @Override
+        protected Long compute() {
+            if (end - begin <= segmentSize) {
+                final CRC32 crc = new CRC32();
+                string.forEachChunk(begin, end, new ByteChunkConsumer() {
+                    @Override
+                    public void accept(byte[] bytes, int offset, int length) {
+                        crc.update(bytes, offset, length);
+                    }
+                });
+                return crc.getValue();
+            }
+            int middle = begin + (end - begin) / 2;
+            Crc32Task right = new Crc32Task(string, middle, end, segmentSize);
+            right.fork();
+            long left = new Crc32Task(string, begin, middle, segmentSize).compute();
+            return combine(left, right.join(), end - middle);
+        }
+
+        /**
+         * Returns the CRC of the concatenation of two byte sequences from their CRCs and the
+         * length of the second, as zlib's crc32_combine: the first CRC is advanced over
+         * length zero bytes by repeated squaring of the CRC shift operator.
+         */
+        private static long combine(long crc1, long crc2, long length2) {
+
+            if (length2 <= 0)
+                return crc1;
+
+            long[] even = new long[32];
+            long[] odd = new long[32];
+
+            // Operator for one zero bit
+            odd[0] = 0xEDB88320L;
+            long row = 1;
+            for (int n=1; n<32; ++n) {
+                odd[n] = row;
+                row <<= 1;
+            }
+            square(even, odd); // two zero bits
+            square(odd, even); // four zero bits
+
+            do {
+                square(even, odd);
+                if ((length2 & 1) != 0)
+                    crc1 = times(even, crc1);
+                length2 >>= 1;
+                if (length2 == 0)
+                    break;
+                square(odd, even);
+                if ((length2 & 1) != 0)
+                    crc1 = times(odd, crc1);
+                length2 >>= 1;
+            } while (length2 != 0);
+
+            return crc1 ^ crc2;
+
+        }
+
+        private static long times(long[] matrix, long vector) {
+            long sum = 0;
+            for (int i=0; vector != 0; ++i, vector >>>= 1) {
+                if ((vector & 1) != 0)
+                    sum ^= matrix[i];
+            }
+            return sum;
+        }
+
+        private static void square(long[] square, long[] matrix) {
+            for (int n=0; n<32; ++n) {
+                square[n] = times(matrix, matrix[n]);
+            }
+        }
+
+    }
+
+}
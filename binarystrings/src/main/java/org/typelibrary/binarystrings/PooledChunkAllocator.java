@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chunk allocator that recycles released chunks of one size.
+ *
+ * <p>
+ * Released chunks are kept in a number of stripes, each a small stack guarded by its own
+ * lock, and a thread allocates from and releases to the stripe selected by its id. Threads
+ * therefore rarely contend, while chunks released on one thread can still be reused by
+ * another thread of the same stripe. Each stripe holds a bounded number of chunks; further
+ * releases are left to the garbage collector. Chunks of any other size are allocated fresh
+ * and never pooled.
+ * </p>
+ *
+ * <p>
+ * The counters report how many chunks were newly allocated and how many were reused, so
+ * that a steady state that allocates nothing can be confirmed.
+ * </p>
+ */
+public final class PooledChunkAllocator implements ChunkAllocator {
+
+    private final int chunkSize;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * Creates an allocator with one stripe per available processor, rounded up to a power
+     * of two.
+     *
+     * @param chunkSize the size of the pooled chunks
+     * @param maxChunksPerStripe the maximum number of idle chunks held by each stripe
+     */
+    public PooledChunkAllocator(int chunkSize, int maxChunksPerStripe) {
+        this(chunkSize, maxChunksPerStripe, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param chunkSize the size of the pooled chunks
+     * @param maxChunksPerStripe the maximum number of idle chunks held by each stripe
+     * @param numStripes the number of stripes, rounded up to a power of two
+     */
+    public PooledChunkAllocator(int chunkSize, int maxChunksPerStripe, int numStripes) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Chunk size must be > 0");
+        if (maxChunksPerStripe < 0)
+            throw new IllegalArgumentException("Max chunks per stripe cannot be negative");
+        if (numStripes < 1 || numStripes > 1 << 16)
+            throw new IllegalArgumentException("Number of stripes out of range: " + numStripes);
+        this.chunkSize = chunkSize;
+        int size = Integer.highestOneBit(numStripes - 1) << 1;
+        if (size == 0)
+            size = 1;
+        this.stripes = new Stripe[size];
+        for (int i=0; i<size; ++i) {
+            stripes[i] = new Stripe(maxChunksPerStripe);
+        }
+        this.stripeMask = size - 1;
+    }
+
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    private Stripe stripe() {
+        long id = Thread.currentThread().getId();
+        return stripes[(int) (id ^ (id >>> 16)) & stripeMask];
+    }
+
+    @Override
+    public byte[] allocate(int size) {
+        if (size == chunkSize) {
+            byte[] chunk = stripe().pop();
+            if (chunk != null) {
+                reused.incrementAndGet();
+                return chunk;
+            }
+        }
+        allocated.incrementAndGet();
+        return new byte[size];
+    }
+
+    @Override
+    public void release(byte[] chunk) {
+        if (chunk.length == chunkSize)
+            stripe().push(chunk);
+    }
+
+    /**
+     * Returns the number of arrays allocated because no pooled chunk was available.
+     */
+    public long allocatedChunks() {
+        return allocated.get();
+    }
+
+    /**
+     * Returns the number of allocations satisfied by a pooled chunk.
+     */
+    public long reusedChunks() {
+        return reused.get();
+    }
+
+    /**
+     * Returns the number of idle chunks currently held.
+     */
+    public int pooledChunks() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.size();
+        }
+        return count;
+    }
+
+    private static final class Stripe {
+
+        private final byte[][] chunks;
+        private int size;
+
+        Stripe(int capacity) {
+            this.chunks = new byte[capacity][];
+        }
+
+        synchronized byte[] pop() {
+            if (size == 0)
+                return null;
+            byte[] chunk = chunks[--size];
+            chunks[size] = null;
+            return chunk;
+        }
+
+        synchronized void push(byte[] chunk) {
+            if (size < chunks.length)
+                chunks[size++] = chunk;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+    }
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary tree of ByteStrings. Concatenation creates a new node that references both
+ * operands instead of copying them.
+ *
+ * <p>
+ * The tree is kept balanced as described in "Ropes: an Alternative to Strings" (Boehm,
+ * Atkinson and Plass). A tree of depth n is considered balanced if its length is at least
+ * the (n+2)th Fibonacci number. Concatenations that would produce an unbalanced tree are
+ * rebalanced, reusing any subtrees that are already balanced.
+ * </p>
+ */
+final class RopeByteStore extends ByteStore {
+
+    /**
+     * Concatenations producing strings shorter than this are copied into a flat ByteString
+     * rather than creating a tree node.
+     */
+    static final int CONCATENATE_BY_COPY_SIZE = 128;
+
+    private static final int[] MIN_LENGTH_BY_DEPTH;
+
+    static {
+        ArrayList<Integer> lengths = new ArrayList<Integer>();
+        int f1 = 1, f2 = 1;
+        while (f2 > 0) {
+            lengths.add(f2);
+            int next = f1 + f2;
+            f1 = f2;
+            f2 = next;
+        }
+        lengths.add(Integer.MAX_VALUE);
+        MIN_LENGTH_BY_DEPTH = new int[lengths.size()];
+        for (int i=0; i<MIN_LENGTH_BY_DEPTH.length; ++i) {
+            MIN_LENGTH_BY_DEPTH[i] = lengths.get(i);
+        }
+    }
+
+    private final ByteString left;
+    private final ByteString right;
+    private final int leftLength;
+    private final int length;
+    private final int depth;
+
+    private RopeByteStore(ByteString left, ByteString right) {
+        this.left = left;
+        this.right = right;
+        this.leftLength = left.length();
+        this.length = leftLength + right.length();
+        this.depth = Math.max(left.depth(), right.depth()) + 1;
+    }
+
+    static ByteString concatenate(ByteString left, ByteString right) {
+
+        if (right.isEmpty())
+            return left;
+        if (left.isEmpty())
+            return right;
+
+        long newLength = (long) left.length() + right.length();
+        if (newLength > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Concatenated length cannot be > "
+                    + Integer.MAX_VALUE + ". length=" + newLength);
+
+        if (newLength < CONCATENATE_BY_COPY_SIZE)
+            return copy(left, right);
+
+        ByteStore leftStore = left.store();
+        if (leftStore instanceof RopeByteStore) {
+            RopeByteStore leftRope = (RopeByteStore) leftStore;
+            // Appending a small string to a rope whose right child is also small
+            if (leftRope.right.length() + right.length() < CONCATENATE_BY_COPY_SIZE)
+                return node(leftRope.left, copy(leftRope.right, right));
+            // Rotate rather than deepen a tree that is already left-heavy
+            if (leftRope.left.depth() > leftRope.right.depth()
+                    && leftRope.depth > right.depth())
+                return node(leftRope.left, node(leftRope.right, right));
+        }
+
+        int newDepth = Math.max(left.depth(), right.depth()) + 1;
+        if (newLength >= minLength(newDepth))
+            return node(left, right);
+
+        return new Balancer().balance(left, right);
+    }
+
+    private static ByteString node(ByteString left, ByteString right) {
+        return new ByteString(new RopeByteStore(left, right));
+    }
+
+    private static ByteString copy(ByteString left, ByteString right) {
+        int leftLength = left.length();
+        byte[] buffer = new byte[leftLength + right.length()];
+        left.copyTo(0, buffer, 0, leftLength);
+        right.copyTo(0, buffer, leftLength, right.length());
+        return new ByteString(0, buffer.length, buffer);
+    }
+
+    static int minLength(int depth) {
+        if (depth >= MIN_LENGTH_BY_DEPTH.length)
+            return Integer.MAX_VALUE;
+        return MIN_LENGTH_BY_DEPTH[depth];
+    }
+
+    static boolean isBalanced(ByteString string) {
+        return string.length() >= minLength(string.depth());
+    }
+
+    @Override
+    int length() {
+        return length;
+    }
+
+    @Override
+    int depth() {
+        return depth;
+    }
+
+    @Override
+    int footprint() {
+        return left.footprint() + right.footprint();
+    }
+
+    @Override
+    byte byteAt(int index) {
+        RopeByteStore node = this;
+        while (true) {
+            ByteString child;
+            if (index < node.leftLength) {
+                child = node.left;
+            } else {
+                child = node.right;
+                index -= node.leftLength;
+            }
+            ByteStore childStore = child.store();
+            if (childStore instanceof RopeByteStore) {
+                node = (RopeByteStore) childStore;
+            } else {
+                return child.byteAt(index);
+            }
+        }
+    }
+
+    @Override
+    void copyTo(int index, byte[] target, int targetOffset, int count) {
+        if (index + count <= leftLength) {
+            left.copyTo(index, target, targetOffset, count);
+        } else if (index >= leftLength) {
+            right.copyTo(index - leftLength, target, targetOffset, count);
+        } else {
+            int leftCount = leftLength - index;
+            left.copyTo(index, target, targetOffset, leftCount);
+            right.copyTo(0, target, targetOffset + leftCount, count - leftCount);
+        }
+    }
+
+    @Override
+    void copyTo(int index, ByteBuffer target, int count) {
+        if (index + count <= leftLength) {
+            left.copyTo(index, target, count);
+        } else if (index >= leftLength) {
+            right.copyTo(index - leftLength, target, count);
+        } else {
+            int leftCount = leftLength - index;
+            left.copyTo(index, target, leftCount);
+            right.copyTo(0, target, count - leftCount);
+        }
+    }
+
+    @Override
+    ByteString substring(int beginIndex, int endIndex) {
+        if (endIndex <= leftLength)
+            return left.substring(beginIndex, endIndex);
+        if (beginIndex >= leftLength)
+            return right.substring(beginIndex - leftLength, endIndex - leftLength);
+        return node(left.substring(beginIndex), right.substring(0, endIndex - leftLength));
+    }
+
+    @Override
+    int hash(int h) {
+        return right.hash(left.hash(h));
+    }
+
+    @Override
+    void addByteBuffers(List<ByteBuffer> buffers) {
+        left.addByteBuffers(buffers);
+        right.addByteBuffers(buffers);
+    }
+
+    @Override
+    void forEach(int beginIndex, int endIndex, ByteConsumer consumer) {
+        if (beginIndex < leftLength)
+            left.forEach(beginIndex, Math.min(endIndex, leftLength), consumer);
+        if (endIndex > leftLength)
+            right.forEach(Math.max(beginIndex - leftLength, 0), endIndex - leftLength, consumer);
+    }
+
+    @Override
+    void forEachChunk(int beginIndex, int endIndex, ByteChunkConsumer consumer) {
+        if (beginIndex < leftLength)
+            left.forEachChunk(beginIndex, Math.min(endIndex, leftLength), consumer);
+        if (endIndex > leftLength)
+            right.forEachChunk(Math.max(beginIndex - leftLength, 0), endIndex - leftLength,
+                    consumer);
+    }
+
+    @Override
+    int indexOf(byte value, int fromIndex) {
+        if (fromIndex < leftLength) {
+            int index = left.indexOf(value, fromIndex);
+            if (index >= 0)
+                return index;
+            fromIndex = leftLength;
+        }
+        int index = right.indexOf(value, fromIndex - leftLength);
+        return index < 0 ? -1 : index + leftLength;
+    }
+
+    @Override
+    int lastIndexOf(byte value, int fromIndex) {
+        if (fromIndex >= leftLength) {
+            int index = right.lastIndexOf(value, fromIndex - leftLength);
+            if (index >= 0)
+                return index + leftLength;
+            fromIndex = leftLength - 1;
+        }
+        return left.lastIndexOf(value, fromIndex);
+    }
+
+    @Override
+    boolean regionMatches(int index, byte[] other, int otherOffset, int count) {
+        if (index + count <= leftLength)
+            return left.regionMatches(index, other, otherOffset, count);
+        if (index >= leftLength)
+            return right.regionMatches(index - leftLength, other, otherOffset, count);
+        int leftCount = leftLength - index;
+        return left.regionMatches(index, other, otherOffset, leftCount)
+                && right.regionMatches(0, other, otherOffset + leftCount, count - leftCount);
+    }
+
+    @Override
+    boolean regionMatches(int index, ByteString other, int otherIndex, int count) {
+        if (index + count <= leftLength)
+            return ByteString.regionMatches(left, index, other, otherIndex, count);
+        if (index >= leftLength)
+            return ByteString.regionMatches(right, index - leftLength, other, otherIndex, count);
+        int leftCount = leftLength - index;
+        return ByteString.regionMatches(left, index, other, otherIndex, leftCount)
+                && ByteString.regionMatches(right, 0, other, otherIndex + leftCount,
+                        count - leftCount);
+    }
+
+    /**
+     * Rebuilds a tree from its leaves and balanced subtrees. Each subtree is pushed onto a
+     * stack of prefixes ordered by the Fibonacci length bins above, merging with the prefixes
+     * that are shorter than itself.
+     */
+    private static final class Balancer {
+
+        private final ArrayDeque<ByteString> prefixes = new ArrayDeque<ByteString>();
+
+        ByteString balance(ByteString left, ByteString right) {
+            doBalance(left);
+            doBalance(right);
+            ByteString partial = prefixes.pop();
+            while (!prefixes.isEmpty()) {
+                partial = node(prefixes.pop(), partial);
+            }
+            return partial;
+        }
+
+        private void doBalance(ByteString root) {
+            ByteStore store = root.store();
+            if (store instanceof RopeByteStore && !isBalanced(root)) {
+                RopeByteStore rope = (RopeByteStore) store;
+                doBalance(rope.left);
+                doBalance(rope.right);
+            } else {
+                insert(root);
+            }
+        }
+
+        private void insert(ByteString string) {
+            int depthBin = depthBin(string.length());
+            int binEnd = minLength(depthBin + 1);
+
+            if (prefixes.isEmpty() || prefixes.peek().length() >= binEnd) {
+                prefixes.push(string);
+                return;
+            }
+
+            int binStart = minLength(depthBin);
+            ByteString tree = prefixes.pop();
+            while (!prefixes.isEmpty() && prefixes.peek().length() < binStart) {
+                tree = node(prefixes.pop(), tree);
+            }
+            tree = node(tree, string);
+
+            while (!prefixes.isEmpty()) {
+                depthBin = depthBin(tree.length());
+                binEnd = minLength(depthBin + 1);
+                if (prefixes.peek().length() < binEnd) {
+                    tree = node(prefixes.pop(), tree);
+                } else {
+                    break;
+                }
+            }
+            prefixes.push(tree);
+        }
+
+        private static int depthBin(int length) {
+            int depth = Arrays.binarySearch(MIN_LENGTH_BY_DEPTH, length);
+            if (depth < 0)
+                depth = -(depth + 1) - 1;
+            return depth;
+        }
+
+    }
+
+}
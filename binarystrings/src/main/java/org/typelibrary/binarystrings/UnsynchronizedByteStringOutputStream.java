@@ -0,0 +1,126 @@
+package org.typelibrary.binarystrings;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Unsynchronized equivalent of {@link ByteStringOutputStream} for use by a single thread.
+ *
+ * <p>
+ * {@link #toByteString()} does not copy the written bytes. The returned ByteString is a view
+ * over the chunks written so far, which are never modified afterwards: full chunks are not
+ * written to again and later writes to the current chunk land beyond the end of the view.
+ * The stream keeps its contents, so further writes and calls to toByteString() may follow.
+ * </p>
+ */
+public final class UnsynchronizedByteStringOutputStream extends OutputStream {
+
+    private final ArrayList<byte[]> chunks = new ArrayList<byte[]>();
+    private final int chunkSize;
+
+    private byte[] currentChunk;
+    private int chunkPos;
+    private int flushedBytes;
+
+    public UnsynchronizedByteStringOutputStream() {
+        this(1024);
+    }
+
+    public UnsynchronizedByteStringOutputStream(int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException();
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void write(int abyte) {
+
+        if (currentChunk == null || chunkPos == currentChunk.length)
+            nextChunk(1);
+
+        currentChunk[chunkPos++] = (byte) abyte;
+    }
+
+    @Override
+    public void write(byte[] bytes) {
+        if (bytes == null)
+            throw new NullPointerException("Bytes cannot be null");
+        write(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+
+        if (bytes == null)
+            throw new NullPointerException("Bytes cannot be null");
+        if (off < 0 || len < 0 || len > bytes.length - off)
+            throw new IndexOutOfBoundsException();
+
+        while (len > 0) {
+            if (currentChunk == null || chunkPos == currentChunk.length)
+                nextChunk(len);
+            int count = Math.min(len, currentChunk.length - chunkPos);
+            System.arraycopy(bytes, off, currentChunk, chunkPos, count);
+            chunkPos += count;
+            off += count;
+            len -= count;
+        }
+
+    }
+
+    private void nextChunk(int currentWrite) {
+
+        if (currentChunk != null) {
+            chunks.add(currentChunk);
+            flushedBytes += currentChunk.length;
+        }
+
+        currentChunk = new byte[Math.max(currentWrite, chunkSize)];
+        chunkPos = 0;
+
+    }
+
+    int numChunks() {
+        return chunks.size();
+    }
+
+    public int size() {
+        return flushedBytes + chunkPos;
+    }
+
+    public void reset() {
+        chunks.clear();
+        currentChunk = null;
+        flushedBytes = 0;
+        chunkPos = 0;
+    }
+
+    public String toString() {
+        return "";
+    }
+
+    public ByteString toByteString() {
+
+        int numChunks = chunks.size();
+        if (numChunks == 0) {
+            if (chunkPos == 0)
+                return ByteString.EMPTY;
+            return new ByteString(0, chunkPos, currentChunk);
+        }
+
+        ByteString[] segments = new ByteString[chunkPos > 0 ? numChunks + 1 : numChunks];
+        for (int i=0; i<numChunks; ++i) {
+            byte[] chunk = chunks.get(i);
+            segments[i] = new ByteString(0, chunk.length, chunk);
+        }
+        if (chunkPos > 0)
+            segments[numChunks] = new ByteString(0, chunkPos, currentChunk);
+
+        if (segments.length == 1)
+            return segments[0];
+
+        return new ByteString(new ChunkedByteStore(segments));
+
+    }
+
+}
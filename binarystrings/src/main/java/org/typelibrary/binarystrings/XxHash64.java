@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.binarystrings;
+
+/**
+ * The xxHash64 hash function by Yann Collet. Input is consumed eight bytes per step in four
+ * independent lanes, and the result matches the reference implementation for the same
+ * bytes and seed.
+ *
+ * <p>
+ * The static {@link #hash(byte[], int, int, long)} hashes a contiguous range. An instance
+ * hashes input supplied in several pieces, with the same result as hashing the
+ * concatenation of the pieces.
+ * </p>
+ */
+final class XxHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE = 32;
+
+    private final long seed;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long totalLength;
+
+    /**
+     * Input not yet consumed because it does not fill a stripe.
+     */
+    private final byte[] buffer = new byte[STRIPE];
+    private int buffered;
+
+    XxHash64(long seed) {
+        this.seed = seed;
+        this.v1 = seed + PRIME1 + PRIME2;
+        this.v2 = seed + PRIME2;
+        this.v3 = seed;
+        this.v4 = seed - PRIME1;
+    }
+
+    static long hash(byte[] bytes, int offset, int length, long seed) {
+
+        int end = offset + length;
+        int i = offset;
+        long h;
+        if (length >= STRIPE) {
+            long v1 = seed + PRIME1 + PRIME2;
+            long v2 = seed + PRIME2;
+            long v3 = seed;
+            long v4 = seed - PRIME1;
+            for (int limit = end - STRIPE; i <= limit; i += STRIPE) {
+                v1 = round(v1, ByteArrays.readLongLittleEndian(bytes, i));
+                v2 = round(v2, ByteArrays.readLongLittleEndian(bytes, i + 8));
+                v3 = round(v3, ByteArrays.readLongLittleEndian(bytes, i + 16));
+                v4 = round(v4, ByteArrays.readLongLittleEndian(bytes, i + 24));
+            }
+            h = converge(v1, v2, v3, v4);
+        } else {
+            h = seed + PRIME5;
+        }
+        h += length;
+        return finish(h, bytes, i, end);
+
+    }
+
+    void update(byte[] bytes, int offset, int length) {
+
+        totalLength += length;
+        int i = offset;
+        int end = offset + length;
+
+        if (buffered > 0) {
+            int count = Math.min(STRIPE - buffered, length);
+            System.arraycopy(bytes, i, buffer, buffered, count);
+            buffered += count;
+            i += count;
+            if (buffered < STRIPE)
+                return;
+            stripe(buffer, 0);
+            buffered = 0;
+        }
+
+        for (int limit = end - STRIPE; i <= limit; i += STRIPE) {
+            stripe(bytes, i);
+        }
+
+        buffered = end - i;
+        System.arraycopy(bytes, i, buffer, 0, buffered);
+
+    }
+
+    private void stripe(byte[] bytes, int i) {
+        v1 = round(v1, ByteArrays.readLongLittleEndian(bytes, i));
+        v2 = round(v2, ByteArrays.readLongLittleEndian(bytes, i + 8));
+        v3 = round(v3, ByteArrays.readLongLittleEndian(bytes, i + 16));
+        v4 = round(v4, ByteArrays.readLongLittleEndian(bytes, i + 24));
+    }
+
+    long digest() {
+        long h = totalLength >= STRIPE ? converge(v1, v2, v3, v4) : seed + PRIME5;
+        h += totalLength;
+        return finish(h, buffer, 0, buffered);
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+    }
+
+    private static long merge(long h, long v) {
+        return (h ^ round(0, v)) * PRIME1 + PRIME4;
+    }
+
+    private static long converge(long v1, long v2, long v3, long v4) {
+        long h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                + Long.rotateLeft(v4, 18);
+        h = merge(h, v1);
+        h = merge(h, v2);
+        h = merge(h, v3);
+        return merge(h, v4);
+    }
+
+    /**
+     * Mixes in the fewer than 32 remaining bytes in [i, end) and applies the final avalanche.
+     */
+    private static long finish(long h, byte[] bytes, int i, int end) {
+        for (; i + 8 <= end; i += 8) {
+            h ^= round(0, ByteArrays.readLongLittleEndian(bytes, i));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (i + 4 <= end) {
+            h ^= (ByteArrays.readIntLittleEndian(bytes, i) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        for (; i < end; ++i) {
+            h ^= (bytes[i] & 0xFF) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+}
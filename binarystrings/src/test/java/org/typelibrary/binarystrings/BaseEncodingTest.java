@@ -0,0 +1,143 @@
+package org.typelibrary.binarystrings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BaseEncodingTest {
+
+    private static final String[] INPUTS = { "", "f", "fo", "foo", "foob", "fooba", "foobar" };
+
+    private static ByteString ascii(String s) {
+        return ByteString.from(s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void assertVectors(BaseEncoding encoding, String... expected) {
+        for (int i=0; i<INPUTS.length; ++i) {
+            ByteString input = ascii(INPUTS[i]);
+            Assert.assertEquals(expected[i], encoding.encode(input));
+            Assert.assertEquals(expected[i].length(), encoding.encodedLength(input.length()));
+            Assert.assertEquals(input, encoding.decode(expected[i]));
+        }
+    }
+
+    @Test
+    public void testRfc4648Vectors() {
+        assertVectors(BaseEncoding.BASE16, "", "66", "666F", "666F6F", "666F6F62", "666F6F6261",
+                "666F6F626172");
+        assertVectors(BaseEncoding.BASE32_HEX, "", "CO======", "CPNG====", "CPNMU===",
+                "CPNMUOG=", "CPNMUOJ1", "CPNMUOJ1E8======");
+        assertVectors(BaseEncoding.BASE32_HEX.omitPadding().lowerCase(), "", "co", "cpng",
+                "cpnmu", "cpnmuog", "cpnmuoj1", "cpnmuoj1e8");
+        assertVectors(BaseEncoding.BASE64, "", "Zg==", "Zm8=", "Zm9v", "Zm9vYg==", "Zm9vYmE=",
+                "Zm9vYmFy");
+        assertVectors(BaseEncoding.BASE64.omitPadding(), "", "Zg", "Zm8", "Zm9v", "Zm9vYg",
+                "Zm9vYmE", "Zm9vYmFy");
+    }
+
+    @Test
+    public void testDecodeLenient() {
+        Assert.assertEquals(ascii("foobar"), BaseEncoding.BASE16.decode("666f6F62 6172"));
+        Assert.assertEquals(ascii("fo"), BaseEncoding.BASE32_HEX.decode("cpng"));
+        Assert.assertEquals(ascii("fooba"), BaseEncoding.BASE64.decode("Zm9v\r\n  YmE"));
+        Assert.assertEquals(ascii("f"), BaseEncoding.BASE64.omitPadding().decode("Zg=="));
+    }
+
+    @Test
+    public void testDecodeInvalid() {
+        String[][] invalid = { { "BASE16", "6" }, { "BASE16", "6G" }, { "BASE16", "66=" },
+                { "BASE32_HEX", "CW" }, { "BASE32_HEX", "C" }, { "BASE32_HEX", "CPN" },
+                { "BASE32_HEX", "CP" }, { "BASE64", "Z" }, { "BASE64", "Zg=A" },
+                { "BASE64", "Zh==" }, { "BASE64", "Zm-v" } };
+        for (String[] test : invalid) {
+            BaseEncoding encoding = test[0].equals("BASE16") ? BaseEncoding.BASE16
+                    : test[0].equals("BASE64") ? BaseEncoding.BASE64 : BaseEncoding.BASE32_HEX;
+            try {
+                encoding.decode(test[1]);
+                Assert.fail(test[0] + " accepted " + test[1]);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testEncodeSlices() {
+
+        byte[] bytes = new byte[300];
+        new Random(7).nextBytes(bytes);
+        ByteString flat = ByteString.from(bytes);
+        ByteString rope = ByteString.from(bytes, 0, 150).concat(ByteString.from(bytes, 150, 150));
+
+        for (BaseEncoding encoding : new BaseEncoding[] { BaseEncoding.BASE16,
+                BaseEncoding.BASE32_HEX, BaseEncoding.BASE64 }) {
+            String full = encoding.encode(flat);
+            Assert.assertEquals(full, encoding.encode(rope));
+            Assert.assertEquals(flat, encoding.decode(full));
+            // 120 to 270 is a whole number of blocks for every encoding
+            String slice = encoding.encode(rope, 120, 270);
+            Assert.assertEquals(flat.substring(120, 270), encoding.decode(slice));
+            Assert.assertEquals(full.substring(encoding.encodedLength(120),
+                    encoding.encodedLength(270)), slice);
+            StringBuilder target = new StringBuilder("x");
+            encoding.encode(flat.substring(120, 270), 0, 150, target);
+            Assert.assertEquals("x" + slice, target.toString());
+        }
+
+    }
+
+    @Test
+    public void testStreams() throws IOException {
+
+        byte[] bytes = new byte[10000];
+        new Random(11).nextBytes(bytes);
+
+        for (BaseEncoding encoding : new BaseEncoding[] { BaseEncoding.BASE16,
+                BaseEncoding.BASE32_HEX, BaseEncoding.BASE64.omitPadding() }) {
+
+            StringWriter writer = new StringWriter();
+            OutputStream out = encoding.encodingStream(writer);
+            for (int i=0; i<bytes.length; i+=7) {
+                out.write(bytes, i, Math.min(7, bytes.length - i));
+            }
+            out.write(1);
+            out.close();
+            String text = writer.toString();
+            Assert.assertEquals(encoding.encode(ByteString.from(bytes).concat(new byte[] { 1 })),
+                    text);
+
+            InputStream in = encoding.decodingStream(new StringReader(text));
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            Assert.assertEquals(bytes[0] & 0xFF, in.read());
+            decoded.write(bytes[0]);
+            byte[] buffer = new byte[333];
+            int count;
+            while ((count = in.read(buffer, 0, buffer.length)) >= 0) {
+                decoded.write(buffer, 0, count);
+            }
+            in.close();
+            byte[] result = decoded.toByteArray();
+            Assert.assertEquals(bytes.length + 1, result.length);
+            Assert.assertEquals(ByteString.from(bytes), ByteString.from(result, 0, bytes.length));
+        }
+
+        try {
+            InputStream in = BaseEncoding.BASE64.decodingStream(new StringReader("Zm9vY"));
+            while (in.read() >= 0) {
+            }
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+package org.typelibrary.binarystrings;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteArraysTest {
+
+    private static final byte[] VALUES = new byte[] { 0, 1, 0x7F, (byte) 0x80, (byte) 0x81,
+            (byte) 0xFE, (byte) 0xFF };
+
+    private static int naiveIndexOf(byte[] array, int fromIndex, int toIndex, byte value) {
+        for (int i=fromIndex; i<toIndex; ++i) {
+            if (array[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    private static int naiveLastIndexOf(byte[] array, int fromIndex, int toIndex, byte value) {
+        for (int i=toIndex-1; i>=fromIndex; --i) {
+            if (array[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    @Test
+    public void testIndexOf() {
+
+        for (int length=0; length<40; ++length) {
+            for (byte fill : VALUES) {
+                for (byte value : VALUES) {
+                    for (int pos=-1; pos<length; ++pos) {
+                        byte[] array = new byte[length + 3];
+                        Arrays.fill(array, fill);
+                        if (pos >= 0)
+                            array[pos + 1] = value;
+                        Assert.assertEquals(naiveIndexOf(array, 1, length + 1, value),
+                                ByteArrays.indexOf(array, 1, length + 1, value));
+                        Assert.assertEquals(naiveLastIndexOf(array, 1, length + 1, value),
+                                ByteArrays.lastIndexOf(array, 1, length + 1, value));
+                    }
+                }
+            }
+        }
+
+    }
+
+    @Test
+    public void testReadLittleEndian() {
+
+        byte[] array = new byte[] { 1, 2, 3, 4, 5, 6, 7, (byte) 0x88, 9 };
+        Assert.assertEquals(0x8807060504030201L, ByteArrays.readLongLittleEndian(array, 0));
+        Assert.assertEquals(0x0988070605040302L, ByteArrays.readLongLittleEndian(array, 1));
+        Assert.assertEquals(0x88070605, ByteArrays.readIntLittleEndian(array, 4));
+        try {
+            ByteArrays.readLongLittleEndian(array, 2);
+            Assert.fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // Expected
+        }
+
+    }
+
+    @Test
+    public void testByteStringSearch() {
+
+        byte[] array = new byte[50];
+        for (int i=0; i<array.length; ++i) {
+            array[i] = (byte) (i * 7);
+        }
+        ByteString string = ByteString.from(array).substring(3, 45);
+        for (int i=0; i<string.length(); ++i) {
+            byte value = string.byteAt(i);
+            Assert.assertEquals(i, string.indexOf(value));
+            Assert.assertEquals(i, string.indexOf(value, i));
+            Assert.assertEquals(-1, string.indexOf(value, i + 1));
+            Assert.assertEquals(i, string.lastIndexOf(value));
+            Assert.assertEquals(i, string.lastIndexOf(value, i));
+            Assert.assertEquals(-1, string.lastIndexOf(value, i - 1));
+        }
+        Assert.assertEquals(-1, string.indexOf(array[1]));
+        Assert.assertEquals(-1, string.lastIndexOf(array[46]));
+
+        ByteString needle = string.substring(30, 33);
+        Assert.assertEquals(30, string.indexOf(needle));
+        Assert.assertEquals(30, string.lastIndexOf(needle));
+        Assert.assertEquals(-1, string.indexOf(needle, 31));
+        Assert.assertEquals(-1, string.lastIndexOf(needle, 29));
+
+    }
+
+}
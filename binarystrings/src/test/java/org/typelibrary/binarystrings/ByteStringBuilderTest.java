@@ -0,0 +1,73 @@
+package org.typelibrary.binarystrings;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteStringBuilderTest {
+
+    @Test
+    public void testPut() {
+
+        ByteStringBuilder builder = new ByteStringBuilder(4);
+        builder.putByte(0xAB).putShort(0x0102).putInt(0x03040506).putLong(0x0708090A0B0C0D0EL);
+        builder.put(new byte[] { 1, 2, 3 }, 1, 2).put(ByteString.from(9, 8));
+        Assert.assertEquals(19, builder.length());
+        Assert.assertEquals(ByteString.from(0xAB, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14,
+                2, 3, 9, 8), builder.toByteString());
+
+        builder = new ByteStringBuilder();
+        builder.putShort(-1).putInt(-2).putLong(-3);
+        Assert.assertEquals(ByteString.from(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFE,
+                0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFD), builder.toByteString());
+
+    }
+
+    @Test
+    public void testReserve() {
+
+        ByteStringBuilder builder = new ByteStringBuilder();
+        builder.putByte(7);
+        int lengthField = builder.reserve(2);
+        Assert.assertEquals(1, lengthField);
+        builder.put(new byte[] { 1, 2, 3, 4, 5 });
+        builder.setShortAt(lengthField, builder.length() - lengthField - 2);
+        Assert.assertEquals(ByteString.from(7, 0, 5, 1, 2, 3, 4, 5), builder.toByteString());
+
+        builder.setIntAt(4, 0x01020304).setByteAt(0, 0);
+        Assert.assertEquals(ByteString.from(0, 0, 5, 1, 1, 2, 3, 4), builder.toByteString());
+        Assert.assertEquals(5, builder.byteAt(2));
+
+        try {
+            builder.setShortAt(7, 0);
+            Assert.fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+
+    }
+
+    @Test
+    public void testToByteStringSharesArray() {
+
+        ByteStringBuilder builder = new ByteStringBuilder(16);
+        builder.putInt(0x01020304);
+        ByteString first = builder.toByteString();
+        Assert.assertEquals(16, first.footprint());
+
+        // Later modifications do not change the returned string
+        builder.setByteAt(0, 9).putByte(5);
+        ByteString second = builder.toByteString();
+        Assert.assertEquals(ByteString.from(1, 2, 3, 4), first);
+        Assert.assertEquals(ByteString.from(9, 2, 3, 4, 5), second);
+
+        builder.clear();
+        builder.putByte(6);
+        Assert.assertEquals(ByteString.from(9, 2, 3, 4, 5), second);
+        Assert.assertEquals(ByteString.from(6), builder.toByteString());
+
+        builder.setLength(0);
+        Assert.assertSame(ByteString.EMPTY, builder.toByteString());
+
+    }
+
+}
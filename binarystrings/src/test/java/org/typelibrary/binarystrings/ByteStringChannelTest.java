@@ -0,0 +1,190 @@
+package org.typelibrary.binarystrings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteStringChannelTest {
+
+    private static ByteString range(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i=0; i<bytes.length; ++i) {
+            bytes[i] = (byte) (from + i);
+        }
+        return ByteString.from(bytes);
+    }
+
+    /**
+     * Channel which accepts at most 7 bytes per write.
+     */
+    private static final class SlowChannel implements WritableByteChannel {
+
+        final ByteStringBuilder builder = new ByteStringBuilder();
+
+        @Override
+        public int write(ByteBuffer src) {
+            int count = Math.min(7, src.remaining());
+            for (int i=0; i<count; ++i) {
+                builder.putByte(src.get());
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    @Test
+    public void testByteBufferList() {
+
+        ByteString flat = range(0, 450);
+        ByteString rope = flat.substring(0, 150).concat(flat.substring(150, 300),
+                flat.substring(300));
+        List<ByteBuffer> buffers = rope.asReadOnlyByteBufferList();
+        Assert.assertEquals(3, buffers.size());
+        ByteStringBuilder builder = new ByteStringBuilder();
+        for (ByteBuffer buffer : buffers) {
+            Assert.assertTrue(buffer.isReadOnly());
+            Assert.assertEquals(0, buffer.position());
+            while (buffer.hasRemaining()) {
+                builder.putByte(buffer.get());
+            }
+        }
+        Assert.assertEquals(flat, builder.toByteString());
+
+        List<ByteBuffer> single = flat.substring(10, 20).asReadOnlyByteBufferList();
+        Assert.assertEquals(1, single.size());
+        Assert.assertEquals(0, single.get(0).position());
+        Assert.assertEquals(10, single.get(0).get());
+
+    }
+
+    @Test
+    public void testWriteTo() throws IOException {
+
+        ByteString flat = range(0, 200);
+        ByteString rope = flat.substring(0, 100).concat(flat.substring(100));
+        SlowChannel channel = new SlowChannel();
+        Assert.assertEquals(200, rope.writeTo(channel));
+        Assert.assertEquals(flat, channel.builder.toByteString());
+
+    }
+
+    @Test
+    public void testWriteAll() throws IOException {
+
+        File file = File.createTempFile("gather", ".bin");
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                ByteString a = range(0, 50);
+                ByteString b = range(50, 200).substring(0, 100).concat(range(150, 200));
+                Assert.assertEquals(200, ByteString.writeAll(channel, a, ByteString.EMPTY, b));
+                Assert.assertEquals(3, ByteString.from(1, 2, 3).writeTo(channel));
+                Assert.assertEquals(range(0, 200).concat(new byte[] { 1, 2, 3 }),
+                        ByteString.map(channel, 0, channel.size()));
+            } finally {
+                raf.close();
+            }
+        } finally {
+            file.delete();
+        }
+
+    }
+
+    @Test
+    public void testReadableChannel() throws IOException {
+
+        ByteString rope = range(0, 100).concat(range(100, 200));
+        ReadableByteChannel channel = rope.asReadableByteChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        ByteStringBuilder builder = new ByteStringBuilder();
+        int read;
+        while ((read = channel.read(buffer)) >= 0) {
+            Assert.assertTrue(read > 0);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                builder.putByte(buffer.get());
+            }
+            buffer.clear();
+        }
+        Assert.assertEquals(range(0, 200), builder.toByteString());
+        channel.close();
+        Assert.assertFalse(channel.isOpen());
+
+    }
+
+    @Test
+    public void testInputStream() throws IOException {
+
+        ByteString flat = range(0, 200);
+        for (ByteString string : new ByteString[] { flat, ByteString.wrap(flat.toByteBuffer()) }) {
+            InputStream in = string.asInputStream();
+            Assert.assertTrue(in.markSupported());
+            Assert.assertEquals(0, in.read());
+            in.mark(100);
+            Assert.assertEquals(1, in.read());
+            Assert.assertEquals(2, in.read());
+            in.reset();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertEquals(199, ((ByteStringInputStream) in).transferTo(out));
+            Assert.assertEquals(flat.substring(1), ByteString.from(out.toByteArray()));
+            Assert.assertEquals(-1, in.read());
+        }
+
+    }
+
+    @Test
+    public void testWriteToOutputStream() throws IOException {
+
+        ByteString flat = range(0, 200);
+        ByteString rope = ByteString.from();
+        for (int i=0; i<100; ++i) {
+            rope = rope.concat(flat);
+        }
+        ByteString[] strings = { flat, flat.substring(10, 150), ByteString.from(),
+                ByteString.wrap(flat.toByteBuffer()), rope, rope.substring(7, 19000) };
+        for (ByteString string : strings) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertEquals(string.length(), string.writeTo(out));
+            Assert.assertEquals(string, ByteString.from(out.toByteArray()));
+        }
+
+        // A flat string is written in one call
+        final int[] writes = new int[1];
+        OutputStream counting = new OutputStream() {
+            @Override
+            public void write(int b) {
+                Assert.fail();
+            }
+            @Override
+            public void write(byte[] b, int off, int len) {
+                ++writes[0];
+            }
+        };
+        Assert.assertEquals(200, flat.writeTo(counting));
+        Assert.assertEquals(1, writes[0]);
+
+    }
+
+}
@@ -0,0 +1,152 @@
+package org.typelibrary.binarystrings;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteStringHashTest {
+
+    private static final Charset ASCII = Charset.forName("ASCII");
+
+    private static ByteString ascii(String value) {
+        return ByteString.from(value.getBytes(ASCII));
+    }
+
+    /**
+     * Store over an array which counts the bytes read through it.
+     */
+    private static final class CountingByteStore extends ByteStore {
+
+        private final byte[] bytes;
+        int reads;
+
+        CountingByteStore(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        int length() {
+            return bytes.length;
+        }
+
+        @Override
+        int depth() {
+            return 0;
+        }
+
+        @Override
+        int footprint() {
+            return bytes.length;
+        }
+
+        @Override
+        byte byteAt(int index) {
+            ++reads;
+            return bytes[index];
+        }
+
+        @Override
+        void copyTo(int index, byte[] target, int targetOffset, int count) {
+            reads += count;
+            System.arraycopy(bytes, index, target, targetOffset, count);
+        }
+
+        @Override
+        void copyTo(int index, ByteBuffer target, int count) {
+            reads += count;
+            target.put(bytes, index, count);
+        }
+
+        @Override
+        ByteString substring(int beginIndex, int endIndex) {
+            return ByteString.from(Arrays.copyOfRange(bytes, beginIndex, endIndex));
+        }
+
+    }
+
+    private static byte[] range(int length) {
+        byte[] bytes = new byte[length];
+        for (int i=0; i<length; ++i) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testReferenceValues() {
+
+        Assert.assertEquals(0xEF46DB3751D8E999L, ByteString.EMPTY.hash64());
+        Assert.assertEquals(0xD24EC4F1A98C6E5BL, ascii("a").hash64());
+        Assert.assertEquals(0x44BC2CF5AD770999L, ascii("abc").hash64());
+        Assert.assertEquals(0xFBCEA83C8A378BF1L,
+                ascii("Nobody inspects the spammish repetition").hash64());
+        Assert.assertEquals(0x6AC1E58032166597L, ByteString.from(range(100)).hash64());
+        Assert.assertEquals(0x819D2B726001D507L, ByteString.from(range(100)).hash64(42));
+
+    }
+
+    @Test
+    public void testSlices() {
+
+        byte[] bytes = range(200);
+        for (int length=0; length<100; ++length) {
+            ByteString string = ByteString.from(bytes).substring(50, 50 + length);
+            long expected = ByteString.from(bytes, 50, length).hash64(7);
+            Assert.assertEquals(expected, string.hash64(7));
+            Assert.assertEquals(expected, ByteString.hash64(bytes, 50, length, 7));
+        }
+
+        ByteString flat = ByteString.from(bytes);
+        ByteString rope = flat.substring(0, 130).concat(flat.substring(130));
+        Assert.assertNotNull(rope.store());
+        Assert.assertEquals(flat.hash64(), rope.hash64());
+        Assert.assertEquals(flat.hash64(), ByteString.wrap(flat.toByteBuffer()).hash64());
+
+    }
+
+    @Test
+    public void testIncremental() {
+
+        Random random = new Random(4);
+        byte[] bytes = new byte[300];
+        random.nextBytes(bytes);
+        for (int n=0; n<200; ++n) {
+            int length = random.nextInt(bytes.length);
+            XxHash64 hasher = new XxHash64(n);
+            for (int i=0; i<length; ) {
+                int count = Math.min(random.nextInt(40), length - i);
+                hasher.update(bytes, i, count);
+                i += count;
+            }
+            Assert.assertEquals(XxHash64.hash(bytes, 0, length, n), hasher.digest());
+        }
+
+    }
+
+    @Test
+    public void testZeroHashCode() {
+
+        CountingByteStore store = new CountingByteStore(new byte[] { 0, 0, 0 });
+        ByteString string = new ByteString(store);
+        Assert.assertEquals(0, string.hashCode());
+        Assert.assertEquals(3, store.reads);
+        // A zero hash is cached, so later calls do not read the bytes again
+        Assert.assertEquals(0, string.hashCode());
+        Assert.assertEquals(3, store.reads);
+        Assert.assertNotEquals(string, ByteString.from(0, 0, 1));
+
+        // Likewise a nonzero hash
+        store = new CountingByteStore(new byte[] { 0, 0, 1 });
+        string = new ByteString(store);
+        Assert.assertEquals(1, string.hashCode());
+        Assert.assertEquals(3, store.reads);
+        Assert.assertEquals(1, string.hashCode());
+        Assert.assertEquals(3, store.reads);
+
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.typelibrary.binarystrings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteStringInternerTest {
+
+    @Test
+    public void testIntern() {
+
+        ByteStringInterner interner = new ByteStringInterner(100);
+        Assert.assertEquals(128, interner.capacity());
+
+        byte[] packet = new byte[] { 9, 9, 3, 'c', 'o', 'm', 0, 3, 'c', 'o', 'm', 0 };
+        ByteString first = interner.intern(packet, 3, 3);
+        Assert.assertEquals(ByteString.from('c', 'o', 'm'), first);
+        Assert.assertEquals(3, first.footprint());
+        Assert.assertSame(first, interner.intern(packet, 8, 3));
+        Assert.assertSame(first, interner.intern(ByteString.from('c', 'o', 'm')));
+        Assert.assertEquals(1, interner.size());
+
+        // Substrings are compacted before becoming canonical
+        ByteString label = ByteString.from(packet).substring(2, 6);
+        ByteString canonical = interner.intern(label);
+        Assert.assertEquals(label, canonical);
+        Assert.assertEquals(4, canonical.footprint());
+        Assert.assertSame(canonical, interner.intern(packet, 2, 4));
+
+        Assert.assertSame(interner.intern(ByteString.EMPTY), interner.intern(packet, 0, 0));
+
+        interner.clear();
+        Assert.assertEquals(0, interner.size());
+
+    }
+
+    @Test
+    public void testBounded() {
+
+        ByteStringInterner interner = new ByteStringInterner(16);
+        for (int i=0; i<1000; ++i) {
+            ByteString string = ByteString.from(i, i >> 8);
+            Assert.assertEquals(string, interner.intern(string));
+        }
+        Assert.assertTrue(interner.size() <= 16);
+
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+
+        final ByteStringInterner interner = new ByteStringInterner(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ByteString[]>> futures = new ArrayList<Future<ByteString[]>>();
+            for (int t=0; t<4; ++t) {
+                futures.add(executor.submit(new Callable<ByteString[]>() {
+                    @Override
+                    public ByteString[] call() {
+                        ByteString[] result = new ByteString[200];
+                        for (int i=0; i<result.length; ++i) {
+                            result[i] = interner.intern(new byte[] { (byte) i, 1, 2 }, 0, 3);
+                        }
+                        return result;
+                    }
+                }));
+            }
+            ByteString[] expected = futures.get(0).get();
+            for (Future<ByteString[]> future : futures) {
+                ByteString[] result = future.get();
+                for (int i=0; i<result.length; ++i) {
+                    Assert.assertEquals(expected[i], result[i]);
+                }
+            }
+            for (int i=0; i<expected.length; ++i) {
+                ByteString canonical = interner.intern(ByteString.from(i, 1, 2));
+                Assert.assertSame(canonical, interner.intern(ByteString.from(i, 1, 2)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+}
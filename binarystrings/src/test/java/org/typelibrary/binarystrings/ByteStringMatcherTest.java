@@ -0,0 +1,104 @@
+package org.typelibrary.binarystrings;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteStringMatcherTest {
+
+    private static ByteString random(Random random, int length, int alphabet) {
+        byte[] bytes = new byte[length];
+        for (int i=0; i<length; ++i) {
+            bytes[i] = (byte) (random.nextInt(alphabet) * 0x55);
+        }
+        return ByteString.from(bytes);
+    }
+
+    private static void assertSameAsIndexOf(ByteString pattern, ByteString string) {
+        ByteStringMatcher matcher = ByteStringMatcher.compile(pattern);
+        for (int from=-1; from<=string.length() + 1; ++from) {
+            Assert.assertEquals(string.indexOf(pattern, from), matcher.indexIn(string, from));
+            Assert.assertEquals(string.lastIndexOf(pattern, from), matcher.lastIndexIn(string, from));
+        }
+        Assert.assertEquals(string.indexOf(pattern), matcher.indexIn(string));
+        Assert.assertEquals(string.lastIndexOf(pattern), matcher.lastIndexIn(string));
+        Assert.assertEquals(string.contains(pattern), matcher.isContainedIn(string));
+    }
+
+    @Test
+    public void testRandom() {
+
+        Random random = new Random(1);
+        for (int n=0; n<2000; ++n) {
+            int alphabet = 1 + random.nextInt(4);
+            ByteString pattern = random(random, 1 + random.nextInt(8), alphabet);
+            ByteString string = random(random, random.nextInt(40), alphabet);
+            assertSameAsIndexOf(pattern, string);
+        }
+
+    }
+
+    @Test
+    public void testPeriodic() {
+
+        ByteString string = ByteString.from(0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0);
+        assertSameAsIndexOf(ByteString.from(0, 0, 0), string);
+        assertSameAsIndexOf(ByteString.from(0, 0, 0, 0, 0, 0), string);
+        assertSameAsIndexOf(ByteString.from(0, 1, 0, 1), ByteString.from(0, 1, 0, 0, 1, 0, 1, 0, 1));
+        assertSameAsIndexOf(ByteString.from(-1, 0, -1), ByteString.from(-1, -1, 0, -1, 0, -1));
+
+    }
+
+    @Test
+    public void testStoreBased() {
+
+        Random random = new Random(2);
+        ByteString flat = random(random, 500, 3);
+        ByteString rope = flat.substring(0, 200).concat(flat.substring(200));
+        Assert.assertNotNull(rope.store());
+        ByteString direct = ByteString.wrap(flat.toByteBuffer());
+        Assert.assertNotNull(direct.store());
+        for (int n=0; n<50; ++n) {
+            ByteString pattern = random(random, 1 + random.nextInt(6), 3);
+            ByteStringMatcher matcher = ByteStringMatcher.compile(pattern);
+            Assert.assertEquals(flat.indexOf(pattern), matcher.indexIn(rope));
+            Assert.assertEquals(flat.lastIndexOf(pattern), matcher.lastIndexIn(rope));
+            Assert.assertEquals(flat.indexOf(pattern, 150), matcher.indexIn(direct, 150));
+            Assert.assertEquals(flat.lastIndexOf(pattern, 150), matcher.lastIndexIn(direct, 150));
+            Assert.assertEquals(matcher.countIn(flat), matcher.countIn(rope));
+        }
+
+    }
+
+    @Test
+    public void testCountIn() {
+
+        ByteStringMatcher matcher = ByteStringMatcher.compile(new byte[] { 1, 1 });
+        Assert.assertEquals(2, matcher.countIn(ByteString.from(1, 1, 1, 1, 1)));
+        Assert.assertEquals(0, matcher.countIn(ByteString.from(1, 0, 1)));
+        Assert.assertEquals(0, matcher.countIn(ByteString.EMPTY));
+        Assert.assertEquals(3, ByteStringMatcher.compile(ByteString.from(7)).countIn(
+                ByteString.from(7, 0, 7, 7)));
+
+    }
+
+    @Test
+    public void testCompile() {
+
+        byte[] bytes = new byte[] { 1, 2, 3 };
+        ByteStringMatcher matcher = ByteStringMatcher.compile(bytes);
+        bytes[0] = 9;
+        Assert.assertEquals(ByteString.from(1, 2, 3), matcher.pattern());
+        Assert.assertEquals(1, matcher.indexIn(ByteString.from(0, 1, 2, 3)));
+
+        try {
+            ByteStringMatcher.compile(ByteString.EMPTY);
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+    }
+
+}
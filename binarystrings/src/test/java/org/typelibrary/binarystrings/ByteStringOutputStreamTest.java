@@ -118,4 +118,46 @@ public class ByteStringOutputStreamTest {
         
     }
 
+    @Test
+    public void testPooledAllocator() throws IOException {
+
+        PooledChunkAllocator allocator = new PooledChunkAllocator(8, 4, 1);
+        ByteStringOutputStream bout = new ByteStringOutputStream(8, allocator);
+        byte[] message = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17 };
+
+        bout.write(message, 0, 5);
+        bout.write(message, 5, 7);
+        bout.write(message, 12, 5);
+        Assert.assertEquals(ByteString.from(message), bout.toByteString());
+        long allocated = allocator.allocatedChunks();
+        bout.reset();
+
+        // Steady state reuses the same chunks
+        for (int i=0; i<10; ++i) {
+            bout.write(message, 0, 8);
+            bout.write(message, 8, 1);
+            bout.write(message, 9, 8);
+            ByteString string = bout.toByteString();
+            Assert.assertEquals(ByteString.from(message), string);
+            bout.reset();
+            Assert.assertEquals(ByteString.from(message), string);
+        }
+        Assert.assertEquals(allocated, allocator.allocatedChunks());
+        Assert.assertTrue(allocator.reusedChunks() > 0);
+
+        // Oversize chunks are never pooled
+        bout.write(new byte[20]);
+        bout.reset();
+        Assert.assertTrue(allocator.pooledChunks() <= 4);
+
+        // A pool of another size would never reuse a chunk
+        try {
+            new ByteStringOutputStream(16, allocator);
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+    }
+
 }
@@ -0,0 +1,84 @@
+package org.typelibrary.binarystrings;
+
+import java.nio.BufferUnderflowException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteStringReaderTest {
+
+    private static final ByteString FIELDS = ByteString.from(0xFF, 0x80, 0x01, 0xFF, 0xFF, 0xFF,
+            0xFE, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11);
+
+    private static void assertFields(ByteStringReader reader) {
+
+        Assert.assertEquals(255, reader.getUnsignedByte());
+        Assert.assertEquals(0x8001, reader.getUnsignedShort());
+        Assert.assertEquals(0xFFFFFFFEL, reader.getUnsignedInt(3));
+        Assert.assertEquals(-2, reader.getInt());
+        Assert.assertEquals(7, reader.position());
+        Assert.assertEquals(0x0102030405060708L, reader.getLong());
+        Assert.assertEquals((short) 0x8001, reader.getShort(1));
+        Assert.assertEquals((byte) 0xFF, reader.getByte(0));
+        Assert.assertEquals(9, reader.getUnsignedByte(15));
+        Assert.assertEquals(3, reader.remaining());
+
+        ByteString slice = reader.readSlice(2);
+        Assert.assertEquals(ByteString.from(9, 10), slice);
+        Assert.assertEquals(1, reader.remaining());
+        Assert.assertTrue(reader.hasRemaining());
+
+        try {
+            reader.getShort();
+            Assert.fail("Expected BufferUnderflowException");
+        } catch (BufferUnderflowException e) {
+            // Expected
+        }
+        Assert.assertEquals(17, reader.position());
+        try {
+            reader.getLong(11);
+            Assert.fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+        Assert.assertEquals(11, reader.getByte());
+        Assert.assertFalse(reader.hasRemaining());
+
+    }
+
+    @Test
+    public void testRead() {
+
+        assertFields(new ByteStringReader(FIELDS));
+
+        // Substring at a non-zero offset of its backing array
+        ByteString shifted = ByteString.from(7, 7, 7).concat(FIELDS.toByteArray()).substring(3);
+        assertFields(new ByteStringReader(shifted));
+
+    }
+
+    @Test
+    public void testReadStoreBased() {
+
+        assertFields(new ByteStringReader(ByteString.wrap(FIELDS.toByteBuffer())));
+
+    }
+
+    @Test
+    public void testSliceShares() {
+
+        ByteString string = ByteString.from(new byte[64]);
+        ByteStringReader reader = new ByteStringReader(string);
+        reader.skip(10);
+        ByteString slice = reader.readSlice(20);
+        Assert.assertEquals(20, slice.length());
+        Assert.assertEquals(64, slice.footprint());
+        Assert.assertEquals(30, reader.position());
+        Assert.assertEquals(ByteString.from(new byte[5]), reader.slice(0, 5));
+        Assert.assertEquals(30, reader.position());
+        reader.position(0);
+        Assert.assertEquals(64, reader.remaining());
+
+    }
+
+}
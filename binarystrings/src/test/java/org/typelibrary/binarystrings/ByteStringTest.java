@@ -588,6 +588,120 @@ public class ByteStringTest {
 
     }
     
+    @Test
+    public void testForEach() {
+
+        final ByteStringBuilder builder = new ByteStringBuilder();
+        ByteConsumer consumer = new ByteConsumer() {
+            @Override
+            public void accept(byte value) {
+                builder.putByte(value);
+            }
+        };
+
+        // Substrings only visit their own bytes
+        STR1TO9.substring(2, 5).forEach(consumer);
+        Assert.assertEquals(ByteString.from(3, 4, 5), builder.toByteString());
+        builder.clear();
+        STR1TO9.forEach(3, 9, consumer);
+        Assert.assertEquals(STR4TO9, builder.toByteString());
+        builder.clear();
+        STR1TO9.forEach(4, 4, consumer);
+        Assert.assertEquals(0, builder.length());
+
+        try {
+            STR1TO9.forEach(8, 10, consumer);
+            Assert.fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+
+    }
+
+    @Test
+    public void testForEachChunk() {
+
+        final ByteStringBuilder builder = new ByteStringBuilder();
+        final int[] calls = new int[1];
+        ByteChunkConsumer consumer = new ByteChunkConsumer() {
+            @Override
+            public void accept(byte[] bytes, int offset, int length) {
+                Assert.assertTrue(length > 0);
+                builder.put(bytes, offset, length);
+                ++calls[0];
+            }
+        };
+
+        STR1TO9.substring(3).forEachChunk(consumer);
+        Assert.assertEquals(STR4TO9, builder.toByteString());
+        Assert.assertEquals(1, calls[0]);
+
+        byte[] bytes = new byte[400];
+        for (int i=0; i<bytes.length; ++i) {
+            bytes[i] = (byte) i;
+        }
+        ByteString flat = ByteString.from(bytes);
+        ByteString rope = flat.substring(0, 150).concat(flat.substring(150, 300),
+                flat.substring(300));
+        Assert.assertNotNull(rope.store());
+        for (int begin=0; begin<=400; begin+=50) {
+            for (int end=begin; end<=400; end+=70) {
+                builder.clear();
+                rope.forEachChunk(begin, end, consumer);
+                Assert.assertEquals(flat.substring(begin, end), builder.toByteString());
+            }
+        }
+
+    }
+
+    @Test
+    public void testCompareTo() {
+
+        Assert.assertEquals(0, STR1TO9.compareTo(ByteString.from(B1TO9)));
+        Assert.assertTrue(STR123.compareTo(STR321) < 0);
+        Assert.assertTrue(STR321.compareTo(STR123) > 0);
+        Assert.assertTrue(STR12.compareTo(STR123) < 0);
+        Assert.assertTrue(STR123.compareTo(STR12) > 0);
+        Assert.assertTrue(ByteString.EMPTY.compareTo(STR0) < 0);
+
+        // Unsigned
+        Assert.assertTrue(ByteString.from(0x7F).compareTo(ByteString.from(0x80)) < 0);
+        Assert.assertTrue(ByteString.from(1, 2, 3, 4, 5, 6, 7, 8, 0xFF).compareTo(STR1TO9) > 0);
+
+        Assert.assertEquals(0, ByteString.compare(B1TO9, 3, 6, B4TO9, 0, 6));
+        Assert.assertTrue(ByteString.compare(B1TO9, 0, 9, B4TO9, 0, 6) < 0);
+        Assert.assertTrue(ByteString.compare(B4TO9, 0, 3, B4TO9, 0, 2) > 0);
+
+    }
+
+    @Test
+    public void testMismatch() {
+
+        Assert.assertEquals(-1, STR1TO9.mismatch(ByteString.from(B1TO9)));
+        Assert.assertEquals(0, STR123.mismatch(STR321));
+        Assert.assertEquals(2, STR12.mismatch(STR123));
+        Assert.assertEquals(2, STR123.mismatch(STR12));
+        Assert.assertEquals(0, ByteString.EMPTY.mismatch(STR1));
+
+        byte[] bytes = new byte[300];
+        for (int i=0; i<bytes.length; ++i) {
+            bytes[i] = (byte) i;
+        }
+        ByteString flat = ByteString.from(bytes);
+        for (int i=0; i<bytes.length; ++i) {
+            byte[] changed = bytes.clone();
+            changed[i] ^= 0x40;
+            ByteString other = ByteString.from(changed);
+            ByteString rope = other.substring(0, 150).concat(other.substring(150));
+            Assert.assertEquals(i, flat.mismatch(other));
+            Assert.assertEquals(i, flat.mismatch(rope));
+            Assert.assertEquals(i, rope.mismatch(flat));
+            Assert.assertEquals(Integer.signum(flat.compareTo(other)),
+                    Integer.signum(flat.compareTo(rope)));
+        }
+
+    }
+
     @Test
     public void testToString() {
 
@@ -604,6 +718,106 @@ public class ByteStringTest {
         }
     }
     
+    @Test
+    public void testAscii() {
+
+        Charset ascii = Charset.forName("US-ASCII");
+        String text = "www.example.com. 3600 IN TXT \"v=spf1 -all\"";
+        ByteString string = ByteString.fromAscii(text);
+        Assert.assertEquals(ByteString.from(text.getBytes(ascii)), string);
+        Assert.assertTrue(string.isAscii());
+        Assert.assertEquals(text, string.toAsciiString());
+        Assert.assertEquals(text, string.toUtf8String());
+        Assert.assertEquals("example", string.substring(4, 11).toAsciiString());
+        ByteString rope = string.concat(ByteString.from(new byte[200]));
+        Assert.assertTrue(rope.isAscii());
+        Assert.assertEquals(text, rope.toAsciiString().substring(0, text.length()));
+        Assert.assertTrue(ByteString.EMPTY.isAscii());
+        Assert.assertEquals("", ByteString.EMPTY.toAsciiString());
+
+        // Non-ASCII byte at every position of a word
+        for (int i=0; i<17; ++i) {
+            byte[] bytes = text.substring(0, 17).getBytes(ascii);
+            bytes[i] = (byte) 0xE9;
+            ByteString latin = ByteString.from(bytes);
+            Assert.assertFalse(latin.isAscii());
+            Assert.assertFalse(latin.concat(new byte[200]).isAscii());
+            Assert.assertEquals(new String(bytes, ascii), latin.toAsciiString());
+            Assert.assertEquals(new String(bytes, Charset.forName("ISO-8859-1")),
+                    latin.toString(Charset.forName("ISO-8859-1")));
+        }
+
+        try {
+            ByteString.fromAscii("caf\u00e9");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+    }
+
+    @Test
+    public void testUtf8() {
+        Charset utf8 = Charset.forName("UTF-8");
+        String[] texts = { "", "plain", "caf\u00e9", "\u00e9t\u00e9", "\u4e2d\u6587.example",
+                "emoji \ud83d\ude00!", "lone \ud83d high", "lone \ude00 low", "end \ud83d",
+                "\u07ff\u0800\uffff" };
+        for (String text : texts) {
+            ByteString string = ByteString.fromUtf8(text);
+            Assert.assertEquals(text, ByteString.from(text.getBytes(utf8)), string);
+            Assert.assertEquals(new String(text.getBytes(utf8), utf8), string.toUtf8String());
+            Assert.assertEquals(string, ByteString.fromUtf8(new StringBuilder(text)));
+        }
+    }
+
+    @Test
+    public void testIgnoreAsciiCase() {
+
+        ByteString name = ByteString.fromAscii("\u0003WWW\u0007Example\u0003COM\u0000");
+        ByteString lower = ByteString.fromAscii("\u0003www\u0007example\u0003com\u0000");
+        ByteString rope = name.substring(0, 5).concat(name.substring(5));
+        Assert.assertEquals(lower, name.toLowerAscii());
+        Assert.assertSame(lower, lower.toLowerAscii());
+        Assert.assertEquals(lower, rope.toLowerAscii());
+        for (ByteString string : new ByteString[] { name, rope }) {
+            Assert.assertTrue(string.equalsIgnoreAsciiCase(lower));
+            Assert.assertTrue(lower.equalsIgnoreAsciiCase(string));
+            Assert.assertEquals(lower.hashCode(), string.hashCodeIgnoreAsciiCase());
+            Assert.assertEquals(0, string.compareToIgnoreAsciiCase(lower));
+            Assert.assertTrue(string.startsWithIgnoreAsciiCase(lower.substring(0, 6)));
+            Assert.assertTrue(string.endsWithIgnoreAsciiCase(ByteString.fromAscii("\u0003cOm\u0000")));
+            Assert.assertFalse(string.endsWithIgnoreAsciiCase(ByteString.fromAscii("\u0003net\u0000")));
+            Assert.assertFalse(string.startsWithIgnoreAsciiCase(lower.concat(new byte[1])));
+        }
+
+        // Only letters fold: neighbours of the letter ranges and bytes whose low seven bits
+        // are a letter stay distinct
+        int[][] distinct = { { '@', '`' }, { '[', '{' }, { 0xC1, 0xE1 }, { 0xC1, 'A' },
+                { 0xDA, 'z' } };
+        for (int[] pair : distinct) {
+            for (int position=0; position<12; ++position) {
+                byte[] a = lower.toByteArray();
+                byte[] b = lower.toByteArray();
+                a[position] = (byte) pair[0];
+                b[position] = (byte) pair[1];
+                ByteString x = ByteString.from(a);
+                ByteString y = ByteString.from(b);
+                Assert.assertFalse(x.equalsIgnoreAsciiCase(y));
+                Assert.assertEquals(Integer.signum(x.compareTo(y)),
+                        Integer.signum(x.compareToIgnoreAsciiCase(y)));
+                Assert.assertEquals(x, x.toLowerAscii());
+            }
+        }
+
+        Assert.assertTrue(ByteString.fromAscii("b").compareToIgnoreAsciiCase(
+                ByteString.fromAscii("A")) > 0);
+        Assert.assertTrue(ByteString.fromAscii("_").compareToIgnoreAsciiCase(
+                ByteString.fromAscii("A")) < 0);
+        Assert.assertTrue(ByteString.fromAscii("ab").compareToIgnoreAsciiCase(
+                ByteString.fromAscii("AbC")) < 0);
+
+    }
+
     protected void assertByteAtThrows(ByteString string, int index) {
         try {
             byte b = string.byteAt(index);
@@ -0,0 +1,119 @@
+package org.typelibrary.binarystrings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DirectByteStringTest {
+
+    private static final byte[] B1TO9 = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+
+    private static ByteBuffer direct(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testWrap() {
+
+        ByteBuffer buffer = direct(B1TO9);
+        buffer.position(2);
+        ByteString string = ByteString.wrap(buffer);
+        Assert.assertEquals(2, buffer.position());
+        Assert.assertEquals(9, buffer.limit());
+
+        Assert.assertNotNull(string.store());
+        Assert.assertEquals(7, string.length());
+        Assert.assertEquals(9, string.footprint());
+        for (int i=0; i<7; ++i) {
+            Assert.assertEquals(B1TO9[i + 2], string.byteAt(i));
+        }
+        try {
+            string.byteAt(7);
+            Assert.fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+
+        Assert.assertTrue(ByteString.EMPTY == ByteString.wrap(ByteBuffer.allocateDirect(0)));
+
+    }
+
+    @Test
+    public void testWrapHeap() {
+
+        ByteBuffer buffer = ByteBuffer.wrap(B1TO9, 3, 4);
+        ByteString string = ByteString.wrap(buffer);
+        Assert.assertNull(string.store());
+        Assert.assertEquals(ByteString.from(4, 5, 6, 7), string);
+        Assert.assertEquals(9, string.footprint());
+
+    }
+
+    @Test
+    public void testReadApi() {
+
+        ByteString flat = ByteString.from(B1TO9);
+        ByteString string = ByteString.wrap(direct(B1TO9));
+
+        Assert.assertEquals(flat, string);
+        Assert.assertEquals(string, flat);
+        Assert.assertEquals(string, ByteString.wrap(direct(B1TO9)));
+        Assert.assertNotEquals(string, ByteString.wrap(direct(new byte[] { 9, 8, 7, 6, 5, 4, 3, 2, 1 })));
+        Assert.assertEquals(flat.hashCode(), string.hashCode());
+
+        Assert.assertEquals(4, string.indexOf((byte) 5));
+        Assert.assertEquals(-1, string.indexOf((byte) 5, 5));
+        Assert.assertEquals(4, string.lastIndexOf((byte) 5));
+        Assert.assertEquals(3, string.indexOf(ByteString.from(4, 5, 6)));
+        Assert.assertEquals(3, string.lastIndexOf(new byte[] { 4, 5, 6 }));
+        Assert.assertTrue(string.contains(ByteString.wrap(direct(new byte[] { 7, 8 }))));
+        Assert.assertTrue(string.startsWith(new byte[] { 1, 2, 3 }));
+        Assert.assertTrue(string.startsWith(ByteString.from(4, 5), 3));
+        Assert.assertTrue(string.endsWith(ByteString.from(8, 9)));
+        Assert.assertFalse(string.startsWith(ByteString.from(2)));
+
+        ByteString substring = string.substring(2, 6);
+        Assert.assertNotNull(substring.store());
+        Assert.assertEquals(ByteString.from(3, 4, 5, 6), substring);
+
+        Charset charset = Charset.forName("ASCII");
+        byte[] hello = "Hello World".getBytes(charset);
+        Assert.assertEquals("Hello World", ByteString.wrap(direct(hello)).toString(charset));
+
+    }
+
+    @Test
+    public void testCopyTo() throws IOException {
+
+        ByteString string = ByteString.wrap(direct(B1TO9)).substring(1);
+
+        ByteBuffer target = ByteBuffer.allocate(10);
+        Assert.assertEquals(8, string.copyTo(target));
+        Assert.assertEquals(8, target.position());
+        Assert.assertEquals(ByteString.from(2, 3, 4, 5, 6, 7, 8, 9), ByteString.from(target.array(), 0, 8));
+
+        byte[] array = new byte[8];
+        string.copyTo(array, 0);
+        Assert.assertArrayEquals(string.toByteArray(), array);
+
+        ByteBuffer view = string.toByteBuffer();
+        Assert.assertTrue(view.isDirect());
+        Assert.assertTrue(view.isReadOnly());
+        Assert.assertEquals(8, view.remaining());
+
+        InputStream in = string.asInputStream();
+        Assert.assertEquals(2, in.read());
+        byte[] read = new byte[10];
+        Assert.assertEquals(7, in.read(read, 0, 10));
+        Assert.assertEquals(-1, in.read());
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package org.typelibrary.binarystrings;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedByteStringTest {
+
+    private File file;
+    private byte[] contents;
+
+    @Before
+    public void setUp() throws IOException {
+        contents = new byte[100];
+        for (int i=0; i<contents.length; ++i) {
+            contents[i] = (byte) (i % 13);
+        }
+        file = File.createTempFile("mapped", ".bin");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testMap() throws IOException {
+
+        ByteString flat = ByteString.from(contents);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ByteString string;
+        try {
+            string = ByteString.map(raf.getChannel(), 0, contents.length);
+            Assert.assertTrue(ByteString.EMPTY == ByteString.map(raf.getChannel(), 10, 0));
+        } finally {
+            raf.close();
+        }
+
+        // Mapping stays valid after the channel is closed
+        Assert.assertEquals(100, string.length());
+        Assert.assertEquals(flat, string);
+        Assert.assertEquals(flat.hashCode(), string.hashCode());
+
+    }
+
+    @Test
+    public void testMapSegments() throws IOException {
+
+        ByteString flat = ByteString.from(contents).substring(5, 95);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteString string = ByteString.map(channel, 5, 90, 7);
+            Assert.assertTrue(string.store() instanceof ChunkedByteStore);
+            Assert.assertEquals(13, ((ChunkedByteStore) string.store()).numSegments());
+
+            Assert.assertEquals(90, string.length());
+            Assert.assertEquals(flat, string);
+            Assert.assertEquals(string, flat);
+            Assert.assertEquals(flat.hashCode(), string.hashCode());
+            for (int i=0; i<flat.length(); ++i) {
+                Assert.assertEquals(flat.byteAt(i), string.byteAt(i));
+            }
+            ByteString needle = ByteString.from(11, 12, 0, 1);
+            Assert.assertEquals(flat.indexOf(needle), string.indexOf(needle));
+            Assert.assertEquals(flat.lastIndexOf(needle), string.lastIndexOf(needle));
+            Assert.assertEquals(flat.substring(6, 30), string.substring(6, 30));
+            Assert.assertArrayEquals(flat.toByteArray(), string.toByteArray());
+        } finally {
+            raf.close();
+        }
+
+    }
+
+    @Test
+    public void testMapInvalid() throws IOException {
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            ByteString.map(raf.getChannel(), 0, Integer.MAX_VALUE + 1L);
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        } finally {
+            raf.close();
+        }
+
+    }
+
+}
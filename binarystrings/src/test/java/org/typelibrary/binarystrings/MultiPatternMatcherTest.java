@@ -0,0 +1,152 @@
+package org.typelibrary.binarystrings;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MultiPatternMatcherTest {
+
+    private static final Charset ASCII = Charset.forName("ASCII");
+
+    private static ByteString ascii(String value) {
+        return ByteString.from(value.getBytes(ASCII));
+    }
+
+    private static final class Collector implements MatchConsumer {
+
+        final List<String> matches = new ArrayList<String>();
+
+        @Override
+        public void accept(int pattern, long start) {
+            matches.add(pattern + "@" + start);
+        }
+
+    }
+
+    private static List<String> naive(ByteString[] patterns, ByteString string) {
+        List<String> matches = new ArrayList<String>();
+        for (int p=0; p<patterns.length; ++p) {
+            for (int i=string.indexOf(patterns[p]); i>=0; i=string.indexOf(patterns[p], i + 1)) {
+                matches.add(p + "@" + i);
+            }
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    @Test
+    public void testFindIn() {
+
+        MultiPatternMatcher matcher = MultiPatternMatcher.compile(ascii("he"), ascii("she"),
+                ascii("his"), ascii("hers"));
+        Assert.assertEquals(4, matcher.numPatterns());
+        Assert.assertEquals(ascii("his"), matcher.pattern(2));
+
+        Collector collector = new Collector();
+        matcher.findIn(ascii("ushers"), collector);
+        Assert.assertEquals(Arrays.asList("1@1", "0@2", "3@2"), collector.matches);
+
+        Assert.assertTrue(matcher.isAnyContainedIn(ascii("this")));
+        Assert.assertFalse(matcher.isAnyContainedIn(ascii("iss")));
+        Assert.assertEquals(1, matcher.firstMatchIn(ascii("ushers")));
+        Assert.assertEquals(2, matcher.firstMatchIn(ascii("this")));
+        Assert.assertEquals(-1, matcher.firstMatchIn(ascii("xyz")));
+
+    }
+
+    @Test
+    public void testRandom() {
+
+        Random random = new Random(3);
+        for (int n=0; n<300; ++n) {
+            ByteString[] patterns = new ByteString[1 + random.nextInt(10)];
+            for (int p=0; p<patterns.length; ++p) {
+                byte[] bytes = new byte[1 + random.nextInt(4)];
+                for (int i=0; i<bytes.length; ++i) {
+                    bytes[i] = (byte) (random.nextInt(3) - 1);
+                }
+                patterns[p] = ByteString.from(bytes);
+            }
+            byte[] bytes = new byte[random.nextInt(60)];
+            for (int i=0; i<bytes.length; ++i) {
+                bytes[i] = (byte) (random.nextInt(4) - 1);
+            }
+            ByteString string = ByteString.from(bytes);
+
+            Collector collector = new Collector();
+            MultiPatternMatcher matcher = MultiPatternMatcher.compile(patterns);
+            matcher.findIn(string, collector);
+            Collections.sort(collector.matches);
+            List<String> expected = naive(patterns, string);
+            Assert.assertEquals(expected, collector.matches);
+            Assert.assertEquals(!expected.isEmpty(), matcher.isAnyContainedIn(string));
+        }
+
+    }
+
+    @Test
+    public void testScanner() {
+
+        ByteString[] patterns = new ByteString[] { ascii("example"), ascii("ample"), ascii("com") };
+        MultiPatternMatcher matcher = MultiPatternMatcher.compile(Arrays.asList(patterns));
+        ByteString string = ascii("www.example.com.example.net");
+
+        MultiPatternMatcher.Scanner scanner = matcher.newScanner();
+        Collector collector = new Collector();
+        for (int i=0; i<string.length(); i+=5) {
+            scanner.scan(string.substring(i, Math.min(i + 5, string.length())), collector);
+        }
+        Assert.assertEquals(string.length(), scanner.position());
+        Collections.sort(collector.matches);
+        Assert.assertEquals(naive(patterns, string), collector.matches);
+
+        // Store based chunks
+        scanner.reset();
+        collector.matches.clear();
+        byte[] padding = new byte[200];
+        Arrays.fill(padding, (byte) ' ');
+        ByteString rope = string.concat(ByteString.from(padding), string);
+        Assert.assertNotNull(rope.store());
+        scanner.scan(rope, collector);
+        Collections.sort(collector.matches);
+        Assert.assertEquals(naive(patterns, rope), collector.matches);
+
+    }
+
+    @Test
+    public void testInvalid() {
+
+        try {
+            MultiPatternMatcher.compile(ascii("a"), ByteString.EMPTY);
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        Assert.assertFalse(MultiPatternMatcher.compile().isAnyContainedIn(ascii("abc")));
+
+        // 257 columns, so about 8.4 million pattern bytes fill the largest table, and twice
+        // that overflows an int
+        byte[] bytes = new byte[8400000];
+        for (int i=0; i<bytes.length; ++i) {
+            bytes[i] = (byte) i;
+        }
+        ByteString large = ByteString.from(bytes);
+        for (ByteString[] patterns : new ByteString[][] { { large }, { large, large } }) {
+            try {
+                MultiPatternMatcher.compile(patterns);
+                Assert.fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains(
+                        String.valueOf(MultiPatternMatcher.MAX_TABLE_SIZE)));
+            }
+        }
+
+    }
+
+}
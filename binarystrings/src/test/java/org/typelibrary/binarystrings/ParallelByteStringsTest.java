@@ -0,0 +1,139 @@
+package org.typelibrary.binarystrings;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelByteStringsTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    private static final int[] SEGMENT_SIZES = { 1, 2, 3, 7, 64, 1000, 100000 };
+
+    @AfterClass
+    public static void shutdown() {
+        POOL.shutdown();
+    }
+
+    /**
+     * Returns random bytes from a two letter alphabet with long runs, so that periodic
+     * patterns have many overlapping occurrences across segment boundaries.
+     */
+    private static ByteString sample(int length, long seed) {
+        Random random = new Random(seed);
+        byte[] bytes = new byte[length];
+        for (int i=0; i<length; ) {
+            byte value = (byte) ('a' + random.nextInt(2));
+            int run = 1 + random.nextInt(random.nextInt(10) == 0 ? 40 : 4);
+            for (int j=0; j<run && i<length; ++j) {
+                bytes[i++] = value;
+            }
+        }
+        return ByteString.from(bytes);
+    }
+
+    @Test
+    public void testIndexOfAndCount() {
+
+        ByteString flat = sample(5000, 1);
+        ByteString rope = flat.substring(0, 2000).concat(flat.substring(2000));
+        String[] patterns = { "a", "aa", "aaa", "aba", "abab", "bbbbbbbbbbbbbbbbbbbbbbbbbbbbbb",
+                "abba", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa" };
+
+        for (ByteString string : new ByteString[] { flat, rope }) {
+            for (String p : patterns) {
+                ByteStringMatcher matcher = ByteStringMatcher.compile(p.getBytes());
+                int index = matcher.indexIn(string);
+                int count = matcher.countIn(string);
+                Assert.assertEquals(index, ParallelByteStrings.indexOf(POOL, string, matcher));
+                Assert.assertEquals(count, ParallelByteStrings.count(POOL, string, matcher));
+                for (int segmentSize : SEGMENT_SIZES) {
+                    Assert.assertEquals(p + "/" + segmentSize, index,
+                            ParallelByteStrings.indexOf(POOL, string, matcher, segmentSize));
+                    Assert.assertEquals(p + "/" + segmentSize, count,
+                            ParallelByteStrings.count(POOL, string, matcher, segmentSize));
+                }
+            }
+        }
+
+        // Only occurrence straddles the middle
+        ByteString string = ByteString.from(new byte[100]).concat(new byte[] { 1, 2, 3 })
+                .concat(new byte[100]);
+        ByteStringMatcher matcher = ByteStringMatcher.compile(new byte[] { 0, 1, 2, 3, 0 });
+        Assert.assertEquals(99, ParallelByteStrings.indexOf(POOL, string, matcher, 10));
+        Assert.assertEquals(1, ParallelByteStrings.count(POOL, string, matcher, 10));
+        Assert.assertEquals(-1, ParallelByteStrings.indexOf(POOL, ByteString.EMPTY, matcher));
+
+    }
+
+    @Test
+    public void testCountPeriodic() {
+
+        // Matches on all-zero input starting at different offsets never meet, and the
+        // middle of each split falls inside a match.
+        ByteString zeros = ByteString.from(new byte[1001]);
+        for (int patternLength : new int[] { 1, 2, 3, 7 }) {
+            ByteStringMatcher matcher = ByteStringMatcher.compile(new byte[patternLength]);
+            for (int segmentSize : SEGMENT_SIZES) {
+                Assert.assertEquals(patternLength + "/" + segmentSize, 1001 / patternLength,
+                        ParallelByteStrings.count(POOL, zeros, matcher, segmentSize));
+            }
+        }
+
+        int length = 3 * ParallelByteStrings.MIN_SEGMENT_SIZE + 2;
+        ByteString large = ByteString.from(new byte[length]);
+        ByteStringMatcher matcher = ByteStringMatcher.compile(new byte[2]);
+        Assert.assertEquals(matcher.countIn(large), ParallelByteStrings.count(POOL, large, matcher));
+
+    }
+
+    @Test
+    public void testHashes() {
+        ByteString flat = sample(3000, 2);
+        ByteString rope = flat.substring(0, 1500).concat(flat.substring(1500));
+        CRC32 crc = new CRC32();
+        crc.update(flat.toByteArray());
+        for (ByteString string : new ByteString[] { flat, rope, flat.substring(5, 2900),
+                ByteString.EMPTY }) {
+            CRC32 expectedCrc = new CRC32();
+            expectedCrc.update(string.toByteArray());
+            Assert.assertEquals(string.hashCode(), ParallelByteStrings.hashCode(POOL, string));
+            Assert.assertEquals(expectedCrc.getValue(), ParallelByteStrings.crc32(POOL, string));
+            for (int segmentSize : SEGMENT_SIZES) {
+                Assert.assertEquals(string.hashCode(),
+                        ParallelByteStrings.hashCode(POOL, string, segmentSize));
+                Assert.assertEquals(expectedCrc.getValue(),
+                        ParallelByteStrings.crc32(POOL, string, segmentSize));
+            }
+        }
+        Assert.assertEquals(crc.getValue(), ParallelByteStrings.crc32(POOL, rope));
+    }
+
+    @Test
+    public void testMismatchAndEquals() {
+        ByteString a = sample(4000, 3);
+        ByteString b = a.substring(0, 1000).concat(a.substring(1000));
+        Assert.assertTrue(ParallelByteStrings.equals(POOL, a, b));
+        for (int segmentSize : SEGMENT_SIZES) {
+            Assert.assertEquals(-1, ParallelByteStrings.mismatch(POOL, a, b, segmentSize));
+            Assert.assertEquals(3000, ParallelByteStrings.mismatch(POOL, a, b.substring(0, 3000),
+                    segmentSize));
+        }
+        byte[] bytes = a.toByteArray();
+        for (int index : new int[] { 0, 999, 1000, 3999 }) {
+            byte[] changed = bytes.clone();
+            changed[index] ^= 1;
+            changed[3999] ^= 2;
+            ByteString c = ByteString.from(changed);
+            Assert.assertFalse(ParallelByteStrings.equals(POOL, a, c));
+            for (int segmentSize : SEGMENT_SIZES) {
+                Assert.assertEquals(index, ParallelByteStrings.mismatch(POOL, a, c, segmentSize));
+            }
+        }
+    }
+
+}
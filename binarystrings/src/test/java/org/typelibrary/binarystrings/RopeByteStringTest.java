@@ -0,0 +1,188 @@
+package org.typelibrary.binarystrings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RopeByteStringTest {
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i=0; i<length; ++i) {
+            bytes[i] = (byte) (i * 31 + seed);
+        }
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        int length = 0;
+        for (byte[] array : arrays)
+            length += array.length;
+        byte[] result = new byte[length];
+        int pos = 0;
+        for (byte[] array : arrays) {
+            System.arraycopy(array, 0, result, pos, array.length);
+            pos += array.length;
+        }
+        return result;
+    }
+
+    @Test
+    public void testConcat() {
+
+        byte[] b1 = bytes(100, 1);
+        byte[] b2 = bytes(200, 2);
+        byte[] b3 = bytes(300, 3);
+        byte[] expected = concat(b1, b2, b3);
+
+        ByteString string = ByteString.from(b1).concat(ByteString.from(b2)).concat(b3);
+        Assert.assertNotNull(string.store());
+        Assert.assertEquals(600, string.length());
+        Assert.assertArrayEquals(expected, string.toByteArray());
+        Assert.assertEquals(ByteString.from(expected), string);
+        Assert.assertEquals(string, ByteString.from(expected));
+        Assert.assertEquals(ByteString.from(expected).hashCode(), string.hashCode());
+
+        string = ByteString.from(b1).concat(ByteString.from(b2), ByteString.from(b3));
+        Assert.assertNotNull(string.store());
+        Assert.assertArrayEquals(expected, string.toByteArray());
+
+        for (int i=0; i<expected.length; ++i) {
+            Assert.assertEquals(expected[i], string.byteAt(i));
+        }
+        try {
+            string.byteAt(expected.length);
+            Assert.fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+
+    }
+
+    @Test
+    public void testConcatSmallCopies() {
+
+        ByteString string = ByteString.from(bytes(10, 1)).concat(ByteString.from(bytes(20, 2)));
+        Assert.assertNull(string.store());
+        Assert.assertEquals(30, string.footprint());
+
+    }
+
+    @Test
+    public void testBalanced() {
+
+        ByteString string = ByteString.EMPTY;
+        byte[] expected = new byte[0];
+        for (int i=0; i<2000; ++i) {
+            byte[] fragment = bytes(64 + (i % 7), i);
+            string = string.concat(ByteString.from(fragment));
+            expected = concat(expected, fragment);
+        }
+
+        Assert.assertTrue("depth=" + string.depth(), string.depth() < 40);
+        Assert.assertArrayEquals(expected, string.toByteArray());
+        Assert.assertEquals(ByteString.from(expected).hashCode(), string.hashCode());
+
+    }
+
+    @Test
+    public void testSearch() {
+
+        byte[] b1 = bytes(150, 1);
+        byte[] b2 = bytes(150, 2);
+        byte[] expected = concat(b1, b2);
+        ByteString flat = ByteString.from(expected);
+        ByteString rope = ByteString.from(b1).concat(ByteString.from(b2));
+        Assert.assertNotNull(rope.store());
+
+        for (int i=0; i<expected.length; i+=7) {
+            byte value = expected[i];
+            Assert.assertEquals(flat.indexOf(value), rope.indexOf(value));
+            Assert.assertEquals(flat.indexOf(value, i), rope.indexOf(value, i));
+            Assert.assertEquals(flat.lastIndexOf(value), rope.lastIndexOf(value));
+            Assert.assertEquals(flat.lastIndexOf(value, i), rope.lastIndexOf(value, i));
+        }
+
+        ByteString straddle = flat.substring(140, 160);
+        Assert.assertEquals(140, rope.indexOf(straddle));
+        Assert.assertEquals(140, rope.lastIndexOf(straddle));
+        Assert.assertTrue(rope.contains(straddle));
+        Assert.assertTrue(rope.contains(straddle.toByteArray()));
+        Assert.assertTrue(rope.startsWith(straddle, 140));
+        Assert.assertTrue(rope.startsWith(b1));
+        Assert.assertTrue(rope.endsWith(b2));
+        Assert.assertTrue(rope.endsWith(ByteString.from(b2)));
+        Assert.assertFalse(rope.startsWith(b2));
+        Assert.assertEquals(-1, rope.indexOf(ByteString.from(1, 2, 3, 4, 5)));
+        Assert.assertEquals(0, rope.indexOf(rope));
+        Assert.assertEquals(0, flat.indexOf(rope));
+
+    }
+
+    @Test
+    public void testSubstring() {
+
+        byte[] b1 = bytes(150, 1);
+        byte[] b2 = bytes(150, 2);
+        byte[] expected = concat(b1, b2);
+        ByteString rope = ByteString.from(b1).concat(ByteString.from(b2));
+
+        Assert.assertNull(rope.substring(10, 20).store());
+        Assert.assertEquals(ByteString.from(expected).substring(100, 200), rope.substring(100, 200));
+        Assert.assertEquals(ByteString.from(expected).substring(160), rope.substring(160));
+        Assert.assertTrue(rope == rope.substring(0));
+
+    }
+
+    @Test
+    public void testCopyTo() throws IOException {
+
+        byte[] b1 = bytes(150, 1);
+        byte[] b2 = bytes(150, 2);
+        byte[] expected = concat(b1, b2);
+        ByteString rope = ByteString.from(b1).concat(ByteString.from(b2));
+
+        byte[] target = new byte[expected.length + 2];
+        Assert.assertEquals(expected.length, rope.copyTo(target, 2));
+        Assert.assertArrayEquals(expected, ByteString.from(target).substring(2).toByteArray());
+
+        ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+        Assert.assertEquals(expected.length, rope.copyTo(buffer));
+        Assert.assertArrayEquals(expected, buffer.array());
+
+        InputStream in = rope.asInputStream();
+        byte[] read = new byte[expected.length];
+        read[0] = (byte) in.read();
+        int pos = 1;
+        int count;
+        while ((count = in.read(read, pos, Math.min(64, read.length - pos))) > 0) {
+            pos += count;
+        }
+        Assert.assertEquals(expected.length, pos);
+        Assert.assertEquals(-1, in.read());
+        Assert.assertArrayEquals(expected, read);
+
+    }
+
+    @Test
+    public void testFlatten() {
+
+        byte[] b1 = bytes(150, 1);
+        byte[] b2 = bytes(150, 2);
+        ByteString rope = ByteString.from(b1).concat(ByteString.from(b2));
+
+        ByteBuffer buffer = rope.toByteBuffer();
+        Assert.assertEquals(300, buffer.remaining());
+        Assert.assertTrue(buffer.isReadOnly());
+        Assert.assertEquals(ByteString.from(concat(b1, b2)), ByteString.from(buffer));
+
+        ByteString compact = rope.compact();
+        Assert.assertNull(compact.store());
+        Assert.assertEquals(rope, compact);
+
+    }
+
+}
@@ -0,0 +1,122 @@
+package org.typelibrary.binarystrings;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UnsynchronizedByteStringOutputStreamTest {
+
+    @Test
+    public void testBasic() {
+
+        UnsynchronizedByteStringOutputStream bout = new UnsynchronizedByteStringOutputStream();
+        Assert.assertTrue(ByteString.EMPTY == bout.toByteString());
+
+        bout.write(1);
+        bout.write(2);
+        bout.write(3);
+        bout.write(4);
+
+        Assert.assertEquals(4, bout.size());
+        Assert.assertEquals(0, bout.numChunks());
+
+        ByteString string = bout.toByteString();
+        Assert.assertEquals(4, bout.size());
+        Assert.assertEquals(4, string.length());
+        Assert.assertNull(string.store());
+
+        Assert.assertArrayEquals(new byte[] { 1, 2, 3, 4 } , string.toByteArray());
+
+    }
+
+    @Test
+    public void testChunkOverflow() {
+
+        UnsynchronizedByteStringOutputStream bout = new UnsynchronizedByteStringOutputStream(8);
+        bout.write(new byte[] { 1, 2, 3, 4, 5, 6, 7 });
+
+        Assert.assertEquals(7, bout.size());
+        Assert.assertEquals(0, bout.numChunks());
+
+        bout.write(new byte[] { 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18 });
+        Assert.assertEquals(18, bout.size());
+        Assert.assertEquals(1, bout.numChunks());
+
+        ByteString string = bout.toByteString();
+        Assert.assertEquals(18, bout.size());
+        Assert.assertEquals(18, string.length());
+        Assert.assertNotNull(string.store());
+
+        Assert.assertArrayEquals(
+                new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18 },
+                string.toByteArray());
+
+    }
+
+    @Test
+    public void testChunkOversize() {
+
+        UnsynchronizedByteStringOutputStream bout = new UnsynchronizedByteStringOutputStream(4);
+        bout.write(new byte[] { 1, 2, 3 });
+        bout.write(new byte[] { 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+        Assert.assertEquals(16, bout.size());
+        Assert.assertEquals(1, bout.numChunks());
+
+        ByteString string = bout.toByteString();
+        Assert.assertEquals(16, string.length());
+        Assert.assertEquals(ByteString.from(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16),
+                string);
+
+    }
+
+    @Test
+    public void testWriteAfterToByteString() {
+
+        UnsynchronizedByteStringOutputStream bout = new UnsynchronizedByteStringOutputStream(4);
+        bout.write(new byte[] { 1, 2, 3, 4, 5, 6 });
+        ByteString first = bout.toByteString();
+
+        bout.write(new byte[] { 7, 8, 9 });
+        ByteString second = bout.toByteString();
+
+        Assert.assertEquals(ByteString.from(1, 2, 3, 4, 5, 6), first);
+        Assert.assertEquals(ByteString.from(1, 2, 3, 4, 5, 6, 7, 8, 9), second);
+
+        bout.reset();
+        bout.write(new byte[] { 10, 11, 12, 13, 14, 15, 16 });
+        Assert.assertEquals(ByteString.from(1, 2, 3, 4, 5, 6), first);
+        Assert.assertEquals(ByteString.from(10, 11, 12, 13, 14, 15, 16), bout.toByteString());
+
+    }
+
+    @Test
+    public void testChunkedByteString() {
+
+        UnsynchronizedByteStringOutputStream bout = new UnsynchronizedByteStringOutputStream(3);
+        byte[] expected = new byte[20];
+        for (int i=0; i<expected.length; ++i) {
+            expected[i] = (byte) (i % 7);
+            bout.write(expected[i]);
+        }
+        ByteString flat = ByteString.from(expected);
+        ByteString string = bout.toByteString();
+
+        Assert.assertEquals(flat, string);
+        Assert.assertEquals(string, flat);
+        Assert.assertEquals(flat.hashCode(), string.hashCode());
+        for (int i=0; i<expected.length; ++i) {
+            Assert.assertEquals(expected[i], string.byteAt(i));
+            Assert.assertEquals(flat.indexOf(expected[i], i), string.indexOf(expected[i], i));
+            Assert.assertEquals(flat.lastIndexOf(expected[i], i), string.lastIndexOf(expected[i], i));
+        }
+
+        Assert.assertEquals(flat.indexOf(ByteString.from(5, 6, 0, 1)),
+                string.indexOf(ByteString.from(5, 6, 0, 1)));
+        Assert.assertEquals(flat.lastIndexOf(ByteString.from(5, 6, 0, 1)),
+                string.lastIndexOf(ByteString.from(5, 6, 0, 1)));
+        Assert.assertEquals(flat.substring(2, 17), string.substring(2, 17));
+        Assert.assertEquals(flat.substring(4, 5), string.substring(4, 5));
+        Assert.assertTrue(string.endsWith(flat.substring(11)));
+
+    }
+
+}
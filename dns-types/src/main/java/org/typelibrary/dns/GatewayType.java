@@ -20,7 +20,7 @@ public final class GatewayType {
     public static final GatewayType NONE = new GatewayType(0, "NONE");
     public static final GatewayType IPV4 = new GatewayType(1, "IPV4");
     public static final GatewayType IPV6 = new GatewayType(2, "IPV6");
-    public static final GatewayType DOMAIN_NAME = new GatewayType(2, "DOMAIN_NAME");
+    public static final GatewayType DOMAIN_NAME = new GatewayType(3, "DOMAIN_NAME");
 
     private final byte value;
     private final String name;
@@ -64,4 +64,4 @@ public final class GatewayType {
         }
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.dns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A DNS message, RFC 1035 section 4.1: the header followed by the question, answer,
+ * authority and additional sections.
+ *
+ * <p>
+ * The header flags are kept as the 16-bit word of the wire format, so that bits without an
+ * accessor, such as AD and CD, are preserved. The typed accessors decode the fields of
+ * that word.
+ * </p>
+ *
+ * <p>
+ * Fields:
+ * <table style="width: auto" summary="">
+ * <tr><td>Name</td><td>Type</td><td>Description</td></tr>
+ * <tr><td>id</td><td>16-bits</td><td>Identifier to match responses with queries</td></tr>
+ * <tr><td>flags</td><td>16-bits</td><td>QR, Opcode, AA, TC, RD, RA, Z, AD, CD, RCODE</td></tr>
+ * <tr><td>questions</td><td>{question}*</td><td>Question section</td></tr>
+ * <tr><td>answers</td><td>{record}*</td><td>Answer section</td></tr>
+ * <tr><td>authorities</td><td>{record}*</td><td>Authority section</td></tr>
+ * <tr><td>additionals</td><td>{record}*</td><td>Additional section</td></tr>
+ * </table>
+ * </p>
+ */
+public final class Message {
+
+    private final short id;
+    private final short flags;
+    private final List<Question> questions;
+    private final List<Record> answers;
+    private final List<Record> authorities;
+    private final List<Record> additionals;
+
+    public Message(short id, short flags, List<Question> questions, List<Record> answers,
+            List<Record> authorities, List<Record> additionals) {
+        if (questions == null)
+            throw new IllegalArgumentException("Questions cannot be null");
+        if (answers == null)
+            throw new IllegalArgumentException("Answers cannot be null");
+        if (authorities == null)
+            throw new IllegalArgumentException("Authorities cannot be null");
+        if (additionals == null)
+            throw new IllegalArgumentException("Additionals cannot be null");
+        this.id = id;
+        this.flags = flags;
+        this.questions = Collections.unmodifiableList(new ArrayList<Question>(questions));
+        this.answers = Collections.unmodifiableList(new ArrayList<Record>(answers));
+        this.authorities = Collections.unmodifiableList(new ArrayList<Record>(authorities));
+        this.additionals = Collections.unmodifiableList(new ArrayList<Record>(additionals));
+    }
+
+    /**
+     * Returns the flags word of a header with the specified fields and the Z, AD and CD bits
+     * clear.
+     */
+    public static short flags(QR qr, OpCode opCode, Authoritative authoritative,
+            Truncated truncated, RecursionDesired recursionDesired,
+            RecursionAvailable recursionAvailable, ResponseCode responseCode) {
+        int flags = 0;
+        if (qr == QR.RESPONSE)
+            flags |= 0x8000;
+        flags |= opCode.toInt() << 11;
+        if (Authoritative.toBoolean(authoritative))
+            flags |= 0x0400;
+        if (Truncated.toBoolean(truncated))
+            flags |= 0x0200;
+        if (RecursionDesired.toBoolean(recursionDesired))
+            flags |= 0x0100;
+        if (RecursionAvailable.toBoolean(recursionAvailable))
+            flags |= 0x0080;
+        flags |= responseCode.toInt();
+        return (short) flags;
+    }
+
+    public final short getId() {
+        return id;
+    }
+
+    public final short getFlags() {
+        return flags;
+    }
+
+    public final QR getQR() {
+        return (flags & 0x8000) != 0 ? QR.RESPONSE : QR.QUERY;
+    }
+
+    public final OpCode getOpCode() {
+        return OpCode.fromInt((flags >> 11) & 0xF);
+    }
+
+    public final Authoritative getAuthoritative() {
+        return Authoritative.fromBoolean((flags & 0x0400) != 0);
+    }
+
+    public final Truncated getTruncated() {
+        return Truncated.fromBoolean((flags & 0x0200) != 0);
+    }
+
+    public final RecursionDesired getRecursionDesired() {
+        return RecursionDesired.fromBoolean((flags & 0x0100) != 0);
+    }
+
+    public final RecursionAvailable getRecursionAvailable() {
+        return RecursionAvailable.fromBoolean((flags & 0x0080) != 0);
+    }
+
+    public final ResponseCode getResponseCode() {
+        return ResponseCode.fromInt(flags & 0xF);
+    }
+
+    public final List<Question> getQuestions() {
+        return questions;
+    }
+
+    public final List<Record> getAnswers() {
+        return answers;
+    }
+
+    public final List<Record> getAuthorities() {
+        return authorities;
+    }
+
+    public final List<Record> getAdditionals() {
+        return additionals;
+    }
+
+    public final String toString() {
+        return "id=" + (id & 0xFFFF) + ", qr=" + getQR() + ", opCode=" + getOpCode()
+                + ", rcode=" + getResponseCode() + ", questions=" + questions + ", answers="
+                + answers + ", authorities=" + authorities + ", additionals=" + additionals;
+    }
+
+}
@@ -16,53 +16,230 @@
 package org.typelibrary.dns;
 
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
-public final class Name {
+import org.typelibrary.binarystrings.ByteString;
+
+/**
+ * A domain name, a sequence of labels that is absolute if it ends with the root label.
+ * 
+ * <p>
+ * Names created by the factory methods are held in the uncompressed wire format of RFC 1035
+ * section 3.1: a sequence of length prefixed labels ending with the zero length root label.
+ * The offsets of the labels are indexed when a name is created, so {@link #labelCount()},
+ * {@link #label(int)}, {@link #parent()} and {@link #isSubdomainOf(Name)} neither scan nor
+ * copy the name, and {@link #toWire()} returns the bytes as they are. A parent shares the
+ * bytes and the index of its child. The textual form is only built when it is asked for,
+ * except that a name parsed from text keeps that text. Canonical names of a
+ * {@link NameTable} hold only their first label and their canonical parent instead.
+ * </p>
+ * 
+ * <p>
+ * Two names are equal if both are absolute or both relative and their labels are equal
+ * ignoring ASCII case, RFC 4343.
+ * </p>
+ */
+public abstract class Name {
 
     private static final Charset ASCII = Charset.forName("ASCII");
     private static final int MAX_LEN = 255;
     private static final int MAX_LABEL = 63;
+    private static final byte[] NO_LABELS = new byte[0];
+
+    /**
+     * The root name, ".".
+     */
+    public static final Name ROOT = new WireName(ByteString.from(0), NO_LABELS, 0, true, ".");
     
-    private final String name;
     private final boolean absolute;
+
+    /**
+     * Computed on first use.
+     */
+    private String name;
+    private int hash;
     
-    private Name(String name, boolean absolute) {
-        this.name = name;
+    Name(boolean absolute, String name) {
         this.absolute = absolute;
+        this.name = name;
+    }
+
+    private static Name fromText(String name, boolean absolute) {
+        ByteString wire = encodeWire(name, absolute);
+        return new WireName(wire, labelOffsets(wire), 0, absolute, name);
     }
     
     public final String getName() {
-        return name;
+        String n = name;
+        if (n == null) {
+            n = format();
+            name = n;
+        }
+        return n;
     }
     
     public final boolean isAbsolute() {
         return absolute;
     }
 
+    /**
+     * Returns the number of labels, not counting the root label.
+     */
+    public abstract int labelCount();
+
+    /**
+     * Returns label index, counting from the leftmost label, without its length prefix.
+     * 
+     * @throws IndexOutOfBoundsException if index is not less than {@link #labelCount()}
+     */
+    public abstract ByteString label(int index);
+
+    /**
+     * Returns this name without its leftmost label, or null if this is the root name or a
+     * relative name of one label. The result shares the bytes of this name. The parent of a
+     * canonical name from a {@link NameTable} is canonical and is returned without
+     * allocating.
+     */
+    public abstract Name parent();
+
+    /**
+     * Returns the uncompressed wire form of this name, RFC 1035 section 3.1. A relative name
+     * is encoded as if it were relative to the root. Nothing is allocated, except the first
+     * time for a canonical name of a {@link NameTable}.
+     */
+    public abstract ByteString toWire();
+
+    /**
+     * Tests if this name is other or below it, comparing labels ignoring ASCII case. Every
+     * absolute name is a subdomain of {@link #ROOT}. Nothing is allocated.
+     */
+    public final boolean isSubdomainOf(Name other) {
+        if (absolute != other.absolute)
+            return false;
+        int skip = labelCount() - other.labelCount();
+        if (skip < 0)
+            return false;
+        return other.labelsMatch(this, skip);
+    }
+
+    /**
+     * Tests if the labels of this name equal the labels of other from label skip on,
+     * ignoring ASCII case.
+     */
+    abstract boolean labelsMatch(Name other, int skip);
+
+    /**
+     * Tests if label index of this name equals label, ignoring ASCII case.
+     */
+    abstract boolean labelEquals(int index, byte[] label);
+
+    /**
+     * Builds the textual form, escaping special characters as in RFC 1035 section 5.1.
+     */
+    abstract String format();
+
+    /**
+     * Returns the hash of the labels, which is {@link #hashLabel(int, int)} applied to each
+     * label from the rightmost one, starting with 1 for an absolute name and 0 for a relative
+     * one, so that the hash of a name follows from the hash of its parent.
+     */
+    abstract int hashLabels();
+
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}, ignoring ASCII case.
+     */
     @Override
-    public int hashCode() {
-        return name.hashCode();
+    public final int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = hashLabels();
+            hash = h;
+        }
+        return h;
     }
     
     @Override
-    public boolean equals(Object obj) {
+    public final boolean equals(Object obj) {
         if (this == obj)
             return true;
-        if (obj == null)
-            return false;
-        if (getClass() != obj.getClass())
+        if (!(obj instanceof Name))
             return false;
         Name other = (Name) obj;
-        if (name == null) {
-            if (other.name != null)
-                return false;
-        } else if (!name.equals(other.name))
+        if (absolute != other.absolute || labelCount() != other.labelCount())
+            return false;
+        if (hash != 0 && other.hash != 0 && hash != other.hash)
             return false;
-        return true;
+        return labelsMatch(other, 0);
+    }
+
+    /**
+     * Combines the hash of the labels to the right of a label with the hash of the label,
+     * which is computed by {@link #hashByte(int, byte)} from its length.
+     */
+    static int hashLabel(int h, int labelHash) {
+        return 31 * h + labelHash;
+    }
+
+    static int hashByte(int labelHash, byte b) {
+        return 31 * labelHash + (b >= 'A' && b <= 'Z' ? b | 0x20 : b & 0xFF);
+    }
+
+    static boolean equalsIgnoreAsciiCase(byte a, byte b) {
+        return a == b || (a | 0x20) == (b | 0x20) && (a | 0x20) >= 'a' && (a | 0x20) <= 'z';
+    }
+
+    /**
+     * Returns the length of the wire form of a name of length characters in host name syntax,
+     * which has a root label added unless the name is absolute.
+     */
+    private static int wireLength(int length, boolean absolute) {
+        return absolute ? length + 1 : length + 2;
+    }
+
+    /**
+     * Encodes a name in host name syntax, which has no escapes, as a sequence of length
+     * prefixed labels.
+     */
+    private static ByteString encodeWire(String name, boolean absolute) {
+        int length = name.length();
+        byte[] bytes = new byte[wireLength(length, absolute)];
+        int labelStart = 0;
+        int pos = 1;
+        for (int i=0; i<length; ++i) {
+            char c = name.charAt(i);
+            if (c == '.') {
+                bytes[labelStart] = (byte) (pos - labelStart - 1);
+                labelStart = pos++;
+            } else {
+                bytes[pos++] = (byte) c;
+            }
+        }
+        if (!absolute)
+            bytes[labelStart] = (byte) (pos - labelStart - 1);
+        return ByteString.from(bytes);
+    }
+
+    /**
+     * Returns the offsets of the labels of a well formed wire name, excluding the root label.
+     */
+    private static byte[] labelOffsets(ByteString wire) {
+        int count = 0;
+        for (int pos=0; wire.byteAt(pos) != 0; pos += (wire.byteAt(pos) & 0xFF) + 1) {
+            ++count;
+        }
+        if (count == 0)
+            return NO_LABELS;
+        byte[] offsets = new byte[count];
+        int pos = 0;
+        for (int i=0; i<count; ++i) {
+            offsets[i] = (byte) pos;
+            pos += (wire.byteAt(pos) & 0xFF) + 1;
+        }
+        return offsets;
     }
 
     public final String toString() {
-        return name;
+        return getName();
     }
     
     public static final Name fromString(String name) {
@@ -121,10 +298,11 @@ public final class Name {
         if (state == 2)
             throw new ParseException();
         
-        if (name.endsWith("."))
-            return new Name(name, true);
-        else
-            return new Name(name, false);
+        boolean absolute = name.endsWith(".");
+        if (wireLength(len, absolute) > MAX_LEN)
+            throw new ParseException();
+        
+        return fromText(name, absolute);
         
     }
     
@@ -180,13 +358,204 @@ public final class Name {
         if (state == 2)
             throw new ParseException();
         
+        boolean absolute = length > 0 && bytes[max - 1] == '.';
+        if (wireLength(length, absolute) > MAX_LEN)
+            throw new ParseException();
+        
         String name = new String(bytes, offset, length, ASCII);
         
-        if (name.endsWith("."))
-            return new Name(name, true);
-        else
-            return new Name(name, false);
+        return fromText(name, absolute);
         
     }
 
+    /**
+     * Returns the absolute name encoded by wire in the uncompressed format of RFC 1035: a
+     * sequence of length prefixed labels ending with the zero length root label.
+     * 
+     * <p>
+     * Labels are not restricted to host name syntax, since owner names such as
+     * _sip._tcp.example.com. are common in DNS data. In the textual form, a '.', '\\' or
+     * other special character within a label is preceded by a backslash, and bytes outside
+     * the printable ASCII range are written as \DDD, as in RFC 1035 section 5.1.
+     * </p>
+     * 
+     * @param wire the encoded name, without compression pointers
+     * @return the name
+     * @throws ParseException if wire is not a single well formed name
+     */
+    public static final Name fromWire(ByteString wire) {
+        
+        if (wire == null)
+            throw new IllegalArgumentException();
+        
+        int length = wire.length();
+        if (length > MAX_LEN)
+            throw new ParseException("Name too long. len=" + length);
+        if (length == 1 && wire.byteAt(0) == 0)
+            return ROOT;
+        
+        int pos = 0;
+        while (true) {
+            if (pos >= length)
+                throw new ParseException("Name is missing the root label");
+            int labelLength = wire.byteAt(pos) & 0xFF;
+            if (labelLength > MAX_LABEL)
+                throw new ParseException("Invalid label length. len=" + labelLength);
+            if (pos + 1 + labelLength > length)
+                throw new ParseException("Label extends past the end of the name");
+            pos += 1 + labelLength;
+            if (labelLength == 0)
+                break;
+        }
+        if (pos != length)
+            throw new ParseException("Bytes after the root label");
+        
+        return new WireName(wire, labelOffsets(wire), 0, true, null);
+        
+    }
+
+    static void appendEscaped(StringBuilder builder, int c) {
+        switch (c) {
+            case '.': case '\\': case '"': case '(': case ')': case ';': case '@': case '$':
+                builder.append('\\').append((char) c);
+                break;
+            default:
+                if (c > 0x20 && c < 0x7F) {
+                    builder.append((char) c);
+                } else {
+                    builder.append('\\');
+                    builder.append((char) ('0' + c / 100));
+                    builder.append((char) ('0' + c / 10 % 10));
+                    builder.append((char) ('0' + c % 10));
+                }
+        }
+    }
+
+    /**
+     * A name held in wire format, with an index of the offsets of its labels.
+     */
+    private static final class WireName extends Name {
+
+        /**
+         * The wire form, which ends with the root label even if the name is relative.
+         */
+        private final ByteString wire;
+
+        /**
+         * Offsets of the labels in the wire form of the name that created the index, as
+         * unsigned bytes. This name starts at label first of that name.
+         */
+        private final byte[] offsets;
+        private final int first;
+
+        WireName(ByteString wire, byte[] offsets, int first, boolean absolute, String name) {
+            super(absolute, name);
+            this.wire = wire;
+            this.offsets = offsets;
+            this.first = first;
+        }
+
+        @Override
+        public int labelCount() {
+            return offsets.length - first;
+        }
+
+        @Override
+        public ByteString label(int index) {
+            if (index < 0 || index >= labelCount())
+                throw new IndexOutOfBoundsException("index=" + index + ", count=" + labelCount());
+            int start = offset(index) + 1;
+            return wire.substring(start, start + (wire.byteAt(start - 1) & 0xFF));
+        }
+
+        /**
+         * Returns the offset of label index in the wire form, or of the root label if index
+         * is the label count.
+         */
+        private int offset(int index) {
+            if (first + index == offsets.length)
+                return wire.length() - 1;
+            return (offsets[first + index] & 0xFF) - (offsets[first] & 0xFF);
+        }
+
+        @Override
+        public Name parent() {
+            int count = labelCount();
+            if (count == 1 && isAbsolute())
+                return ROOT;
+            if (count <= 1)
+                return null;
+            return new WireName(wire.substring(offset(1)), offsets, first + 1, isAbsolute(),
+                    null);
+        }
+
+        @Override
+        public ByteString toWire() {
+            return wire;
+        }
+
+        @Override
+        boolean labelsMatch(Name other, int skip) {
+            if (other instanceof WireName) {
+                WireName o = (WireName) other;
+                return o.offset(skip) == o.wire.length() - wire.length()
+                        && o.wire.endsWithIgnoreAsciiCase(wire);
+            }
+            // Canonical names step to their parents without allocating
+            Name ancestor = other;
+            for (int i=0; i<skip; ++i) {
+                ancestor = ancestor.parent();
+            }
+            return ancestor.labelsMatch(this, 0);
+        }
+
+        @Override
+        boolean labelEquals(int index, byte[] label) {
+            int pos = offset(index);
+            int length = wire.byteAt(pos) & 0xFF;
+            if (length != label.length)
+                return false;
+            for (int i=0; i<length; ++i) {
+                if (!equalsIgnoreAsciiCase(wire.byteAt(pos + 1 + i), label[i]))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        String format() {
+            int count = labelCount();
+            if (count == 0)
+                return isAbsolute() ? "." : "";
+            StringBuilder builder = new StringBuilder(wire.length() + 8);
+            for (int i=0; i<count; ++i) {
+                if (i > 0)
+                    builder.append('.');
+                int pos = offset(i);
+                for (int end=pos+(wire.byteAt(pos) & 0xFF); pos<end; ) {
+                    appendEscaped(builder, wire.byteAt(++pos) & 0xFF);
+                }
+            }
+            if (isAbsolute())
+                builder.append('.');
+            return builder.toString();
+        }
+
+        @Override
+        int hashLabels() {
+            int h = isAbsolute() ? 1 : 0;
+            for (int i=labelCount()-1; i>=0; --i) {
+                int pos = offset(i);
+                int length = wire.byteAt(pos) & 0xFF;
+                int labelHash = length;
+                for (int j=1; j<=length; ++j) {
+                    labelHash = hashByte(labelHash, wire.byteAt(pos + j));
+                }
+                h = hashLabel(h, labelHash);
+            }
+            return h;
+        }
+
+    }
+
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.dns;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.typelibrary.binarystrings.ByteString;
+
+/**
+ * Table of canonical {@link Name}s, so that a cache or zone holding many copies of the same
+ * names keeps one instance of each.
+ *
+ * <p>
+ * {@link #intern(Name)} returns the canonical instance equal to its argument, creating it
+ * if there is none. Each canonical name is a node that holds only its first label and the
+ * canonical node of its parent, so {@link Name#parent()} of a canonical name is canonical,
+ * and walking towards the root allocates nothing. Interning a name interns its ancestors,
+ * so suffixes such as com. and example.com. exist once however many names end with them,
+ * and siblings such as www.example.com. and mail.example.com. cost little more than their
+ * first labels. There is exactly one canonical instance per name, and canonical names of
+ * the same table can be compared by identity. Names are equal ignoring ASCII case, so the
+ * spelling interned first is the one kept.
+ * </p>
+ *
+ * <p>
+ * A node copies its label, so interning a name decoded from a message does not keep the
+ * message alive. The wire form of a node is built from the labels the first time
+ * {@link Name#toWire()} is called and kept from then on, and its text form is built when it
+ * is asked for.
+ * </p>
+ *
+ * <p>
+ * Unlike {@link org.typelibrary.binarystrings.ByteStringInterner}, a table is unbounded and
+ * never evicts, so that identity comparisons stay valid for the life of the table. Thread
+ * safe; lookups of names already in the table do not lock.
+ * </p>
+ */
+public final class NameTable {
+
+    private final ConcurrentHashMap<Name, Name> names;
+
+    public NameTable() {
+        this.names = new ConcurrentHashMap<Name, Name>();
+    }
+
+    /**
+     * @param initialCapacity the number of names, including ancestors, to size the table for
+     */
+    public NameTable(int initialCapacity) {
+        this.names = new ConcurrentHashMap<Name, Name>(initialCapacity);
+    }
+
+    /**
+     * Returns the canonical instance equal to name, adding name and its ancestors to the
+     * table if they are not there yet.
+     *
+     * @param name the name to intern
+     * @return the canonical instance
+     */
+    public Name intern(Name name) {
+        if (name == null)
+            throw new NullPointerException("Name cannot be null");
+        Name canonical = names.get(name);
+        if (canonical != null)
+            return canonical;
+        return insert(name);
+    }
+
+    /**
+     * Returns the canonical instance equal to name, or null if it has not been interned.
+     */
+    public Name get(Name name) {
+        return names.get(name);
+    }
+
+    /**
+     * Adds a node for name after interning its parent.
+     */
+    private Name insert(Name name) {
+        Name node;
+        if (name.labelCount() == 0) {
+            node = Name.ROOT;
+        } else {
+            Name parent = name.parent();
+            if (parent != null) {
+                Name canonicalParent = names.get(parent);
+                parent = canonicalParent != null ? canonicalParent : insert(parent);
+            }
+            node = new Node(name.label(0).toByteArray(), parent, name.isAbsolute());
+        }
+        Name existing = names.putIfAbsent(node, node);
+        return existing != null ? existing : node;
+    }
+
+    /**
+     * Returns the number of canonical names, ancestors included.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * A canonical name: its first label and its canonical parent, which is a node, the root
+     * or, for a relative name of one label, null.
+     */
+    private static final class Node extends Name {
+
+        private final byte[] label;
+        private final Name parent;
+        private final int labelCount;
+
+        /**
+         * Built on first use.
+         */
+        private ByteString wire;
+
+        Node(byte[] label, Name parent, boolean absolute) {
+            super(absolute, null);
+            this.label = label;
+            this.parent = parent;
+            this.labelCount = parent != null ? parent.labelCount() + 1 : 1;
+        }
+
+        /**
+         * Returns the parent if it is a node, or null.
+         */
+        private Node next() {
+            return parent instanceof Node ? (Node) parent : null;
+        }
+
+        private Node ancestor(int index) {
+            Node node = this;
+            for (int i=0; i<index; ++i) {
+                node = node.next();
+            }
+            return node;
+        }
+
+        @Override
+        public int labelCount() {
+            return labelCount;
+        }
+
+        @Override
+        public ByteString label(int index) {
+            if (index < 0 || index >= labelCount)
+                throw new IndexOutOfBoundsException("index=" + index + ", count=" + labelCount);
+            return ByteString.from(ancestor(index).label);
+        }
+
+        @Override
+        public Name parent() {
+            return parent;
+        }
+
+        @Override
+        public ByteString toWire() {
+            ByteString w = wire;
+            if (w == null) {
+                int length = 1;
+                for (Node node = this; node != null; node = node.next()) {
+                    length += node.label.length + 1;
+                }
+                byte[] bytes = new byte[length];
+                int pos = 0;
+                for (Node node = this; node != null; node = node.next()) {
+                    bytes[pos++] = (byte) node.label.length;
+                    System.arraycopy(node.label, 0, bytes, pos, node.label.length);
+                    pos += node.label.length;
+                }
+                w = ByteString.from(bytes);
+                wire = w;
+            }
+            return w;
+        }
+
+        @Override
+        boolean labelsMatch(Name other, int skip) {
+            if (other instanceof Node) {
+                Node o = ((Node) other).ancestor(skip);
+                // Nodes of one table share their ancestors
+                for (Node node = this; node != o; node = node.next(), o = o.next()) {
+                    if (!equalsIgnoreAsciiCase(node.label, o.label))
+                        return false;
+                }
+                return true;
+            }
+            int index = skip;
+            for (Node node = this; node != null; node = node.next()) {
+                if (!other.labelEquals(index++, node.label))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        boolean labelEquals(int index, byte[] label) {
+            return equalsIgnoreAsciiCase(ancestor(index).label, label);
+        }
+
+        private static boolean equalsIgnoreAsciiCase(byte[] a, byte[] b) {
+            if (a.length != b.length)
+                return false;
+            for (int i=0; i<a.length; ++i) {
+                if (!Name.equalsIgnoreAsciiCase(a[i], b[i]))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        String format() {
+            StringBuilder builder = new StringBuilder(labelCount * 8);
+            for (Node node = this; node != null; node = node.next()) {
+                if (node != this)
+                    builder.append('.');
+                for (byte b : node.label) {
+                    appendEscaped(builder, b & 0xFF);
+                }
+            }
+            if (isAbsolute())
+                builder.append('.');
+            return builder.toString();
+        }
+
+        @Override
+        int hashLabels() {
+            int h = parent != null ? parent.hashCode() : 0;
+            int labelHash = label.length;
+            for (byte b : label) {
+                labelHash = hashByte(labelHash, b);
+            }
+            return hashLabel(h, labelHash);
+        }
+
+    }
+
+}
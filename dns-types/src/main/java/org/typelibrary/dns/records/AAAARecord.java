@@ -78,7 +78,7 @@ public final class AAAARecord extends Record {
         
         if (localString == null) {
             IP6Formatter formatter = new IP6Formatter();
-            address.forEach(formatter);
+            address.forEachChunk(formatter);
             String tempString = new String(formatter.address);
             localString = super.toString() + ", address=[" + tempString + "]";
             toStringCache = localString;
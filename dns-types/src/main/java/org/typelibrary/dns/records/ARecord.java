@@ -78,7 +78,7 @@ public final class ARecord extends Record {
         
         if (localString == null) {
             IP4Formatter formatter = new IP4Formatter();
-            address.forEach(formatter);
+            address.forEachChunk(formatter);
             String tempString = formatter.builder.toString();
             localString = super.toString() + ", address=" + tempString;
             toStringCache = localString;
@@ -99,7 +99,7 @@ public final class IPSECKEYRecord extends Record {
             throw new IllegalArgumentException("Gateway type cannot be null.");
         if (algorithm == null)
             throw new IllegalArgumentException("Algorithm cannot be null.");
-        if (gateway == null)
+        if (gateway == null && gatewayType != GatewayType.NONE)
             throw new IllegalArgumentException("Gateway cannot be null.");
         if (publicKey == null)
             throw new IllegalArgumentException("Public key cannot be null.");
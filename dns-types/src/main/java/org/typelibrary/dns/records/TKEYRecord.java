@@ -53,12 +53,23 @@ public final class TKEYRecord extends Record {
     private final int inception;
     private final int expiration;
     private final short mode;
+    private final short error;
     private final short keySize;
     private final ByteString keyData;
     private final ByteString otherData;
 
+    /**
+     * Creates a record with an error of zero, as in a request or a response that succeeded.
+     */
     public TKEYRecord(Name name, short recordClass, int timeToLive, Name algorithm, int inception,
             int expiration, short mode, short keySize, ByteString keyData, ByteString otherData) {
+        this(name, recordClass, timeToLive, algorithm, inception, expiration, mode, (short) 0,
+                keySize, keyData, otherData);
+    }
+
+    public TKEYRecord(Name name, short recordClass, int timeToLive, Name algorithm, int inception,
+            int expiration, short mode, short error, short keySize, ByteString keyData,
+            ByteString otherData) {
         super(name, RecordType.TKEY, recordClass, timeToLive);
         if (algorithm == null)
             throw new IllegalArgumentException("Algorithm cannot be null.");
@@ -70,6 +81,7 @@ public final class TKEYRecord extends Record {
         this.inception = inception;
         this.expiration = expiration;
         this.mode = mode;
+        this.error = error;
         this.keySize = keySize;
         this.keyData = keyData;
         this.otherData = otherData;
@@ -91,6 +103,10 @@ public final class TKEYRecord extends Record {
         return mode;
     }
 
+    public short getError() {
+        return error;
+    }
+
     public short getKeySize() {
         return keySize;
     }
@@ -106,7 +122,7 @@ public final class TKEYRecord extends Record {
     @Override
     public String toString() {
         return super.toString() + ", algorithm=" + algorithm + ", inception=" + inception + ", expiration="
-                + expiration + ", mode=" + mode + ", keySize=" + keySize + ", keyData=" + keyData
+                + expiration + ", mode=" + mode + ", error=" + error + ", keySize=" + keySize + ", keyData=" + keyData
                 + ", otherData=" + otherData + "]";
     }
 
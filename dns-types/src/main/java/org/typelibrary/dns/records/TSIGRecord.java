@@ -54,11 +54,22 @@ public final class TSIGRecord extends Record {
     private final short fudge;
     private final ByteString mac;
     private final short originalId;
+    private final short error;
     private final ByteString otherData;
 
+    /**
+     * Creates a record with an error of zero, as in a request or a response that verified.
+     */
     public TSIGRecord(Name name, short recordClass, int timeToLive, Name algorithm,
             long timeSigned, short fudge, ByteString mac, short originalId,
             ByteString otherData) {
+        this(name, recordClass, timeToLive, algorithm, timeSigned, fudge, mac, originalId,
+                (short) 0, otherData);
+    }
+
+    public TSIGRecord(Name name, short recordClass, int timeToLive, Name algorithm,
+            long timeSigned, short fudge, ByteString mac, short originalId, short error,
+            ByteString otherData) {
         super(name, RecordType.TSIG, recordClass, timeToLive);
         if (algorithm == null)
             throw new IllegalArgumentException("Algorithm cannot be null.");
@@ -77,6 +88,7 @@ public final class TSIGRecord extends Record {
         this.fudge = fudge;
         this.mac = mac;
         this.originalId = originalId;
+        this.error = error;
         this.otherData = otherData;
     }
 
@@ -100,6 +112,10 @@ public final class TSIGRecord extends Record {
         return originalId;
     }
 
+    public short getError() {
+        return error;
+    }
+
     public ByteString getOtherData() {
         return otherData;
     }
@@ -108,7 +124,7 @@ public final class TSIGRecord extends Record {
     public String toString() {
         return super.toString() + ", algorithm=" + algorithm + ", timeSigned=" + timeSigned
                 + ", fudge=" + fudge + ", mac=" + mac + ", originalId="
-                + originalId + ", otherData=" + otherData + "]";
+                + originalId + ", error=" + error + ", otherData=" + otherData + "]";
     }
 
 }
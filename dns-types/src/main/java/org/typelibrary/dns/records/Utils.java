@@ -15,7 +15,7 @@
  */
 package org.typelibrary.dns.records;
 
-import org.typelibrary.binarystrings.ByteConsumer;
+import org.typelibrary.binarystrings.ByteChunkConsumer;
 
 final class Utils {
 
@@ -50,41 +50,46 @@ final class Utils {
         return new String(address);
     }
 
-    static final class IP4Formatter implements ByteConsumer {
+    static final class IP4Formatter implements ByteChunkConsumer {
 
         boolean rest;
         StringBuilder builder = new StringBuilder();
         
         @Override
-        public void accept(byte value) {
-            if (rest)
-                builder.append(".");
-            else
-                rest = true;
-            builder.append(value & 0xFF);
+        public void accept(byte[] bytes, int offset, int length) {
+            for (int i=offset, end=offset+length; i<end; ++i) {
+                if (rest)
+                    builder.append('.');
+                else
+                    rest = true;
+                builder.append(bytes[i] & 0xFF);
+            }
         }
         
     }
     
-    static final class IP6Formatter implements ByteConsumer {
+    static final class IP6Formatter implements ByteChunkConsumer {
 
         int count, charPos;
         char[] address = new char[32+7];
         
         @Override
-        public void accept(byte value) {
-            if (count > 0 && (count % 2 == 0)) {
-                address[charPos] = ':';
+        public void accept(byte[] bytes, int offset, int length) {
+            for (int i=offset, end=offset+length; i<end; ++i) {
+                if (count > 0 && (count % 2 == 0)) {
+                    address[charPos] = ':';
+                    ++charPos;
+                }
+
+                int value = bytes[i];
+                int index = (value & 0xF0) >>> 4;
+                address[charPos] = HEX[index];
                 ++charPos;
+                index = value & 0x0F;
+                address[charPos] = HEX[index];
+                ++charPos;
+                ++count;
             }
-
-            int index = (value & 0xF0) >>> 4;
-            address[charPos] = HEX[index];
-            ++charPos;
-            index = value & 0x0F;
-            address[charPos] = HEX[index];
-            ++charPos;
-            ++count;
         }
         
     }
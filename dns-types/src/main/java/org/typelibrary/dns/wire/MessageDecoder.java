@@ -0,0 +1,536 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.dns.wire;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.typelibrary.binarystrings.ByteString;
+import org.typelibrary.binarystrings.ByteStringReader;
+import org.typelibrary.dns.Algorithm;
+import org.typelibrary.dns.CertificateType;
+import org.typelibrary.dns.DigestType;
+import org.typelibrary.dns.Message;
+import org.typelibrary.dns.Name;
+import org.typelibrary.dns.ParseException;
+import org.typelibrary.dns.Protocol;
+import org.typelibrary.dns.PublicKeyAlgorithm;
+import org.typelibrary.dns.QClass;
+import org.typelibrary.dns.Question;
+import org.typelibrary.dns.RawRecord;
+import org.typelibrary.dns.Record;
+import org.typelibrary.dns.RecordType;
+import org.typelibrary.dns.records.A6Record;
+import org.typelibrary.dns.records.AAAARecord;
+import org.typelibrary.dns.records.AFSDBRecord;
+import org.typelibrary.dns.records.APLRecord;
+import org.typelibrary.dns.records.ARecord;
+import org.typelibrary.dns.records.CAARecord;
+import org.typelibrary.dns.records.CDNSKEYRecord;
+import org.typelibrary.dns.records.CDSRecord;
+import org.typelibrary.dns.records.CERTRecord;
+import org.typelibrary.dns.records.CNAMERecord;
+import org.typelibrary.dns.records.DHCIDRecord;
+import org.typelibrary.dns.records.DLVRecord;
+import org.typelibrary.dns.records.DNAMERecord;
+import org.typelibrary.dns.records.DNSKEYRecord;
+import org.typelibrary.dns.records.DSRecord;
+import org.typelibrary.dns.records.HINFORecord;
+import org.typelibrary.dns.records.HIPRecord;
+import org.typelibrary.dns.records.IPSECKEYRecord;
+import org.typelibrary.dns.records.ISDNRecord;
+import org.typelibrary.dns.records.KEYRecord;
+import org.typelibrary.dns.records.KXRecord;
+import org.typelibrary.dns.records.LOCRecord;
+import org.typelibrary.dns.records.MBRecord;
+import org.typelibrary.dns.records.MDRecord;
+import org.typelibrary.dns.records.MFRecord;
+import org.typelibrary.dns.records.MGRecord;
+import org.typelibrary.dns.records.MINFORecord;
+import org.typelibrary.dns.records.MRRecord;
+import org.typelibrary.dns.records.MXRecord;
+import org.typelibrary.dns.records.NAPTRRecord;
+import org.typelibrary.dns.records.NSEC3PARAMRecord;
+import org.typelibrary.dns.records.NSEC3Record;
+import org.typelibrary.dns.records.NSECRecord;
+import org.typelibrary.dns.records.NSRecord;
+import org.typelibrary.dns.records.NULLRecord;
+import org.typelibrary.dns.records.NXTRecord;
+import org.typelibrary.dns.records.OPTRecord;
+import org.typelibrary.dns.records.PTRRecord;
+import org.typelibrary.dns.records.RPRecord;
+import org.typelibrary.dns.records.RRSIGRecord;
+import org.typelibrary.dns.records.RTRecord;
+import org.typelibrary.dns.records.SIGRecord;
+import org.typelibrary.dns.records.SOARecord;
+import org.typelibrary.dns.records.SRVRecord;
+import org.typelibrary.dns.records.SSHFPRecord;
+import org.typelibrary.dns.records.TKEYRecord;
+import org.typelibrary.dns.records.TLSARecord;
+import org.typelibrary.dns.records.TSIGRecord;
+import org.typelibrary.dns.records.TXTRecord;
+import org.typelibrary.dns.records.WKSRecord;
+import org.typelibrary.dns.records.X25Record;
+
+/**
+ * Decodes DNS messages in the wire format of RFC 1035 into {@link Message} objects.
+ *
+ * <p>
+ * Names may be compressed anywhere, including inside RDATA. Compression pointers must point
+ * to an earlier position than the pointer itself, which rules out loops. Records of the
+ * types in {@code org.typelibrary.dns.records} are decoded into their typed classes; all
+ * other types become {@link RawRecord}s.
+ * </p>
+ *
+ * <p>
+ * RDATA fields held as ByteStrings, such as addresses, keys, signatures and text, are
+ * substrings of the message and share its bytes rather than copying them. A message
+ * decoded from a ByteBuffer shares the buffer the same way, so the buffer must not be
+ * modified while the records are in use.
+ * </p>
+ *
+ * <p>
+ * Malformed messages are reported with a {@link ParseException}. Bytes after the last
+ * section are ignored. A decoder has no state and can be shared between threads.
+ * </p>
+ */
+public final class MessageDecoder {
+
+    static final int HEADER_LENGTH = 12;
+    static final int MAX_NAME_LENGTH = 255;
+
+    public MessageDecoder() {
+    }
+
+    /**
+     * Decodes the remaining bytes of buffer. The position of the buffer is not changed.
+     */
+    public Message decode(ByteBuffer buffer) {
+        return decode(ByteString.wrap(buffer));
+    }
+
+    public Message decode(ByteString message) {
+
+        if (message.length() < HEADER_LENGTH)
+            throw new ParseException("Message shorter than header. len=" + message.length());
+
+        ByteStringReader reader = new ByteStringReader(message);
+        try {
+            short id = reader.getShort();
+            short flags = reader.getShort();
+            int questionCount = reader.getUnsignedShort();
+            int answerCount = reader.getUnsignedShort();
+            int authorityCount = reader.getUnsignedShort();
+            int additionalCount = reader.getUnsignedShort();
+
+            List<Question> questions = new ArrayList<Question>(
+                    Math.min(questionCount, reader.remaining() / 5));
+            for (int i=0; i<questionCount; ++i) {
+                Name qname = readName(reader);
+                RecordType type = RecordType.fromInt(reader.getUnsignedShort());
+                QClass qclass = QClass.fromInt(reader.getUnsignedShort());
+                questions.add(new Question(qname, type, qclass));
+            }
+            List<Record> answers = readSection(reader, answerCount);
+            List<Record> authorities = readSection(reader, authorityCount);
+            List<Record> additionals = readSection(reader, additionalCount);
+            return new Message(id, flags, questions, answers, authorities, additionals);
+        } catch (BufferUnderflowException e) {
+            throw new ParseException("Message truncated at " + reader.position(), e);
+        }
+
+    }
+
+    private static List<Record> readSection(ByteStringReader reader, int count) {
+        if (count == 0)
+            return Collections.emptyList();
+        List<Record> records = new ArrayList<Record>(Math.min(count, reader.remaining() / 11));
+        for (int i=0; i<count; ++i) {
+            records.add(readRecord(reader));
+        }
+        return records;
+    }
+
+    /**
+     * Reads the name at the position of reader, following compression pointers, and
+     * advances the position past the name as it appears at that position.
+     */
+    static Name readName(ByteStringReader reader) {
+        return Name.fromWire(readNameWire(reader));
+    }
+
+    /**
+     * Returns the uncompressed wire form of the name at the position of reader and advances
+     * the position past it. If the name contains no pointers the result is a substring of
+     * the message.
+     */
+    static ByteString readNameWire(ByteStringReader reader) {
+
+        ByteString message = reader.string();
+        int length = message.length();
+        int start = reader.position();
+        int pos = start;
+        int next = -1;
+        int limit = start;
+        byte[] copy = null;
+        int copyLength = 0;
+        int nameLength = 0;
+
+        while (true) {
+            if (pos >= length)
+                throw new ParseException("Name extends past end of message at " + pos);
+            int labelLength = message.byteAt(pos) & 0xFF;
+            if ((labelLength & 0xC0) == 0xC0) {
+                if (pos + 1 >= length)
+                    throw new ParseException("Compression pointer truncated at " + pos);
+                int target = (labelLength & 0x3F) << 8 | (message.byteAt(pos + 1) & 0xFF);
+                if (target >= limit)
+                    throw new ParseException("Compression pointer must point backward. pos="
+                            + pos + ", target=" + target);
+                if (next < 0)
+                    next = pos + 2;
+                if (copy == null) {
+                    copy = new byte[MAX_NAME_LENGTH];
+                    copyLength = pos - start;
+                    message.substring(start, pos).copyTo(copy, 0);
+                }
+                limit = target;
+                pos = target;
+                continue;
+            }
+            if ((labelLength & 0xC0) != 0)
+                throw new ParseException("Unsupported label type at " + pos);
+            nameLength += labelLength + 1;
+            if (nameLength > MAX_NAME_LENGTH)
+                throw new ParseException("Name too long at " + start);
+            if (pos + 1 + labelLength > length)
+                throw new ParseException("Label extends past end of message at " + pos);
+            if (copy != null) {
+                message.substring(pos, pos + labelLength + 1).copyTo(copy, copyLength);
+                copyLength += labelLength + 1;
+            }
+            pos += labelLength + 1;
+            if (labelLength == 0)
+                break;
+        }
+
+        reader.position(next < 0 ? pos : next);
+        if (copy == null)
+            return message.substring(start, pos);
+        return ByteString.from(copy, 0, copyLength);
+
+    }
+
+    /**
+     * Reads the record at the position of reader and advances the position past it.
+     */
+    static Record readRecord(ByteStringReader reader) {
+
+        Name name = readName(reader);
+        int type = reader.getUnsignedShort();
+        short recordClass = reader.getShort();
+        int timeToLive = reader.getInt();
+        int dataLength = reader.getUnsignedShort();
+        if (dataLength > reader.remaining())
+            throw new ParseException("RDATA extends past end of message. rdlength=" + dataLength);
+        int end = reader.position() + dataLength;
+
+        Record record;
+        try {
+            record = readData(reader, name, type, recordClass, timeToLive, end);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new ParseException("Malformed " + RecordType.fromInt(type) + " record of "
+                    + name, e);
+        }
+        if (reader.position() != end)
+            throw new ParseException("RDATA length mismatch in " + RecordType.fromInt(type)
+                    + " record of " + name + ". rdlength=" + dataLength);
+        return record;
+
+    }
+
+    /**
+     * Reads the RDATA ending at end into a record of the given type.
+     */
+    private static Record readData(ByteStringReader r, Name name, int type, short rclass,
+            int ttl, int end) {
+
+        switch (type) {
+            case 1: // A
+                return new ARecord(name, rclass, ttl, r.readSlice(4));
+            case 2: // NS
+                return new NSRecord(name, rclass, ttl, readName(r));
+            case 3: // MD
+                return new MDRecord(name, rclass, ttl, readName(r));
+            case 4: // MF
+                return new MFRecord(name, rclass, ttl, readName(r));
+            case 5: // CNAME
+                return new CNAMERecord(name, rclass, ttl, readName(r));
+            case 6: // SOA
+                return new SOARecord(name, rclass, ttl, readName(r), readName(r), r.getInt(),
+                        r.getInt(), r.getInt(), r.getInt(), r.getInt());
+            case 7: // MB
+                return new MBRecord(name, rclass, ttl, readName(r));
+            case 8: // MG
+                return new MGRecord(name, rclass, ttl, readName(r));
+            case 9: // MR
+                return new MRRecord(name, rclass, ttl, readName(r));
+            case 10: // NULL
+                return new NULLRecord(name, rclass, ttl, rest(r, end));
+            case 11: // WKS
+                return new WKSRecord(name, rclass, ttl, r.readSlice(4), r.getByte(), rest(r, end));
+            case 12: // PTR
+                return new PTRRecord(name, rclass, ttl, readName(r));
+            case 13: // HINFO
+                return new HINFORecord(name, rclass, ttl, characterString(r), characterString(r));
+            case 14: // MINFO
+                return new MINFORecord(name, rclass, ttl, readName(r), readName(r));
+            case 15: // MX
+                return new MXRecord(name, rclass, ttl, r.getShort(), readName(r));
+            case 16: // TXT
+                return new TXTRecord(name, rclass, ttl, characterStrings(r, end));
+            case 17: // RP
+                return new RPRecord(name, rclass, ttl, readName(r), readName(r));
+            case 18: // AFSDB
+                return new AFSDBRecord(name, rclass, ttl, r.getShort(), readName(r));
+            case 19: // X25
+                return new X25Record(name, rclass, ttl, characterString(r));
+            case 20: // ISDN
+                return new ISDNRecord(name, rclass, ttl, characterString(r),
+                        r.position() < end ? characterString(r) : null);
+            case 21: // RT
+                return new RTRecord(name, rclass, ttl, r.getShort(), readName(r));
+            case 24: // SIG
+                return new SIGRecord(name, rclass, ttl, RecordType.fromInt(r.getUnsignedShort()),
+                        Algorithm.fromByte(r.getByte()), r.getByte(), r.getInt(), r.getInt(),
+                        r.getInt(), r.getShort(), readName(r), rest(r, end));
+            case 25: // KEY
+                return new KEYRecord(name, rclass, ttl, r.getShort(),
+                        Protocol.fromByte(r.getByte()), Algorithm.fromByte(r.getByte()),
+                        rest(r, end));
+            case 28: // AAAA
+                return new AAAARecord(name, rclass, ttl, r.readSlice(16));
+            case 29: // LOC
+                return new LOCRecord(name, rclass, ttl, r.getByte(), r.getByte(), r.getByte(),
+                        r.getByte(), r.getInt(), r.getInt(), r.getInt());
+            case 30: // NXT
+                return new NXTRecord(name, rclass, ttl, readName(r), rest(r, end));
+            case 33: // SRV
+                return new SRVRecord(name, rclass, ttl, r.getShort(), r.getShort(), r.getShort(),
+                        readName(r));
+            case 35: // NAPTR
+                return new NAPTRRecord(name, rclass, ttl, r.getShort(), r.getShort(),
+                        characterString(r), characterString(r), characterString(r), readName(r));
+            case 36: // KX
+                return new KXRecord(name, rclass, ttl, r.getShort(), readName(r));
+            case 37: // CERT
+                return new CERTRecord(name, rclass, ttl,
+                        CertificateType.fromInt(r.getUnsignedShort()), r.getShort(),
+                        Algorithm.fromByte(r.getByte()), rest(r, end));
+            case 38: // A6
+                return readA6(r, name, rclass, ttl);
+            case 39: // DNAME
+                return new DNAMERecord(name, rclass, ttl, readName(r));
+            case 41: // OPT
+                return readOPT(r, name, rclass, ttl, end);
+            case 42: // APL
+                return readAPL(r, name, rclass, ttl, end);
+            case 43: // DS
+                return new DSRecord(name, rclass, ttl, r.getShort(), Algorithm.fromByte(r.getByte()),
+                        DigestType.fromByte(r.getByte()), rest(r, end));
+            case 44: // SSHFP
+                return new SSHFPRecord(name, rclass, ttl, r.getByte(), r.getByte(), rest(r, end));
+            case 45: // IPSECKEY
+                return readIPSECKEY(r, name, rclass, ttl, end);
+            case 46: // RRSIG
+                return new RRSIGRecord(name, rclass, ttl, RecordType.fromInt(r.getUnsignedShort()),
+                        Algorithm.fromByte(r.getByte()), r.getByte(), r.getInt(), r.getInt(),
+                        r.getInt(), r.getShort(), readName(r), rest(r, end));
+            case 47: // NSEC
+                return new NSECRecord(name, rclass, ttl, readName(r), rest(r, end));
+            case 48: // DNSKEY
+                return new DNSKEYRecord(name, rclass, ttl, r.getShort(),
+                        Protocol.fromByte(r.getByte()), Algorithm.fromByte(r.getByte()),
+                        rest(r, end));
+            case 49: // DHCID
+                return new DHCIDRecord(name, rclass, ttl, rest(r, end));
+            case 50: // NSEC3
+                return new NSEC3Record(name, rclass, ttl, Algorithm.fromByte(r.getByte()),
+                        r.getByte(), r.getShort(), characterString(r), characterString(r),
+                        rest(r, end));
+            case 51: // NSEC3PARAM
+                return new NSEC3PARAMRecord(name, rclass, ttl, Algorithm.fromByte(r.getByte()),
+                        r.getByte(), r.getShort(), characterString(r));
+            case 52: // TLSA
+                return new TLSARecord(name, rclass, ttl, r.getByte(), r.getByte(), r.getByte(),
+                        rest(r, end));
+            case 55: // HIP
+                return readHIP(r, name, rclass, ttl, end);
+            case 59: // CDS
+                return new CDSRecord(name, rclass, ttl, r.getShort(), Algorithm.fromByte(r.getByte()),
+                        DigestType.fromByte(r.getByte()), rest(r, end));
+            case 60: // CDNSKEY
+                return new CDNSKEYRecord(name, rclass, ttl, r.getShort(),
+                        Protocol.fromByte(r.getByte()), Algorithm.fromByte(r.getByte()),
+                        rest(r, end));
+            case 249: // TKEY
+                return readTKEY(r, name, rclass, ttl);
+            case 250: // TSIG
+                return readTSIG(r, name, rclass, ttl);
+            case 257: // CAA
+                return new CAARecord(name, rclass, ttl, r.getByte(), characterString(r),
+                        rest(r, end));
+            case 32769: // DLV
+                return new DLVRecord(name, rclass, ttl, r.getShort(), Algorithm.fromByte(r.getByte()),
+                        DigestType.fromByte(r.getByte()), rest(r, end));
+            default:
+                return new RawRecord(name, RecordType.fromInt(type), rclass, ttl, rest(r, end));
+        }
+
+    }
+
+    /**
+     * Reads a length prefixed character string, RFC 1035 section 3.3.
+     */
+    private static ByteString characterString(ByteStringReader r) {
+        return r.readSlice(r.getUnsignedByte());
+    }
+
+    private static List<ByteString> characterStrings(ByteStringReader r, int end) {
+        List<ByteString> strings = new ArrayList<ByteString>();
+        while (r.position() < end) {
+            strings.add(characterString(r));
+        }
+        return strings;
+    }
+
+    /**
+     * Reads the rest of the RDATA.
+     */
+    private static ByteString rest(ByteStringReader r, int end) {
+        int count = end - r.position();
+        if (count < 0)
+            throw new ParseException("Field extends past end of RDATA at " + r.position());
+        return r.readSlice(count);
+    }
+
+    private static Record readA6(ByteStringReader r, Name name, short rclass, int ttl) {
+        int prefixLength = r.getUnsignedByte();
+        if (prefixLength > 128)
+            throw new ParseException("A6 prefix length out of range. prefix=" + prefixLength);
+        ByteString suffix = r.readSlice((128 - prefixLength + 7) / 8);
+        Name prefixName = prefixLength > 0 ? readName(r) : Name.ROOT;
+        return new A6Record(name, rclass, ttl, (byte) prefixLength, suffix, prefixName);
+    }
+
+    private static Record readOPT(ByteStringReader r, Name name, short rclass, int ttl, int end) {
+        List<OPTRecord.Option> options = new ArrayList<OPTRecord.Option>();
+        while (r.position() < end) {
+            short code = r.getShort();
+            options.add(new OPTRecord.Option(code, r.readSlice(r.getUnsignedShort())));
+        }
+        return new OPTRecord(name, rclass, ttl, options);
+    }
+
+    private static Record readAPL(ByteStringReader r, Name name, short rclass, int ttl, int end) {
+        List<APLRecord.APItem> items = new ArrayList<APLRecord.APItem>();
+        while (r.position() < end) {
+            short family = r.getShort();
+            byte prefix = r.getByte();
+            int afdLength = r.getUnsignedByte();
+            items.add(new APLRecord.APItem(family, prefix, (afdLength & 0x80) != 0,
+                    r.readSlice(afdLength & 0x7F)));
+        }
+        return new APLRecord(name, rclass, ttl, items);
+    }
+
+    private static Record readIPSECKEY(ByteStringReader r, Name name, short rclass, int ttl,
+            int end) {
+        byte precedence = r.getByte();
+        int gatewayType = r.getUnsignedByte();
+        PublicKeyAlgorithm algorithm = PublicKeyAlgorithm.fromByte(r.getByte());
+        switch (gatewayType) {
+            case 0:
+                return new IPSECKEYRecord(name, rclass, ttl, precedence, algorithm, rest(r, end));
+            case 1:
+                InetAddress ip4 = address(r.readSlice(4));
+                return new IPSECKEYRecord(name, rclass, ttl, precedence, algorithm, ip4,
+                        rest(r, end));
+            case 2:
+                InetAddress ip6 = address(r.readSlice(16));
+                return new IPSECKEYRecord(name, rclass, ttl, precedence, algorithm, ip6,
+                        rest(r, end));
+            case 3:
+                Name gateway = readName(r);
+                return new IPSECKEYRecord(name, rclass, ttl, precedence, algorithm, gateway,
+                        rest(r, end));
+            default:
+                throw new ParseException("Unknown IPSECKEY gateway type " + gatewayType);
+        }
+    }
+
+    private static InetAddress address(ByteString bytes) {
+        try {
+            return InetAddress.getByAddress(bytes.toByteArray());
+        } catch (UnknownHostException e) {
+            throw new ParseException(e);
+        }
+    }
+
+    private static Record readHIP(ByteStringReader r, Name name, short rclass, int ttl, int end) {
+        int hitLength = r.getUnsignedByte();
+        PublicKeyAlgorithm algorithm = PublicKeyAlgorithm.fromByte(r.getByte());
+        int publicKeyLength = r.getUnsignedShort();
+        ByteString hit = r.readSlice(hitLength);
+        ByteString publicKey = r.readSlice(publicKeyLength);
+        List<Name> servers = new ArrayList<Name>();
+        while (r.position() < end) {
+            servers.add(readName(r));
+        }
+        return new HIPRecord(name, rclass, ttl, algorithm, hit, publicKey, servers);
+    }
+
+    private static Record readTKEY(ByteStringReader r, Name name, short rclass, int ttl) {
+        Name algorithm = readName(r);
+        int inception = r.getInt();
+        int expiration = r.getInt();
+        short mode = r.getShort();
+        short error = r.getShort();
+        int keySize = r.getUnsignedShort();
+        ByteString keyData = r.readSlice(keySize);
+        ByteString otherData = r.readSlice(r.getUnsignedShort());
+        return new TKEYRecord(name, rclass, ttl, algorithm, inception, expiration, mode, error,
+                (short) keySize, keyData, otherData);
+    }
+
+    private static Record readTSIG(ByteStringReader r, Name name, short rclass, int ttl) {
+        Name algorithm = readName(r);
+        long timeSigned = (long) r.getUnsignedShort() << 32 | r.getUnsignedInt();
+        short fudge = r.getShort();
+        ByteString mac = r.readSlice(r.getUnsignedShort());
+        short originalId = r.getShort();
+        short error = r.getShort();
+        ByteString otherData = r.readSlice(r.getUnsignedShort());
+        return new TSIGRecord(name, rclass, ttl, algorithm, timeSigned, fudge, mac, originalId,
+                error, otherData);
+    }
+
+}
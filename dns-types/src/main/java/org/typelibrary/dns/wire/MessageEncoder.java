@@ -0,0 +1,827 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.dns.wire;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.typelibrary.binarystrings.ByteString;
+import org.typelibrary.binarystrings.ByteStringOutputStream;
+import org.typelibrary.dns.Message;
+import org.typelibrary.dns.Name;
+import org.typelibrary.dns.Question;
+import org.typelibrary.dns.RawRecord;
+import org.typelibrary.dns.Record;
+import org.typelibrary.dns.records.A6Record;
+import org.typelibrary.dns.records.AAAARecord;
+import org.typelibrary.dns.records.AFSDBRecord;
+import org.typelibrary.dns.records.APLRecord;
+import org.typelibrary.dns.records.ARecord;
+import org.typelibrary.dns.records.CAARecord;
+import org.typelibrary.dns.records.CDNSKEYRecord;
+import org.typelibrary.dns.records.CDSRecord;
+import org.typelibrary.dns.records.CERTRecord;
+import org.typelibrary.dns.records.CNAMERecord;
+import org.typelibrary.dns.records.DHCIDRecord;
+import org.typelibrary.dns.records.DLVRecord;
+import org.typelibrary.dns.records.DNAMERecord;
+import org.typelibrary.dns.records.DNSKEYRecord;
+import org.typelibrary.dns.records.DSRecord;
+import org.typelibrary.dns.records.HINFORecord;
+import org.typelibrary.dns.records.HIPRecord;
+import org.typelibrary.dns.records.IPSECKEYRecord;
+import org.typelibrary.dns.records.ISDNRecord;
+import org.typelibrary.dns.records.KEYRecord;
+import org.typelibrary.dns.records.KXRecord;
+import org.typelibrary.dns.records.LOCRecord;
+import org.typelibrary.dns.records.MBRecord;
+import org.typelibrary.dns.records.MDRecord;
+import org.typelibrary.dns.records.MFRecord;
+import org.typelibrary.dns.records.MGRecord;
+import org.typelibrary.dns.records.MINFORecord;
+import org.typelibrary.dns.records.MRRecord;
+import org.typelibrary.dns.records.MXRecord;
+import org.typelibrary.dns.records.NAPTRRecord;
+import org.typelibrary.dns.records.NSEC3PARAMRecord;
+import org.typelibrary.dns.records.NSEC3Record;
+import org.typelibrary.dns.records.NSECRecord;
+import org.typelibrary.dns.records.NSRecord;
+import org.typelibrary.dns.records.NULLRecord;
+import org.typelibrary.dns.records.NXTRecord;
+import org.typelibrary.dns.records.OPTRecord;
+import org.typelibrary.dns.records.PTRRecord;
+import org.typelibrary.dns.records.RPRecord;
+import org.typelibrary.dns.records.RRSIGRecord;
+import org.typelibrary.dns.records.RTRecord;
+import org.typelibrary.dns.records.SIGRecord;
+import org.typelibrary.dns.records.SOARecord;
+import org.typelibrary.dns.records.SRVRecord;
+import org.typelibrary.dns.records.SSHFPRecord;
+import org.typelibrary.dns.records.TKEYRecord;
+import org.typelibrary.dns.records.TLSARecord;
+import org.typelibrary.dns.records.TSIGRecord;
+import org.typelibrary.dns.records.TXTRecord;
+import org.typelibrary.dns.records.WKSRecord;
+import org.typelibrary.dns.records.X25Record;
+
+/**
+ * Encodes {@link Message}s in the wire format of RFC 1035, compressing names.
+ *
+ * <p>
+ * A message is assembled in a buffer owned by the encoder and then copied to the
+ * destination in one call. For compression the encoder keeps a table of the offsets of the
+ * name suffixes written so far, keyed by a hash of the suffix; a hit is confirmed by
+ * comparing the suffix with the bytes already in the message. Names are written from
+ * {@link Name#toWire()} and are never formatted as text. The buffer and the table are
+ * cleared but kept between messages and only grow, so once an encoder has seen a message
+ * of the usual size, encoding does not allocate.
+ * </p>
+ *
+ * <p>
+ * Owner names and question names are always compressed. Names in RDATA are compressed only
+ * for the RFC 1035 types that RFC 3597 section 4 allows; other names are written in full,
+ * although later names may point into them. Suffixes are matched ignoring ASCII case, so a
+ * compressed name takes the case of the earlier occurrence.
+ * </p>
+ *
+ * <p>
+ * Records whose fields cannot be represented, such as a name or character string over 255
+ * bytes, and messages over 65535 bytes are rejected with an IllegalArgumentException. Not thread
+ * safe; use one encoder per thread.
+ * </p>
+ */
+public final class MessageEncoder {
+
+    static final int MAX_MESSAGE_LENGTH = 65535;
+
+    /**
+     * The largest offset a compression pointer can hold.
+     */
+    private static final int MAX_POINTER_OFFSET = 0x3FFF;
+
+    private static final int MAX_LABELS = 128;
+
+    private byte[] buffer = new byte[512];
+    private int pos;
+
+    private final int[] labelStarts = new int[MAX_LABELS];
+    private final int[] suffixHashes = new int[MAX_LABELS];
+
+    private int[] tableHashes = new int[64];
+    private int[] tableOffsets = new int[64];
+    private int[] tableStamps = new int[64];
+    private int tableSize;
+
+    /**
+     * Marks the live entries of the table; incremented to clear it.
+     */
+    private int stamp;
+
+    public MessageEncoder() {
+    }
+
+    /**
+     * Encodes message at the position of buffer and advances the position past it.
+     *
+     * @return the length of the encoded message
+     * @throws BufferOverflowException if the message does not fit in the remaining bytes of
+     *             buffer, in which case buffer is not modified
+     */
+    public int encode(Message message, ByteBuffer buffer) {
+        int length = assemble(message);
+        buffer.put(this.buffer, 0, length);
+        return length;
+    }
+
+    /**
+     * Encodes message and writes it to out.
+     *
+     * @return the length of the encoded message
+     */
+    public int encode(Message message, ByteStringOutputStream out) throws IOException {
+        int length = assemble(message);
+        out.write(buffer, 0, length);
+        return length;
+    }
+
+    /**
+     * Returns the encoded message as a new ByteString.
+     */
+    public ByteString encode(Message message) {
+        int length = assemble(message);
+        return ByteString.from(buffer, 0, length);
+    }
+
+    /**
+     * Encodes message into the buffer of the encoder and returns its length.
+     */
+    private int assemble(Message message) {
+
+        List<Question> questions = message.getQuestions();
+        List<Record> answers = message.getAnswers();
+        List<Record> authorities = message.getAuthorities();
+        List<Record> additionals = message.getAdditionals();
+
+        reset();
+        putShort(message.getId());
+        putShort(message.getFlags());
+        putShort(count(questions.size()));
+        putShort(count(answers.size()));
+        putShort(count(authorities.size()));
+        putShort(count(additionals.size()));
+
+        for (int i=0, n=questions.size(); i<n; ++i) {
+            Question question = questions.get(i);
+            writeName(question.getQname(), true);
+            putShort(question.getQuestionType().toInt());
+            putShort(question.getQuestionClass().toInt());
+        }
+        writeSection(answers);
+        writeSection(authorities);
+        writeSection(additionals);
+        return pos;
+
+    }
+
+    private void reset() {
+        pos = 0;
+        tableSize = 0;
+        if (++stamp == 0) {
+            Arrays.fill(tableStamps, 0);
+            stamp = 1;
+        }
+    }
+
+    private static int count(int size) {
+        if (size > 0xFFFF)
+            throw new IllegalArgumentException("Too many entries in section. count=" + size);
+        return size;
+    }
+
+    private void writeSection(List<Record> records) {
+        for (int i=0, n=records.size(); i<n; ++i) {
+            writeRecord(records.get(i));
+        }
+    }
+
+    private void writeRecord(Record record) {
+
+        writeName(record.getName(), true);
+        putShort(record.getRecordType().toInt());
+        putShort(record.getRecordClass());
+        putInt(record.getTimeToLive());
+        ensure(2);
+        int lengthPos = pos;
+        pos += 2;
+        writeData(record);
+        int dataLength = pos - lengthPos - 2;
+        buffer[lengthPos] = (byte) (dataLength >> 8);
+        buffer[lengthPos + 1] = (byte) dataLength;
+
+    }
+
+    /**
+     * Writes the RDATA of record, the inverse of {@link MessageDecoder}.
+     */
+    private void writeData(Record record) {
+
+        if (record instanceof RawRecord) {
+            put(((RawRecord) record).getData());
+            return;
+        }
+
+        switch (record.getRecordType().toInt()) {
+            case 1: // A
+                put(((ARecord) record).getAddress());
+                break;
+            case 2: // NS
+                writeName(((NSRecord) record).getNameServer(), true);
+                break;
+            case 3: // MD
+                writeName(((MDRecord) record).getMailDestination(), true);
+                break;
+            case 4: // MF
+                writeName(((MFRecord) record).getMailForwarder(), true);
+                break;
+            case 5: // CNAME
+                writeName(((CNAMERecord) record).getCName(), true);
+                break;
+            case 6: { // SOA
+                SOARecord r = (SOARecord) record;
+                writeName(r.getMasterName(), true);
+                writeName(r.getResponsibleName(), true);
+                putInt(r.getSerialNumber());
+                putInt(r.getRefreshInterval());
+                putInt(r.getRetryInterval());
+                putInt(r.getExpireInterval());
+                putInt(r.getMinimum());
+                break;
+            }
+            case 7: // MB
+                writeName(((MBRecord) record).getMADName(), true);
+                break;
+            case 8: // MG
+                writeName(((MGRecord) record).getMGMName(), true);
+                break;
+            case 9: // MR
+                writeName(((MRRecord) record).getNewName(), true);
+                break;
+            case 10: // NULL
+                put(((NULLRecord) record).getData());
+                break;
+            case 11: { // WKS
+                WKSRecord r = (WKSRecord) record;
+                put(r.getAddress());
+                putByte(r.getProtocol());
+                put(r.getBitmap());
+                break;
+            }
+            case 12: // PTR
+                writeName(((PTRRecord) record).getDomainName(), true);
+                break;
+            case 13: { // HINFO
+                HINFORecord r = (HINFORecord) record;
+                putCharacterString(r.getCpu());
+                putCharacterString(r.getOs());
+                break;
+            }
+            case 14: { // MINFO
+                MINFORecord r = (MINFORecord) record;
+                writeName(r.getRMailbox(), true);
+                writeName(r.getEMailbox(), true);
+                break;
+            }
+            case 15: { // MX
+                MXRecord r = (MXRecord) record;
+                putShort(r.getPreference());
+                writeName(r.getExchange(), true);
+                break;
+            }
+            case 16: { // TXT
+                List<ByteString> text = ((TXTRecord) record).getText();
+                for (int i=0, n=text.size(); i<n; ++i) {
+                    putCharacterString(text.get(i));
+                }
+                break;
+            }
+            case 17: { // RP
+                RPRecord r = (RPRecord) record;
+                writeName(r.getMailbox(), false);
+                writeName(r.getDomain(), false);
+                break;
+            }
+            case 18: { // AFSDB
+                AFSDBRecord r = (AFSDBRecord) record;
+                putShort(r.getSubtype());
+                writeName(r.getHostname(), false);
+                break;
+            }
+            case 19: // X25
+                putCharacterString(((X25Record) record).getAddress());
+                break;
+            case 20: { // ISDN
+                ISDNRecord r = (ISDNRecord) record;
+                putCharacterString(r.getAddress());
+                if (r.getSa() != null)
+                    putCharacterString(r.getSa());
+                break;
+            }
+            case 21: { // RT
+                RTRecord r = (RTRecord) record;
+                putShort(r.getPreference());
+                writeName(r.getIntermediateHost(), false);
+                break;
+            }
+            case 24: { // SIG
+                SIGRecord r = (SIGRecord) record;
+                putShort(r.getTypeCovered().toInt());
+                putByte(r.getAlgorithm().toInt());
+                putByte(r.getLabels());
+                putInt(r.getOriginalTtl());
+                putInt(r.getSignatureExpiration());
+                putInt(r.getSignatureInception());
+                putShort(r.getKeyTag());
+                writeName(r.getSigner(), false);
+                put(r.getSignature());
+                break;
+            }
+            case 25: { // KEY
+                KEYRecord r = (KEYRecord) record;
+                putShort(r.getFlags());
+                putByte(r.getProtocol().toInt());
+                putByte(r.getAlgorithm().toInt());
+                put(r.getPublicKey());
+                break;
+            }
+            case 28: // AAAA
+                put(((AAAARecord) record).getAddress());
+                break;
+            case 29: { // LOC
+                LOCRecord r = (LOCRecord) record;
+                putByte(r.getVersion());
+                putByte(r.getSize());
+                putByte(r.getHorizontalPrecision());
+                putByte(r.getVerticalPrecision());
+                putInt(r.getLatitude());
+                putInt(r.getLongitude());
+                putInt(r.getAltitude());
+                break;
+            }
+            case 30: { // NXT
+                NXTRecord r = (NXTRecord) record;
+                writeName(r.getNextDomainName(), false);
+                put(r.getTypeBitmap());
+                break;
+            }
+            case 33: { // SRV
+                SRVRecord r = (SRVRecord) record;
+                putShort(r.getPriority());
+                putShort(r.getWeight());
+                putShort(r.getPort());
+                writeName(r.getTarget(), false);
+                break;
+            }
+            case 35: { // NAPTR
+                NAPTRRecord r = (NAPTRRecord) record;
+                putShort(r.getOrder());
+                putShort(r.getPreference());
+                putCharacterString(r.getFlags());
+                putCharacterString(r.getServices());
+                putCharacterString(r.getRegexp());
+                writeName(r.getReplacement(), false);
+                break;
+            }
+            case 36: { // KX
+                KXRecord r = (KXRecord) record;
+                putShort(r.getPreference());
+                writeName(r.getExchange(), false);
+                break;
+            }
+            case 37: { // CERT
+                CERTRecord r = (CERTRecord) record;
+                putShort(r.getType().toInt());
+                putShort(r.getKeyTag());
+                putByte(r.getAlgorithm().toInt());
+                put(r.getCertificate());
+                break;
+            }
+            case 38: { // A6
+                A6Record r = (A6Record) record;
+                putByte(r.getPrefixLength());
+                put(r.getAddressSuffix());
+                if (r.getPrefixLength() != 0)
+                    writeName(r.getPrefixName(), false);
+                break;
+            }
+            case 39: // DNAME
+                writeName(((DNAMERecord) record).getTarget(), false);
+                break;
+            case 41: { // OPT
+                List<OPTRecord.Option> options = ((OPTRecord) record).getOptions();
+                for (int i=0, n=options.size(); i<n; ++i) {
+                    OPTRecord.Option option = options.get(i);
+                    putShort(option.getCode());
+                    putShort(checkLength(option.getData(), 0xFFFF, "Option data"));
+                    put(option.getData());
+                }
+                break;
+            }
+            case 42: { // APL
+                List<APLRecord.APItem> items = ((APLRecord) record).getItems();
+                for (int i=0, n=items.size(); i<n; ++i) {
+                    APLRecord.APItem item = items.get(i);
+                    putShort(item.getAddressFamily());
+                    putByte(item.getPrefix());
+                    int afdLength = checkLength(item.getAfdPart(), 0x7F, "AFD part");
+                    putByte(item.isNegate() ? afdLength | 0x80 : afdLength);
+                    put(item.getAfdPart());
+                }
+                break;
+            }
+            case 43: { // DS
+                DSRecord r = (DSRecord) record;
+                putShort(r.getKeyTag());
+                putByte(r.getAlgorithm().toInt());
+                putByte(r.getDigestType().toInt());
+                put(r.getDigest());
+                break;
+            }
+            case 44: { // SSHFP
+                SSHFPRecord r = (SSHFPRecord) record;
+                putByte(r.getAlgorithm());
+                putByte(r.getFpType());
+                put(r.getFingerprint());
+                break;
+            }
+            case 45: // IPSECKEY
+                writeIPSECKEY((IPSECKEYRecord) record);
+                break;
+            case 46: { // RRSIG
+                RRSIGRecord r = (RRSIGRecord) record;
+                putShort(r.getTypeCovered().toInt());
+                putByte(r.getAlgorithm().toInt());
+                putByte(r.getLabels());
+                putInt(r.getOriginalTtl());
+                putInt(r.getSignatureExpiration());
+                putInt(r.getSignatureInception());
+                putShort(r.getKeyTag());
+                writeName(r.getSigner(), false);
+                put(r.getSignature());
+                break;
+            }
+            case 47: { // NSEC
+                NSECRecord r = (NSECRecord) record;
+                writeName(r.getNextDomainName(), false);
+                put(r.getTypeBitmap());
+                break;
+            }
+            case 48: { // DNSKEY
+                DNSKEYRecord r = (DNSKEYRecord) record;
+                putShort(r.getFlags());
+                putByte(r.getProtocol().toInt());
+                putByte(r.getAlgorithm().toInt());
+                put(r.getPublicKey());
+                break;
+            }
+            case 49: // DHCID
+                put(((DHCIDRecord) record).getData());
+                break;
+            case 50: { // NSEC3
+                NSEC3Record r = (NSEC3Record) record;
+                putByte(r.getAlgorithm().toInt());
+                putByte(r.getFlags());
+                putShort(r.getIterations());
+                putCharacterString(r.getSalt());
+                putCharacterString(r.getNextHashedOwnerName());
+                put(r.getTypeBitmaps());
+                break;
+            }
+            case 51: { // NSEC3PARAM
+                NSEC3PARAMRecord r = (NSEC3PARAMRecord) record;
+                putByte(r.getAlgorithm().toInt());
+                putByte(r.getFlags());
+                putShort(r.getIterations());
+                putCharacterString(r.getSalt());
+                break;
+            }
+            case 52: { // TLSA
+                TLSARecord r = (TLSARecord) record;
+                putByte(r.getCertUsage());
+                putByte(r.getSelector());
+                putByte(r.getMatchingType());
+                put(r.getData());
+                break;
+            }
+            case 55: // HIP
+                writeHIP((HIPRecord) record);
+                break;
+            case 59: { // CDS
+                CDSRecord r = (CDSRecord) record;
+                putShort(r.getKeyTag());
+                putByte(r.getAlgorithm().toInt());
+                putByte(r.getDigestType().toInt());
+                put(r.getDigest());
+                break;
+            }
+            case 60: { // CDNSKEY
+                CDNSKEYRecord r = (CDNSKEYRecord) record;
+                putShort(r.getFlags());
+                putByte(r.getProtocol().toInt());
+                putByte(r.getAlgorithm().toInt());
+                put(r.getPublicKey());
+                break;
+            }
+            case 249: // TKEY
+                writeTKEY((TKEYRecord) record);
+                break;
+            case 250: // TSIG
+                writeTSIG((TSIGRecord) record);
+                break;
+            case 257: { // CAA
+                CAARecord r = (CAARecord) record;
+                putByte(r.getFlags());
+                putCharacterString(r.getTag());
+                put(r.getValue());
+                break;
+            }
+            case 32769: { // DLV
+                DLVRecord r = (DLVRecord) record;
+                putShort(r.getKeyTag());
+                putByte(r.getAlgorithm().toInt());
+                putByte(r.getDigestType().toInt());
+                put(r.getDigest());
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("No wire format for " + record.getRecordType()
+                        + " record " + record.getClass().getName());
+        }
+
+    }
+
+    private void writeIPSECKEY(IPSECKEYRecord r) {
+        putByte(r.getPrecedence());
+        putByte(r.getGatewayType().toInt());
+        putByte(r.getAlgorithm().toInt());
+        Object gateway = r.getGateway();
+        if (gateway instanceof InetAddress) {
+            byte[] address = ((InetAddress) gateway).getAddress();
+            ensure(address.length);
+            System.arraycopy(address, 0, buffer, pos, address.length);
+            pos += address.length;
+        } else if (gateway instanceof Name) {
+            writeName((Name) gateway, false);
+        }
+        put(r.getPublicKey());
+    }
+
+    private void writeHIP(HIPRecord r) {
+        putByte(checkLength(r.getHit(), 0xFF, "HIT"));
+        putByte(r.getAlgorithm().toInt());
+        putShort(checkLength(r.getPublicKey(), 0xFFFF, "Public key"));
+        put(r.getHit());
+        put(r.getPublicKey());
+        List<Name> servers = r.getRendezvousServers();
+        for (int i=0, n=servers.size(); i<n; ++i) {
+            writeName(servers.get(i), false);
+        }
+    }
+
+    private void writeTKEY(TKEYRecord r) {
+        writeName(r.getAlgorithm(), false);
+        putInt(r.getInception());
+        putInt(r.getExpiration());
+        putShort(r.getMode());
+        putShort(r.getError());
+        putShort(checkLength(r.getKeyData(), 0xFFFF, "Key data"));
+        put(r.getKeyData());
+        putShort(checkLength(r.getOtherData(), 0xFFFF, "Other data"));
+        put(r.getOtherData());
+    }
+
+    private void writeTSIG(TSIGRecord r) {
+        writeName(r.getAlgorithm(), false);
+        long timeSigned = r.getTimeSigned();
+        putShort((int) (timeSigned >>> 32));
+        putInt((int) timeSigned);
+        putShort(r.getFudge());
+        putShort(checkLength(r.getMac(), 0xFFFF, "MAC"));
+        put(r.getMac());
+        putShort(r.getOriginalId());
+        putShort(r.getError());
+        putShort(checkLength(r.getOtherData(), 0xFFFF, "Other data"));
+        put(r.getOtherData());
+    }
+
+    /**
+     * Writes name at the current position. If compress is true and a suffix of the name is
+     * already in the message, the suffix is replaced by a pointer to it. Either way the
+     * suffixes written out in full are added to the table.
+     */
+    private void writeName(Name name, boolean compress) {
+
+        ByteString wire = name.toWire();
+        int length = checkLength(wire, MessageDecoder.MAX_NAME_LENGTH, "Name");
+        ensure(length);
+        int start = pos;
+        wire.copyTo(buffer, start);
+
+        byte[] b = buffer;
+        int[] starts = labelStarts;
+        int[] hashes = suffixHashes;
+        int labels = 0;
+        for (int p=start; b[p] != 0; p += (b[p] & 0xFF) + 1) {
+            starts[labels++] = p;
+        }
+
+        // Hash each suffix from the hash of the suffix after it.
+        int hash = 0;
+        for (int i=labels-1; i>=0; --i) {
+            int p = starts[i];
+            int end = p + (b[p] & 0xFF) + 1;
+            hash = hash * 0x01000193 ^ b[p];
+            for (++p; p<end; ++p) {
+                hash = 31 * hash + toLowerAscii(b[p]);
+            }
+            hashes[i] = hash;
+        }
+
+        int match = -1;
+        int i = 0;
+        for (; i<labels; ++i) {
+            match = lookup(hashes[i], starts[i]);
+            if (match >= 0)
+                break;
+        }
+        for (int j=0; j<i; ++j) {
+            insert(hashes[j], starts[j]);
+        }
+
+        if (compress && match >= 0) {
+            int p = starts[i];
+            b[p] = (byte) (0xC0 | match >> 8);
+            b[p + 1] = (byte) match;
+            pos = p + 2;
+        } else {
+            pos = start + length;
+        }
+
+    }
+
+    /**
+     * Returns the offset of an earlier occurrence of the suffix at the specified offset, or
+     * -1 if there is none.
+     */
+    private int lookup(int hash, int suffix) {
+        int mask = tableStamps.length - 1;
+        for (int slot=mix(hash) & mask; tableStamps[slot] == stamp; slot = (slot + 1) & mask) {
+            if (tableHashes[slot] == hash && suffixEquals(suffix, tableOffsets[slot]))
+                return tableOffsets[slot];
+        }
+        return -1;
+    }
+
+    private void insert(int hash, int offset) {
+        if (offset > MAX_POINTER_OFFSET)
+            return;
+        if (2 * (tableSize + 1) > tableStamps.length)
+            growTable();
+        int mask = tableStamps.length - 1;
+        int slot = mix(hash) & mask;
+        while (tableStamps[slot] == stamp) {
+            slot = (slot + 1) & mask;
+        }
+        tableStamps[slot] = stamp;
+        tableHashes[slot] = hash;
+        tableOffsets[slot] = offset;
+        ++tableSize;
+    }
+
+    private void growTable() {
+        int[] oldHashes = tableHashes;
+        int[] oldOffsets = tableOffsets;
+        int[] oldStamps = tableStamps;
+        int capacity = oldStamps.length * 2;
+        tableHashes = new int[capacity];
+        tableOffsets = new int[capacity];
+        tableStamps = new int[capacity];
+        int mask = capacity - 1;
+        for (int i=0; i<oldStamps.length; ++i) {
+            if (oldStamps[i] != stamp)
+                continue;
+            int slot = mix(oldHashes[i]) & mask;
+            while (tableStamps[slot] == stamp) {
+                slot = (slot + 1) & mask;
+            }
+            tableStamps[slot] = stamp;
+            tableHashes[slot] = oldHashes[i];
+            tableOffsets[slot] = oldOffsets[i];
+        }
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        return hash ^ hash >>> 13;
+    }
+
+    /**
+     * Compares the uncompressed suffix at offset a with the suffix at the earlier offset b,
+     * which may contain pointers, ignoring ASCII case.
+     */
+    private boolean suffixEquals(int a, int b) {
+        byte[] buf = buffer;
+        while (true) {
+            int length = buf[b] & 0xFF;
+            while ((length & 0xC0) == 0xC0) {
+                b = (length & 0x3F) << 8 | (buf[b + 1] & 0xFF);
+                length = buf[b] & 0xFF;
+            }
+            if (length != (buf[a] & 0xFF))
+                return false;
+            if (length == 0)
+                return true;
+            for (int k=1; k<=length; ++k) {
+                if (toLowerAscii(buf[a + k]) != toLowerAscii(buf[b + k]))
+                    return false;
+            }
+            a += length + 1;
+            b += length + 1;
+        }
+    }
+
+    private static int toLowerAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? b | 0x20 : b & 0xFF;
+    }
+
+    private static int checkLength(ByteString field, int max, String description) {
+        int length = field.length();
+        if (length > max)
+            throw new IllegalArgumentException(description + " longer than " + max
+                    + " bytes. len=" + length);
+        return length;
+    }
+
+    private void ensure(int count) {
+        int required = pos + count;
+        if (required > buffer.length) {
+            if (required > MAX_MESSAGE_LENGTH)
+                throw new IllegalArgumentException("Message longer than " + MAX_MESSAGE_LENGTH
+                        + " bytes");
+            int capacity = Math.min(Math.max(buffer.length * 2, required), MAX_MESSAGE_LENGTH);
+            buffer = Arrays.copyOf(buffer, capacity);
+        }
+    }
+
+    private void putByte(int value) {
+        ensure(1);
+        buffer[pos++] = (byte) value;
+    }
+
+    private void putShort(int value) {
+        ensure(2);
+        buffer[pos] = (byte) (value >> 8);
+        buffer[pos + 1] = (byte) value;
+        pos += 2;
+    }
+
+    private void putInt(int value) {
+        ensure(4);
+        buffer[pos] = (byte) (value >> 24);
+        buffer[pos + 1] = (byte) (value >> 16);
+        buffer[pos + 2] = (byte) (value >> 8);
+        buffer[pos + 3] = (byte) value;
+        pos += 4;
+    }
+
+    private void put(ByteString bytes) {
+        ensure(bytes.length());
+        pos += bytes.copyTo(buffer, pos);
+    }
+
+    /**
+     * Writes a length prefixed character string, RFC 1035 section 3.3.
+     */
+    private void putCharacterString(ByteString bytes) {
+        putByte(checkLength(bytes, 0xFF, "Character string"));
+        put(bytes);
+    }
+
+}
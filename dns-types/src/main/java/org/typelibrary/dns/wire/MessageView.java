@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.dns.wire;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.typelibrary.binarystrings.ByteString;
+import org.typelibrary.binarystrings.ByteStringReader;
+import org.typelibrary.dns.Authoritative;
+import org.typelibrary.dns.Name;
+import org.typelibrary.dns.OpCode;
+import org.typelibrary.dns.ParseException;
+import org.typelibrary.dns.QClass;
+import org.typelibrary.dns.QR;
+import org.typelibrary.dns.Question;
+import org.typelibrary.dns.Record;
+import org.typelibrary.dns.RecordType;
+import org.typelibrary.dns.RecursionAvailable;
+import org.typelibrary.dns.RecursionDesired;
+import org.typelibrary.dns.ResponseCode;
+import org.typelibrary.dns.Section;
+import org.typelibrary.dns.Truncated;
+
+/**
+ * Read-only view of a DNS message in wire format, which decodes fields only when they are
+ * accessed.
+ *
+ * <p>
+ * {@link #reset(ByteString)} makes one pass over the message, recording where each question
+ * and record starts and checking that the labels of every owner name and the RDATA lengths
+ * fit in the message. Nothing else is decoded: header fields, names and records are read
+ * from the message by the accessors, each time they are called. Records are visited with a
+ * {@link Cursor} rather than a list. A view and its cursors can be reset and reused for any
+ * number of messages, so that inspecting the header, the question or a single section of a
+ * message costs a fraction of a {@link MessageDecoder#decode(ByteString) full decode} and,
+ * once the index arrays have grown to the usual message size, allocates only the values
+ * returned.
+ * </p>
+ *
+ * <p>
+ * Compression pointers and RDATA contents are not checked by the index pass, so
+ * {@link Cursor#getName()} and {@link Cursor#getRecord()} can still throw a
+ * {@link ParseException}. Not thread safe.
+ * </p>
+ */
+public final class MessageView {
+
+    private static final int NO_MESSAGE = -1;
+
+    private ByteStringReader reader;
+    private int generation;
+    private int questionCount = NO_MESSAGE;
+    private int[] questionEnds = new int[4];
+    private int[] recordOffsets = new int[16];
+    private int[] dataOffsets = new int[16];
+
+    /**
+     * Index of the first record of each section, followed by the number of records.
+     */
+    private final int[] sectionStarts = new int[4];
+
+    public MessageView() {
+    }
+
+    public MessageView(ByteString message) {
+        reset(message);
+    }
+
+    /**
+     * Indexes the remaining bytes of buffer. The position of the buffer is not changed, and
+     * the buffer must not be modified while the view is in use.
+     */
+    public MessageView reset(ByteBuffer buffer) {
+        return reset(ByteString.wrap(buffer));
+    }
+
+    /**
+     * Indexes message, replacing the previous message of this view. Cursors must be reset
+     * before they are used with the new message.
+     *
+     * @throws ParseException if the questions and records do not fit in the message, or an
+     *             owner name has an unsupported label type. The view is then empty.
+     */
+    public MessageView reset(ByteString message) {
+
+        this.questionCount = NO_MESSAGE;
+        this.reader = null;
+        ++generation;
+        if (message.length() < MessageDecoder.HEADER_LENGTH)
+            throw new ParseException("Message shorter than header. len=" + message.length());
+
+        ByteStringReader r = new ByteStringReader(message);
+        int questions = r.getUnsignedShort(4);
+        int answers = r.getUnsignedShort(6);
+        int authorities = r.getUnsignedShort(8);
+        int additionals = r.getUnsignedShort(10);
+        int records = answers + authorities + additionals;
+        r.position(MessageDecoder.HEADER_LENGTH);
+
+        try {
+            for (int i=0; i<questions; ++i) {
+                skipName(r);
+                r.skip(4);
+                if (i == questionEnds.length)
+                    questionEnds = Arrays.copyOf(questionEnds, 2 * i);
+                questionEnds[i] = r.position();
+            }
+            for (int i=0; i<records; ++i) {
+                if (i == recordOffsets.length) {
+                    recordOffsets = Arrays.copyOf(recordOffsets, 2 * i);
+                    dataOffsets = Arrays.copyOf(dataOffsets, 2 * i);
+                }
+                recordOffsets[i] = r.position();
+                skipName(r);
+                r.skip(8);
+                int dataLength = r.getUnsignedShort();
+                dataOffsets[i] = r.position();
+                r.skip(dataLength);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new ParseException("Message truncated at " + r.position(), e);
+        }
+
+        sectionStarts[0] = 0;
+        sectionStarts[1] = answers;
+        sectionStarts[2] = answers + authorities;
+        sectionStarts[3] = records;
+        this.reader = r;
+        this.questionCount = questions;
+        return this;
+
+    }
+
+    /**
+     * Advances past the name at the position of r without following pointers.
+     */
+    private static void skipName(ByteStringReader r) {
+        while (true) {
+            int labelLength = r.getUnsignedByte();
+            if ((labelLength & 0xC0) == 0xC0) {
+                r.skip(1);
+                return;
+            }
+            if ((labelLength & 0xC0) != 0)
+                throw new ParseException("Unsupported label type at " + (r.position() - 1));
+            if (labelLength == 0)
+                return;
+            r.skip(labelLength);
+        }
+    }
+
+    private ByteStringReader reader() {
+        if (questionCount == NO_MESSAGE)
+            throw new IllegalStateException("No message");
+        return reader;
+    }
+
+    public ByteString getMessage() {
+        return reader().string();
+    }
+
+    public short getId() {
+        return reader().getShort(0);
+    }
+
+    public short getFlags() {
+        return reader().getShort(2);
+    }
+
+    public QR getQR() {
+        return (getFlags() & 0x8000) != 0 ? QR.RESPONSE : QR.QUERY;
+    }
+
+    public OpCode getOpCode() {
+        return OpCode.fromInt((getFlags() >> 11) & 0xF);
+    }
+
+    public Authoritative getAuthoritative() {
+        return Authoritative.fromBoolean((getFlags() & 0x0400) != 0);
+    }
+
+    public Truncated getTruncated() {
+        return Truncated.fromBoolean((getFlags() & 0x0200) != 0);
+    }
+
+    public RecursionDesired getRecursionDesired() {
+        return RecursionDesired.fromBoolean((getFlags() & 0x0100) != 0);
+    }
+
+    public RecursionAvailable getRecursionAvailable() {
+        return RecursionAvailable.fromBoolean((getFlags() & 0x0080) != 0);
+    }
+
+    public ResponseCode getResponseCode() {
+        return ResponseCode.fromInt(getFlags() & 0xF);
+    }
+
+    public int getQuestionCount() {
+        reader();
+        return questionCount;
+    }
+
+    public int getCount(Section section) {
+        reader();
+        int i = section.ordinal();
+        return sectionStarts[i + 1] - sectionStarts[i];
+    }
+
+    public Name getQuestionName(int index) {
+        questionEnd(index);
+        ByteStringReader r = reader();
+        r.position(index == 0 ? MessageDecoder.HEADER_LENGTH : questionEnds[index - 1]);
+        return MessageDecoder.readName(r);
+    }
+
+    public RecordType getQuestionType(int index) {
+        return RecordType.fromInt(reader().getUnsignedShort(questionEnd(index) - 4));
+    }
+
+    public QClass getQuestionClass(int index) {
+        return QClass.fromInt(reader().getUnsignedShort(questionEnd(index) - 2));
+    }
+
+    public Question getQuestion(int index) {
+        return new Question(getQuestionName(index), getQuestionType(index),
+                getQuestionClass(index));
+    }
+
+    private int questionEnd(int index) {
+        if (index < 0 || index >= getQuestionCount())
+            throw new IndexOutOfBoundsException("index=" + index + ", count=" + questionCount);
+        return questionEnds[index];
+    }
+
+    /**
+     * Returns a new cursor positioned before the first record of section.
+     */
+    public Cursor cursor(Section section) {
+        return new Cursor().reset(section);
+    }
+
+    /**
+     * Iterates over the records of one section of the message of a {@link MessageView}.
+     * Each accessor decodes its field from the message when it is called.
+     *
+     * <pre>
+     * MessageView.Cursor cursor = view.cursor(Section.ANSWER);
+     * while (cursor.next()) {
+     *     if (cursor.getRecordType() == RecordType.A)
+     *         ...
+     * }
+     * </pre>
+     */
+    public final class Cursor {
+
+        private int generation;
+        private int index;
+        private int end;
+
+        private Cursor() {
+        }
+
+        /**
+         * Positions this cursor before the first record of section in the current message of
+         * the view.
+         */
+        public Cursor reset(Section section) {
+            reader();
+            this.generation = MessageView.this.generation;
+            int i = section.ordinal();
+            index = sectionStarts[i] - 1;
+            end = sectionStarts[i + 1];
+            return this;
+        }
+
+        /**
+         * Moves to the next record of the section.
+         *
+         * @return false if there are no more records
+         */
+        public boolean next() {
+            if (index + 1 >= end) {
+                index = end;
+                return false;
+            }
+            ++index;
+            return true;
+        }
+
+        private int dataOffset() {
+            if (generation != MessageView.this.generation)
+                throw new IllegalStateException("View was reset");
+            if (index < 0 || index >= end)
+                throw new IllegalStateException("No current record");
+            return dataOffsets[index];
+        }
+
+        public Name getName() {
+            dataOffset();
+            ByteStringReader r = reader();
+            r.position(recordOffsets[index]);
+            return MessageDecoder.readName(r);
+        }
+
+        public RecordType getRecordType() {
+            return RecordType.fromInt(reader().getUnsignedShort(dataOffset() - 10));
+        }
+
+        public short getRecordClass() {
+            return reader().getShort(dataOffset() - 8);
+        }
+
+        public int getTimeToLive() {
+            return reader().getInt(dataOffset() - 6);
+        }
+
+        public int getDataLength() {
+            return reader().getUnsignedShort(dataOffset() - 2);
+        }
+
+        /**
+         * Returns the RDATA as a substring of the message. Names in the RDATA may contain
+         * compression pointers, which are only meaningful within the message.
+         */
+        public ByteString getData() {
+            int offset = dataOffset();
+            return reader().slice(offset, reader.getUnsignedShort(offset - 2));
+        }
+
+        /**
+         * Decodes the current record as {@link MessageDecoder} does.
+         */
+        public Record getRecord() {
+            dataOffset();
+            ByteStringReader r = reader();
+            r.position(recordOffsets[index]);
+            return MessageDecoder.readRecord(r);
+        }
+
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.dns;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.typelibrary.binarystrings.ByteString;
+import org.typelibrary.binarystrings.ByteStringBuilder;
+
+public class NameTableTest {
+
+    @Test
+    public void testIntern() {
+
+        NameTable table = new NameTable();
+        Name www = table.intern(Name.fromString("www.Example.com."));
+        Assert.assertEquals(4, table.size());
+        Assert.assertSame(www, table.intern(Name.fromString("WWW.example.COM.")));
+        Assert.assertEquals("www.Example.com.", www.getName());
+
+        // Ancestors are canonical and shared
+        Name mail = table.intern(Name.fromString("mail.example.com."));
+        Assert.assertEquals(5, table.size());
+        Assert.assertSame(www.parent(), mail.parent());
+        Assert.assertSame(table.get(Name.fromString("example.com.")), www.parent());
+        Assert.assertSame(table.get(Name.fromString("com.")), www.parent().parent());
+        Assert.assertSame(Name.ROOT, www.parent().parent().parent());
+        Assert.assertNull(table.get(Name.fromString("net.")));
+
+        // Canonical names behave as the names they were interned from
+        Name name = Name.fromString("WWW.example.com.");
+        Assert.assertEquals(name, www);
+        Assert.assertEquals(www, name);
+        Assert.assertEquals(name.hashCode(), www.hashCode());
+        Assert.assertFalse(www.equals(mail));
+        Assert.assertTrue(www.isSubdomainOf(Name.fromString("EXAMPLE.com.")));
+        Assert.assertTrue(name.isSubdomainOf(mail.parent()));
+        Assert.assertFalse(www.isSubdomainOf(mail));
+        Assert.assertFalse(name.isSubdomainOf(mail));
+        Assert.assertEquals(ByteString.fromAscii("com"), www.label(2));
+
+        // Relative names are kept apart from absolute ones
+        Name relative = table.intern(Name.fromString("www.example.com"));
+        Assert.assertNotSame(www, relative);
+        Assert.assertFalse(relative.isAbsolute());
+        Assert.assertSame(table.get(Name.fromString("com")), relative.parent().parent());
+        Assert.assertNull(relative.parent().parent().parent());
+
+    }
+
+    @Test
+    public void testCompact() {
+
+        // A name decoded from a larger buffer
+        ByteStringBuilder b = new ByteStringBuilder();
+        b.put(ByteString.from(new byte[100]));
+        b.put(ByteString.from(3, 'f', 't', 'p', 7, 'e', 'x', 'a', 'm', 'p', 'l', 'e', 3, 'o', 'r', 'g', 0));
+        ByteString message = b.toByteString();
+        Name name = Name.fromWire(message.substring(100));
+
+        NameTable table = new NameTable();
+        Name canonical = table.intern(name);
+        Assert.assertEquals(name, canonical);
+        Assert.assertEquals(17, canonical.toWire().length());
+        Assert.assertEquals(17, canonical.toWire().footprint());
+        Assert.assertEquals(name.toWire(), canonical.toWire());
+        Assert.assertSame(canonical.toWire(), canonical.toWire());
+        Assert.assertEquals(13, canonical.parent().toWire().footprint());
+        Assert.assertEquals(1, canonical.parent().parent().labelCount());
+        Assert.assertEquals(ByteString.fromAscii("example"), canonical.label(1));
+
+        // Interning the parent of a non canonical name
+        Assert.assertSame(canonical.parent(), table.intern(name.parent()));
+
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+
+        final NameTable table = new NameTable();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Callable<Name[]> task = new Callable<Name[]>() {
+                @Override
+                public Name[] call() {
+                    Name[] names = new Name[500];
+                    for (int i=0; i<names.length; ++i) {
+                        names[i] = table.intern(Name.fromString("h" + i + ".z" + (i % 7) + ".example."));
+                    }
+                    return names;
+                }
+            };
+            Future<Name[]> first = executor.submit(task);
+            Future<Name[]> second = executor.submit(task);
+            Future<Name[]> third = executor.submit(task);
+            Name[] expected = first.get();
+            for (Name[] names : new Name[][] { second.get(), third.get() }) {
+                for (int i=0; i<names.length; ++i) {
+                    Assert.assertSame(expected[i], names[i]);
+                    Assert.assertSame(table.get(expected[i].parent()), names[i].parent());
+                }
+            }
+            Assert.assertEquals(500 + 7 + 2, table.size());
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+}
@@ -53,19 +53,133 @@ public class NameTest {
         assertParseException("A..A.com");
         assertParseException(".com");
         
-        char[] str = new char[256];
-        str[0] = 'A';
-        for (int i=1; i<256; ++i) {
-            if (i%63 == 0)
-                str[i] = '.';
-            else
-                str[i] = 'B';
+        // At most 255 bytes in wire form, which adds a root label to a relative name
+        assertValid(longName(254, true), true);
+        assertParseException(longName(255, true));
+        assertValid(longName(253, false), false);
+        assertParseException(longName(254, false));
+        assertParseException(longName(256, false));
+        Assert.assertEquals(255, Name.fromString(longName(254, true)).toWire().length());
+        byte[] bytes = longName(255, true).getBytes();
+        try {
+            Name.fromByteArray(bytes, 0, bytes.length);
+            Assert.fail("Expected parse exception");
+        } catch (ParseException e) {
+            // Expected
         }
-        assertValid(new String(str, 0, 255), false);
-        assertParseException(new String(str, 0, 256));
+        bytes = longName(254, true).getBytes();
+        Assert.assertEquals(255, Name.fromByteArray(bytes, 0, bytes.length).toWire().length());
         
     }
 
+    @Test
+    public void testFromWire() {
+
+        Assert.assertEquals(Name.fromString("www.amazon.com."),
+                Name.fromWire(wire(3, 'w', 'w', 'w', 6, 'a', 'm', 'a', 'z', 'o', 'n', 3, 'c', 'o', 'm', 0)));
+        Name root = Name.fromWire(wire(0));
+        Assert.assertEquals(".", root.getName());
+        Assert.assertTrue(root.isAbsolute());
+
+        // Labels outside host name syntax
+        Assert.assertEquals("_sip._tcp.", Name.fromWire(wire(4, '_', 's', 'i', 'p', 4, '_', 't', 'c', 'p', 0)).getName());
+        Assert.assertEquals("a\\.b\\\\\\000\\255.", Name.fromWire(wire(6, 'a', '.', 'b', '\\', 0, 255, 0)).getName());
+
+        assertWireException(wire());
+        assertWireException(wire(1, 'a'));
+        assertWireException(wire(2, 'a', 0));
+        assertWireException(wire(1, 'a', 0, 0));
+        assertWireException(wire(64, 0));
+        byte[] tooLong = new byte[257];
+        for (int i=0; i<256; i+=32) {
+            tooLong[i] = 31;
+        }
+        assertWireException(org.typelibrary.binarystrings.ByteString.from(tooLong));
+
+    }
+
+    @Test
+    public void testToWire() {
+
+        org.typelibrary.binarystrings.ByteString www = wire(3, 'w', 'w', 'w', 6, 'a', 'm', 'a', 'z', 'o', 'n', 3, 'c', 'o', 'm', 0);
+        Assert.assertEquals(www, Name.fromString("www.amazon.com.").toWire());
+        Assert.assertEquals(www, Name.fromString("www.amazon.com").toWire());
+        Assert.assertEquals(wire(1, 'A', 0), Name.fromString("A.").toWire());
+        Name fromWire = Name.fromWire(www);
+        Assert.assertSame(www, fromWire.toWire());
+        Assert.assertEquals(wire(0), Name.fromWire(wire(0)).toWire());
+
+    }
+
+    @Test
+    public void testLabels() {
+
+        Name name = Name.fromWire(wire(3, 'w', 'w', 'w', 6, 'A', 'm', 'a', 'z', 'o', 'n', 3, 'c', 'o', 'm', 0));
+        Assert.assertEquals(3, name.labelCount());
+        Assert.assertEquals(wire('w', 'w', 'w'), name.label(0));
+        Assert.assertEquals(wire('c', 'o', 'm'), name.label(2));
+
+        Name parent = name.parent();
+        Assert.assertEquals(2, parent.labelCount());
+        Assert.assertEquals("Amazon.com.", parent.getName());
+        Assert.assertEquals(wire('c', 'o', 'm'), parent.label(1));
+        Assert.assertEquals(wire(3, 'c', 'o', 'm', 0), parent.parent().toWire());
+        Assert.assertSame(Name.ROOT, parent.parent().parent());
+        Assert.assertNull(Name.ROOT.parent());
+        Assert.assertEquals(0, Name.ROOT.labelCount());
+        Assert.assertEquals("com", Name.fromString("amazon.com").parent().getName());
+        Assert.assertNull(Name.fromString("com").parent());
+
+        // Case-insensitive, RFC 4343
+        Name lower = Name.fromString("www.amazon.com.");
+        Assert.assertEquals(lower, name);
+        Assert.assertEquals(lower.hashCode(), name.hashCode());
+        Assert.assertEquals(Name.fromString("AMAZON.com."), parent);
+        Assert.assertFalse(lower.equals(Name.fromString("www.amazon.com")));
+        Assert.assertFalse(lower.equals(Name.fromString("www.amazon.co.")));
+
+        Assert.assertTrue(name.isSubdomainOf(Name.fromString("amazon.COM.")));
+        Assert.assertTrue(name.isSubdomainOf(name));
+        Assert.assertTrue(name.isSubdomainOf(Name.ROOT));
+        Assert.assertFalse(name.isSubdomainOf(Name.fromString("zon.com.")));
+        Assert.assertFalse(name.isSubdomainOf(Name.fromString("amazon.com")));
+        Assert.assertFalse(parent.isSubdomainOf(name));
+        Assert.assertTrue(Name.fromString("a.b.c").isSubdomainOf(Name.fromString("b.c")));
+
+        try {
+            name.label(3);
+            Assert.fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+
+    }
+
+    /**
+     * Returns a name of length characters, made of labels of 63 letters.
+     */
+    private static String longName(int length, boolean absolute) {
+        char[] str = new char[length];
+        for (int i=0; i<length; ++i) {
+            str[i] = i%64 == 63 ? '.' : 'A';
+        }
+        str[length - 1] = absolute ? '.' : 'B';
+        return new String(str);
+    }
+
+    private static org.typelibrary.binarystrings.ByteString wire(int... bytes) {
+        return org.typelibrary.binarystrings.ByteString.from(bytes);
+    }
+
+    private static void assertWireException(org.typelibrary.binarystrings.ByteString wire) {
+        try {
+            Name name = Name.fromWire(wire);
+            Assert.fail("Expected parse exception. Got: " + name);
+        } catch (ParseException e) {
+            // Expected
+        }
+    }
+
     protected void assertValid(String str, boolean absolute) {
         Name name = Name.fromString(str);
         Assert.assertEquals(absolute, name.isAbsolute());
@@ -58,6 +58,15 @@ public class ARecordTest extends AbstractRecordTest {
 
     }
 
+    @Test
+    public void testAddressSubstring() {
+
+        ByteString packet = ByteString.from(9, 9, 192, 168, 0, 1, 9, 9);
+        ARecord r = new ARecord(STD_NAME, STD_CLASS, STD_TTL, packet.substring(2, 6));
+        Assert.assertTrue(r.toString().endsWith(", address=192.168.0.1"));
+
+    }
+
     @Test
     public void testAddressTooShort() {
         try {
@@ -21,6 +21,7 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.typelibrary.binarystrings.ByteString;
 import org.typelibrary.dns.GatewayType;
+import org.typelibrary.dns.Name;
 import org.typelibrary.dns.PublicKeyAlgorithm;
 
 public class IPSECKEYRecordTest extends AbstractRecordTest {
@@ -70,4 +71,31 @@ public class IPSECKEYRecordTest extends AbstractRecordTest {
 
     }
 
+    @Test
+    public void testNoGateway() {
+
+        final byte precedence = 10;
+        final PublicKeyAlgorithm algorithm = PublicKeyAlgorithm.RSA;
+        final ByteString publicKey = ByteString.from(4, 5, 6, 7, 8, 9);
+
+        IPSECKEYRecord r = new IPSECKEYRecord(STD_NAME, STD_CLASS, STD_TTL, precedence, algorithm,
+                publicKey);
+        assertBaseRecord(STD_NAME, STD_CLASS, STD_TTL, r);
+
+        Assert.assertEquals(precedence, r.getPrecedence());
+        Assert.assertEquals(GatewayType.NONE, r.getGatewayType());
+        Assert.assertEquals(algorithm, r.getAlgorithm());
+        Assert.assertNull(r.getGateway());
+        Assert.assertEquals(publicKey, r.getPublicKey());
+
+        try {
+            new IPSECKEYRecord(STD_NAME, STD_CLASS, STD_TTL, precedence, algorithm,
+                    (Name) null, publicKey);
+            Assert.fail("Expected IllegalArgumentException.");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+    }
+
 }
@@ -41,6 +41,14 @@ public class TKEYRecordTest extends AbstractRecordTest {
         Assert.assertEquals(inception, r.getInception());
         Assert.assertEquals(expiration, r.getExpiration());
         Assert.assertEquals(mode, r.getMode());
+        Assert.assertEquals(0, r.getError());
+        Assert.assertEquals(keySize, r.getKeySize());
+
+        // BADKEY
+        r = new TKEYRecord(STD_NAME, STD_CLASS, STD_TTL, algorithm, inception, expiration, mode,
+                (short) 17, keySize, keyData, otherData);
+        Assert.assertEquals(mode, r.getMode());
+        Assert.assertEquals(17, r.getError());
         Assert.assertEquals(keySize, r.getKeySize());
         Assert.assertEquals(keyData, r.getKeyData());
         Assert.assertEquals(otherData, r.getOtherData());
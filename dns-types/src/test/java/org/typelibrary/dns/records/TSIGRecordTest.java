@@ -40,6 +40,14 @@ public class TSIGRecordTest extends AbstractRecordTest {
         Assert.assertEquals(fudge, r.getFudge());
         Assert.assertEquals(mac, r.getMac());
         Assert.assertEquals(originalId, r.getOriginalId());
+        Assert.assertEquals(0, r.getError());
+        Assert.assertEquals(otherData, r.getOtherData());
+
+        // BADSIG
+        r = new TSIGRecord(STD_NAME, STD_CLASS, STD_TTL, algorithm, timeSigned, fudge, mac,
+                originalId, (short) 16, otherData);
+        Assert.assertEquals(originalId, r.getOriginalId());
+        Assert.assertEquals(16, r.getError());
         Assert.assertEquals(otherData, r.getOtherData());
 
         try {
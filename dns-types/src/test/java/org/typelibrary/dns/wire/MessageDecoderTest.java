@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.dns.wire;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.typelibrary.binarystrings.ByteString;
+import org.typelibrary.binarystrings.ByteStringBuilder;
+import org.typelibrary.dns.Message;
+import org.typelibrary.dns.Name;
+import org.typelibrary.dns.OpCode;
+import org.typelibrary.dns.ParseException;
+import org.typelibrary.dns.QClass;
+import org.typelibrary.dns.QR;
+import org.typelibrary.dns.Question;
+import org.typelibrary.dns.RawRecord;
+import org.typelibrary.dns.Record;
+import org.typelibrary.dns.RecordType;
+import org.typelibrary.dns.RecursionAvailable;
+import org.typelibrary.dns.ResponseCode;
+import org.typelibrary.dns.records.ARecord;
+import org.typelibrary.dns.records.CNAMERecord;
+import org.typelibrary.dns.records.MXRecord;
+import org.typelibrary.dns.records.OPTRecord;
+import org.typelibrary.dns.records.SOARecord;
+import org.typelibrary.dns.records.TKEYRecord;
+import org.typelibrary.dns.records.TSIGRecord;
+import org.typelibrary.dns.records.TXTRecord;
+
+public class MessageDecoderTest {
+
+    /**
+     * Offset of "example.com." within the question name "www.example.com." at offset 12.
+     */
+    private static final int EXAMPLE_COM = 16;
+
+    static void putLabels(ByteStringBuilder b, String... labels) {
+        for (String label : labels) {
+            b.putByte(label.length());
+            b.put(ByteString.fromAscii(label));
+        }
+    }
+
+    static void putPointer(ByteStringBuilder b, int offset) {
+        b.putShort(0xC000 | offset);
+    }
+
+    /**
+     * Writes a record header for the name at pointer and reserves the RDLENGTH field,
+     * returning its index.
+     */
+    static int putRecord(ByteStringBuilder b, int pointer, int type, int rclass, int ttl) {
+        putPointer(b, pointer);
+        b.putShort(type);
+        b.putShort(rclass);
+        b.putInt(ttl);
+        return b.reserve(2);
+    }
+
+    static void endRecord(ByteStringBuilder b, int lengthIndex) {
+        b.setShortAt(lengthIndex, b.length() - lengthIndex - 2);
+    }
+
+    /**
+     * A response to www.example.com. A with answers, an authority and additionals that use
+     * compression pointers.
+     */
+    static byte[] response() {
+
+        ByteStringBuilder b = new ByteStringBuilder();
+        b.putShort(0x1234).putShort(0x8180).putShort(1).putShort(4).putShort(1).putShort(2);
+
+        putLabels(b, "www", "example", "com", "");
+        b.putShort(1).putShort(1);
+
+        // www.example.com. CNAME web.example.com.
+        int length = putRecord(b, 12, 5, 1, 300);
+        putLabels(b, "web");
+        putPointer(b, EXAMPLE_COM);
+        endRecord(b, length);
+        int web = length + 2;
+
+        length = putRecord(b, web, 1, 1, 60);
+        b.putByte(93).putByte(184).putByte(216).putByte(34);
+        endRecord(b, length);
+
+        length = putRecord(b, EXAMPLE_COM, 15, 1, 3600);
+        b.putShort(10);
+        putLabels(b, "mail");
+        putPointer(b, EXAMPLE_COM);
+        endRecord(b, length);
+
+        length = putRecord(b, EXAMPLE_COM, 16, 1, 3600);
+        putLabels(b, "v=spf1", "-all");
+        endRecord(b, length);
+
+        length = putRecord(b, EXAMPLE_COM, 6, 1, 3600);
+        putLabels(b, "ns1");
+        putPointer(b, EXAMPLE_COM);
+        putLabels(b, "hostmaster");
+        putPointer(b, EXAMPLE_COM);
+        b.putInt(2015010101).putInt(7200).putInt(3600).putInt(1209600).putInt(300);
+        endRecord(b, length);
+
+        // Private use type, decoded as a RawRecord
+        length = putRecord(b, web, 65280, 1, 10);
+        b.putByte(1).putByte(2).putByte(3);
+        endRecord(b, length);
+
+        // OPT with a cookie option
+        b.putByte(0).putShort(41).putShort(4096).putInt(0);
+        length = b.reserve(2);
+        b.putShort(10).putShort(8).putLong(0x0102030405060708L);
+        endRecord(b, length);
+
+        byte[] bytes = new byte[b.length()];
+        b.toByteString().copyTo(bytes, 0);
+        return bytes;
+
+    }
+
+    @Test
+    public void testDecode() {
+
+        byte[] bytes = response();
+        ByteString wire = ByteString.from(bytes);
+        Message message = new MessageDecoder().decode(wire);
+
+        Assert.assertEquals(0x1234, message.getId());
+        Assert.assertEquals(QR.RESPONSE, message.getQR());
+        Assert.assertEquals(OpCode.QUERY, message.getOpCode());
+        Assert.assertEquals(RecursionAvailable.YES, message.getRecursionAvailable());
+        Assert.assertEquals(ResponseCode.NOERROR, message.getResponseCode());
+
+        Name www = Name.fromString("www.example.com.");
+        Name example = Name.fromString("example.com.");
+        Name web = Name.fromString("web.example.com.");
+        Assert.assertEquals(1, message.getQuestions().size());
+        Assert.assertEquals(new Question(www, RecordType.A, QClass.IN),
+                message.getQuestions().get(0));
+
+        List<Record> answers = message.getAnswers();
+        Assert.assertEquals(4, answers.size());
+        CNAMERecord cname = (CNAMERecord) answers.get(0);
+        Assert.assertEquals(www, cname.getName());
+        Assert.assertEquals(300, cname.getTimeToLive());
+        Assert.assertEquals(web, cname.getCName());
+
+        ARecord a = (ARecord) answers.get(1);
+        Assert.assertEquals(web, a.getName());
+        Assert.assertEquals(ByteString.from(93, 184, 216, 34), a.getAddress());
+        // RDATA shares the message bytes
+        Assert.assertEquals(bytes.length, a.getAddress().footprint());
+
+        MXRecord mx = (MXRecord) answers.get(2);
+        Assert.assertEquals(example, mx.getName());
+        Assert.assertEquals(10, mx.getPreference());
+        Assert.assertEquals(Name.fromString("mail.example.com."), mx.getExchange());
+
+        TXTRecord txt = (TXTRecord) answers.get(3);
+        Assert.assertEquals(2, txt.getText().size());
+        Assert.assertEquals(ByteString.fromAscii("v=spf1"), txt.getText().get(0));
+        Assert.assertEquals(ByteString.fromAscii("-all"), txt.getText().get(1));
+
+        SOARecord soa = (SOARecord) message.getAuthorities().get(0);
+        Assert.assertEquals(Name.fromString("ns1.example.com."), soa.getMasterName());
+        Assert.assertEquals(Name.fromString("hostmaster.example.com."), soa.getResponsibleName());
+        Assert.assertEquals(2015010101, soa.getSerialNumber());
+        Assert.assertEquals(300, soa.getMinimum());
+
+        RawRecord raw = (RawRecord) message.getAdditionals().get(0);
+        Assert.assertEquals(65280, raw.getRecordType().toInt());
+        Assert.assertEquals(ByteString.from(1, 2, 3), raw.getData());
+
+        OPTRecord opt = (OPTRecord) message.getAdditionals().get(1);
+        Assert.assertEquals(".", opt.getName().getName());
+        Assert.assertEquals(4096, opt.getRecordClass());
+        Assert.assertEquals(1, opt.getOptions().size());
+        Assert.assertEquals(10, opt.getOptions().get(0).getCode());
+        Assert.assertEquals(8, opt.getOptions().get(0).getData().length());
+
+        Message fromBuffer = new MessageDecoder().decode(ByteBuffer.wrap(bytes));
+        Assert.assertEquals(message.getAnswers().size(), fromBuffer.getAnswers().size());
+        Assert.assertEquals(a.getAddress(), ((ARecord) fromBuffer.getAnswers().get(1)).getAddress());
+
+    }
+
+    @Test
+    public void testTransactionErrors() {
+
+        ByteStringBuilder b = new ByteStringBuilder();
+        b.putShort(0x4321).putShort(0x8000).putShort(0).putShort(1).putShort(0).putShort(1);
+
+        // TKEY with BADKEY
+        putLabels(b, "key", "");
+        b.putShort(249).putShort(255).putInt(0);
+        int length = b.reserve(2);
+        putLabels(b, "gss-tsig", "");
+        b.putInt(1).putInt(2).putShort(3).putShort(17);
+        b.putShort(2).putByte(4).putByte(5);
+        b.putShort(0);
+        endRecord(b, length);
+
+        // TSIG with BADTIME, which carries the server time as other data
+        putLabels(b, "key", "");
+        b.putShort(250).putShort(255).putInt(0);
+        length = b.reserve(2);
+        putLabels(b, "hmac-sha256", "");
+        b.putShort(0x12).putInt(0x3456789A).putShort(300);
+        b.putShort(1).putByte(9);
+        b.putShort(0x4321).putShort(18);
+        b.putShort(6).putShort(0x12).putInt(0x34567890);
+        endRecord(b, length);
+
+        Message message = new MessageDecoder().decode(b.toByteString());
+
+        TKEYRecord tkey = (TKEYRecord) message.getAnswers().get(0);
+        Assert.assertEquals(3, tkey.getMode());
+        Assert.assertEquals(17, tkey.getError());
+        Assert.assertEquals(ByteString.from(4, 5), tkey.getKeyData());
+
+        TSIGRecord tsig = (TSIGRecord) message.getAdditionals().get(0);
+        Assert.assertEquals(0x123456789AL, tsig.getTimeSigned());
+        Assert.assertEquals(0x4321, tsig.getOriginalId());
+        Assert.assertEquals(18, tsig.getError());
+        Assert.assertEquals(6, tsig.getOtherData().length());
+
+    }
+
+    @Test
+    public void testMalformed() {
+
+        byte[] valid = response();
+
+        // Truncated anywhere
+        for (int length : new int[] { 0, 11, 12, 20, 40, valid.length - 1 }) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(valid, 0, truncated, 0, length);
+            assertParseException(truncated);
+        }
+
+        // Question name pointing to itself
+        byte[] loop = valid.clone();
+        loop[12] = (byte) 0xC0;
+        loop[13] = 12;
+        assertParseException(loop);
+
+        // Reserved label type
+        byte[] labelType = valid.clone();
+        labelType[12] = 0x43;
+        assertParseException(labelType);
+
+        // A record RDLENGTH of 5
+        ByteStringBuilder b = new ByteStringBuilder();
+        b.putShort(1).putShort(0).putShort(0).putShort(1).putShort(0).putShort(0);
+        putLabels(b, "a", "");
+        b.putShort(1).putShort(1).putInt(0).putShort(5).putInt(0).putByte(0);
+        assertParseException(b.toByteString().toByteArray());
+
+    }
+
+    private static void assertParseException(byte[] bytes) {
+        try {
+            new MessageDecoder().decode(ByteString.from(bytes));
+            Assert.fail("Expected ParseException");
+        } catch (ParseException e) {
+            // Expected
+        }
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.dns.wire;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.typelibrary.binarystrings.ByteString;
+import org.typelibrary.binarystrings.ByteStringBuilder;
+import org.typelibrary.binarystrings.ByteStringOutputStream;
+import org.typelibrary.dns.Algorithm;
+import org.typelibrary.dns.DigestType;
+import org.typelibrary.dns.GatewayType;
+import org.typelibrary.dns.Message;
+import org.typelibrary.dns.Name;
+import org.typelibrary.dns.PublicKeyAlgorithm;
+import org.typelibrary.dns.QClass;
+import org.typelibrary.dns.Question;
+import org.typelibrary.dns.Record;
+import org.typelibrary.dns.RecordType;
+import org.typelibrary.dns.records.ARecord;
+import org.typelibrary.dns.records.CAARecord;
+import org.typelibrary.dns.records.CNAMERecord;
+import org.typelibrary.dns.records.DSRecord;
+import org.typelibrary.dns.records.HIPRecord;
+import org.typelibrary.dns.records.IPSECKEYRecord;
+import org.typelibrary.dns.records.NAPTRRecord;
+import org.typelibrary.dns.records.NSECRecord;
+import org.typelibrary.dns.records.NSRecord;
+import org.typelibrary.dns.records.RRSIGRecord;
+import org.typelibrary.dns.records.SRVRecord;
+import org.typelibrary.dns.records.TKEYRecord;
+import org.typelibrary.dns.records.TSIGRecord;
+import org.typelibrary.dns.records.TXTRecord;
+
+public class MessageEncoderTest {
+
+    private static final List<Record> NONE = Collections.emptyList();
+
+    private static Message response(List<Question> questions, List<Record> answers) {
+        return new Message((short) 7, (short) 0x8180, questions, answers, NONE, NONE);
+    }
+
+    private static Name name(String name) {
+        return Name.fromString(name);
+    }
+
+    /**
+     * Returns the absolute name with the specified labels, which need not be host names.
+     */
+    private static Name name(String... labels) {
+        ByteStringBuilder b = new ByteStringBuilder();
+        MessageDecoderTest.putLabels(b, labels);
+        b.putByte(0);
+        return Name.fromWire(b.toByteString());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+
+        // The decoder test builds its response the way a compressing encoder would.
+        byte[] bytes = MessageDecoderTest.response();
+        Message message = new MessageDecoder().decode(ByteString.from(bytes));
+
+        MessageEncoder encoder = new MessageEncoder();
+        Assert.assertEquals(ByteString.from(bytes), encoder.encode(message));
+        // Reuse
+        Assert.assertEquals(ByteString.from(bytes), encoder.encode(message));
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.position(3);
+        Assert.assertEquals(bytes.length, encoder.encode(message, buffer));
+        Assert.assertEquals(3 + bytes.length, buffer.position());
+        buffer.flip().position(3);
+        Assert.assertEquals(ByteString.from(bytes), ByteString.from(buffer));
+
+        ByteStringOutputStream out = new ByteStringOutputStream();
+        Assert.assertEquals(bytes.length, encoder.encode(message, out));
+        Assert.assertEquals(ByteString.from(bytes), out.toByteString());
+
+    }
+
+    @Test
+    public void testCompression() {
+
+        Name www = name("www.Example.COM.");
+        Name sip = name("sip.example.com.");
+        Message message = response(
+                Arrays.asList(new Question(www, RecordType.A, QClass.IN)),
+                Arrays.<Record>asList(
+                        new CNAMERecord(name("www.example.com."), (short) 1, 60, name("example.com")),
+                        new SRVRecord(name("_sip", "_udp", "example", "com"), (short) 1, 60, (short) 0,
+                                (short) 0, (short) 5060, sip),
+                        new NSRecord(name("example.com."), (short) 1, 60, sip)));
+        ByteString wire = new MessageEncoder().encode(message);
+
+        ByteStringBuilder b = new ByteStringBuilder();
+        b.putShort(7).putShort(0x8180).putShort(1).putShort(3).putShort(0).putShort(0);
+        MessageDecoderTest.putLabels(b, "www", "Example", "COM", "");
+        b.putShort(1).putShort(1);
+        // Owner and RDATA of CNAME compressed, ignoring case
+        b.putShort(0xC00C).putShort(5).putShort(1).putInt(60).putShort(2).putShort(0xC010);
+        // Owner of SRV compressed, target written in full
+        MessageDecoderTest.putLabels(b, "_sip", "_udp");
+        b.putShort(0xC010).putShort(33).putShort(1).putInt(60).putShort(23);
+        b.putShort(0).putShort(0).putShort(5060);
+        int target = b.length();
+        MessageDecoderTest.putLabels(b, "sip");
+        MessageDecoderTest.putLabels(b, "example", "com", "");
+        // NS target points into the SRV target
+        b.putShort(0xC010).putShort(2).putShort(1).putInt(60).putShort(2).putShort(0xC000 | target);
+        Assert.assertEquals(b.toByteString(), wire);
+
+        Message decoded = new MessageDecoder().decode(wire);
+        Assert.assertEquals(sip, ((NSRecord) decoded.getAnswers().get(2)).getNameServer());
+
+    }
+
+    @Test
+    public void testRecords() {
+
+        Name owner = name("example.com.");
+        ByteString key = ByteString.fromAscii("key material");
+        List<Record> records = new ArrayList<Record>();
+        records.add(new SRVRecord(name("_ldap", "_tcp", "example", "com"), (short) 1, 60, (short) 1,
+                (short) 2, (short) 389, name("dc.example.com.")));
+        records.add(new NAPTRRecord(owner, (short) 1, 60, (short) 100, (short) 10,
+                ByteString.fromAscii("S"), ByteString.fromAscii("SIP+D2U"), ByteString.from(),
+                name("_sip", "_udp", "example", "com")));
+        records.add(new RRSIGRecord(owner, (short) 1, 60, RecordType.A, Algorithm.RSASHA256,
+                (byte) 2, 3600, 1500000000, 1400000000, (short) 12345, owner, key));
+        records.add(new NSECRecord(owner, (short) 1, 60, name("a.example.com."),
+                ByteString.from(0, 6, 0x40, 0, 0, 0, 3)));
+        records.add(new DSRecord(owner, (short) 1, 60, (short) 12345, Algorithm.RSASHA256,
+                DigestType.SHA1, key));
+        records.add(new IPSECKEYRecord(owner, (short) 1, 60, (byte) 10, PublicKeyAlgorithm.RSA,
+                name("gw.example.com."), key));
+        records.add(new IPSECKEYRecord(owner, (short) 1, 60, (byte) 10, PublicKeyAlgorithm.RSA,
+                key));
+        records.add(new HIPRecord(owner, (short) 1, 60, PublicKeyAlgorithm.RSA,
+                ByteString.from(1, 2, 3, 4), key,
+                Arrays.asList(name("rvs1.example.com."), name("rvs2.example.net."))));
+        records.add(new CAARecord(owner, (short) 1, 60, (byte) 0, ByteString.fromAscii("issue"),
+                ByteString.fromAscii("ca.example.net")));
+        records.add(new TXTRecord(owner, (short) 1, 60,
+                Arrays.asList(ByteString.fromAscii("a"), ByteString.from())));
+        records.add(new TSIGRecord(name("key.example.com."), (short) 255, 0,
+                name("hmac-sha256."), 0x123456789AL, (short) 300, key, (short) 7, ByteString.from()));
+        // BADTIME and BADKEY
+        records.add(new TSIGRecord(name("key.example.com."), (short) 255, 0,
+                name("hmac-sha256."), 0x123456789AL, (short) 300, ByteString.from(), (short) 7,
+                (short) 18, ByteString.from(0, 0x12, 0x34, 0x56, 0x78, 0x9B)));
+        records.add(new TKEYRecord(name("key.example.com."), (short) 255, 0,
+                name("gss-tsig."), 1400000000, 1500000000, (short) 3, (short) 17, (short) 0,
+                ByteString.from(), ByteString.from()));
+
+        Message message = response(Collections.<Question>emptyList(), records);
+        Message decoded = new MessageDecoder().decode(new MessageEncoder().encode(message));
+        Assert.assertEquals(records.size(), decoded.getAnswers().size());
+        for (int i=0; i<records.size(); ++i) {
+            Assert.assertEquals(records.get(i).toString(), decoded.getAnswers().get(i).toString());
+        }
+
+    }
+
+    @Test
+    public void testDomainNameGateway() {
+
+        // IPSECKEY with gateway type 3, RFC 4025 2.3
+        ByteStringBuilder b = new ByteStringBuilder();
+        b.putShort(7).putShort(0x8180).putShort(0).putShort(1).putShort(0).putShort(0);
+        MessageDecoderTest.putLabels(b, "example", "com", "");
+        b.putShort(45).putShort(1).putInt(60);
+        int length = b.reserve(2);
+        b.putByte(10).putByte(3).putByte(2);
+        MessageDecoderTest.putLabels(b, "gw", "example", "com", "");
+        b.putByte(1).putByte(2).putByte(3);
+        MessageDecoderTest.endRecord(b, length);
+        ByteString wire = b.toByteString();
+
+        Message message = new MessageDecoder().decode(wire);
+        IPSECKEYRecord r = (IPSECKEYRecord) message.getAnswers().get(0);
+        Assert.assertEquals(GatewayType.DOMAIN_NAME, r.getGatewayType());
+        Assert.assertEquals(PublicKeyAlgorithm.RSA, r.getAlgorithm());
+        Assert.assertEquals(name("gw.example.com."), r.getGateway());
+        Assert.assertEquals(ByteString.from(1, 2, 3), r.getPublicKey());
+
+        Assert.assertEquals(wire, new MessageEncoder().encode(message));
+        Assert.assertEquals(wire, new MessageEncoder().encode(response(
+                Collections.<Question>emptyList(), Arrays.<Record>asList(new IPSECKEYRecord(
+                        name("example.com."), (short) 1, 60, (byte) 10, PublicKeyAlgorithm.RSA,
+                        name("gw.example.com."), ByteString.from(1, 2, 3))))));
+
+    }
+
+    @Test
+    public void testLargeMessage() {
+
+        // Names past offset 0x3FFF cannot be pointed to, but may still use pointers.
+        List<Record> records = new ArrayList<Record>();
+        for (int i=0; i<1000; ++i) {
+            records.add(new ARecord(name("host" + i + ".example.com."), (short) 1, 60,
+                    ByteString.from(10, 0, i >> 8, i)));
+        }
+        Message message = response(Collections.<Question>emptyList(), records);
+        ByteString wire = new MessageEncoder().encode(message);
+        Assert.assertTrue(wire.length() > 0x4000);
+        Message decoded = new MessageDecoder().decode(wire);
+        for (int i=0; i<1000; ++i) {
+            Assert.assertEquals(records.get(i).getName(), decoded.getAnswers().get(i).getName());
+        }
+
+    }
+
+    @Test
+    public void testLongestName() {
+
+        // 255 bytes in wire form, the most a message can hold
+        char[] label = new char[63];
+        Arrays.fill(label, 'a');
+        String l = new String(label);
+        Name longest = name(l + "." + l + "." + l + "." + l.substring(2) + ".");
+        Assert.assertEquals(255, longest.toWire().length());
+
+        Message message = response(Arrays.asList(new Question(longest, RecordType.A, QClass.IN)),
+                Arrays.<Record>asList(new NSRecord(name("example.com."), (short) 1, 60, longest)));
+        Message decoded = new MessageDecoder().decode(new MessageEncoder().encode(message));
+        Assert.assertEquals(longest, decoded.getQuestions().get(0).getQname());
+        Assert.assertEquals(longest, ((NSRecord) decoded.getAnswers().get(0)).getNameServer());
+
+    }
+
+    @Test
+    public void testErrors() {
+
+        MessageEncoder encoder = new MessageEncoder();
+        Message message = new MessageDecoder().decode(ByteString.from(MessageDecoderTest.response()));
+        int length = encoder.encode(message).length();
+
+        ByteBuffer small = ByteBuffer.allocate(length - 1);
+        try {
+            encoder.encode(message, small);
+            Assert.fail("Expected BufferOverflowException");
+        } catch (BufferOverflowException e) {
+            Assert.assertEquals(0, small.position());
+        }
+
+        byte[] text = new byte[256];
+        Message tooLong = response(Collections.<Question>emptyList(), Arrays.<Record>asList(
+                new TXTRecord(name("example.com."), (short) 1, 60,
+                        Arrays.asList(ByteString.from(text)))));
+        try {
+            encoder.encode(tooLong);
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        List<Record> records = new ArrayList<Record>();
+        for (int i=0; i<300; ++i) {
+            records.add(new TXTRecord(name("example.com."), (short) 1, 60,
+                    Arrays.asList(ByteString.from(new byte[255]))));
+        }
+        try {
+            encoder.encode(response(Collections.<Question>emptyList(), records));
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        // Still usable
+        Assert.assertEquals(length, encoder.encode(message).length());
+
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 John Hyun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.typelibrary.dns.wire;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.typelibrary.binarystrings.ByteString;
+import org.typelibrary.binarystrings.ByteStringBuilder;
+import org.typelibrary.dns.Authoritative;
+import org.typelibrary.dns.Message;
+import org.typelibrary.dns.Name;
+import org.typelibrary.dns.ParseException;
+import org.typelibrary.dns.QClass;
+import org.typelibrary.dns.QR;
+import org.typelibrary.dns.Question;
+import org.typelibrary.dns.Record;
+import org.typelibrary.dns.RecordType;
+import org.typelibrary.dns.RecursionAvailable;
+import org.typelibrary.dns.RecursionDesired;
+import org.typelibrary.dns.ResponseCode;
+import org.typelibrary.dns.Section;
+
+public class MessageViewTest {
+
+    @Test
+    public void testView() {
+
+        byte[] bytes = MessageDecoderTest.response();
+        ByteString wire = ByteString.from(bytes);
+        Message message = new MessageDecoder().decode(wire);
+        MessageView view = new MessageView(wire);
+
+        Assert.assertSame(wire, view.getMessage());
+        Assert.assertEquals(0x1234, view.getId());
+        Assert.assertEquals(QR.RESPONSE, view.getQR());
+        Assert.assertEquals(Authoritative.NO, view.getAuthoritative());
+        Assert.assertEquals(RecursionDesired.YES, view.getRecursionDesired());
+        Assert.assertEquals(RecursionAvailable.YES, view.getRecursionAvailable());
+        Assert.assertEquals(message.getTruncated(), view.getTruncated());
+        Assert.assertEquals(ResponseCode.NOERROR, view.getResponseCode());
+        Assert.assertEquals(1, view.getQuestionCount());
+        Assert.assertEquals(4, view.getCount(Section.ANSWER));
+        Assert.assertEquals(1, view.getCount(Section.AUTHORITY));
+        Assert.assertEquals(2, view.getCount(Section.ADDITIONAL));
+
+        Assert.assertEquals(Name.fromString("www.example.com."), view.getQuestionName(0));
+        Assert.assertEquals(RecordType.A, view.getQuestionType(0));
+        Assert.assertEquals(QClass.IN, view.getQuestionClass(0));
+        Assert.assertEquals(new Question(Name.fromString("www.example.com."), RecordType.A, QClass.IN),
+                view.getQuestion(0));
+
+        MessageView.Cursor cursor = view.cursor(Section.ANSWER);
+        assertSection(message.getAnswers(), cursor);
+        Assert.assertFalse(cursor.next());
+        assertSection(message.getAuthorities(), cursor.reset(Section.AUTHORITY));
+        assertSection(message.getAdditionals(), cursor.reset(Section.ADDITIONAL));
+
+        cursor.reset(Section.ANSWER);
+        cursor.next();
+        cursor.next();
+        Assert.assertEquals(RecordType.A, cursor.getRecordType());
+        Assert.assertEquals(1, cursor.getRecordClass());
+        Assert.assertEquals(60, cursor.getTimeToLive());
+        Assert.assertEquals(4, cursor.getDataLength());
+        Assert.assertEquals(ByteString.from(93, 184, 216, 34), cursor.getData());
+        Assert.assertEquals(bytes.length, cursor.getData().footprint());
+
+        // Reuse with a buffer holding only a question
+        ByteStringBuilder b = new ByteStringBuilder();
+        b.putShort(0x4321).putShort(0x0500).putShort(1).putShort(0).putShort(0).putShort(0);
+        MessageDecoderTest.putLabels(b, "example", "org", "");
+        b.putShort(28).putShort(1);
+        view.reset(ByteBuffer.wrap(b.toByteString().toByteArray()));
+        Assert.assertEquals(QR.QUERY, view.getQR());
+        Assert.assertEquals(Authoritative.YES, view.getAuthoritative());
+        Assert.assertEquals(RecursionDesired.YES, view.getRecursionDesired());
+        Assert.assertEquals(RecursionAvailable.NO, view.getRecursionAvailable());
+        Assert.assertEquals(Name.fromString("example.org."), view.getQuestionName(0));
+        Assert.assertEquals(RecordType.AAAA, view.getQuestionType(0));
+        Assert.assertEquals(0, view.getCount(Section.ANSWER));
+        try {
+            cursor.getName();
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        Assert.assertFalse(cursor.reset(Section.ANSWER).next());
+        try {
+            view.getQuestionName(1);
+            Assert.fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+
+    }
+
+    private static void assertSection(List<Record> expected, MessageView.Cursor cursor) {
+        for (Record record : expected) {
+            Assert.assertTrue(cursor.next());
+            Assert.assertEquals(record.getName(), cursor.getName());
+            Assert.assertEquals(record.getRecordType(), cursor.getRecordType());
+            Assert.assertEquals(record.getTimeToLive(), cursor.getTimeToLive());
+            Assert.assertEquals(record.toString(), cursor.getRecord().toString());
+        }
+        Assert.assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testMalformed() {
+
+        byte[] valid = MessageDecoderTest.response();
+        MessageView view = new MessageView();
+        for (int length : new int[] { 0, 11, 20, 40, valid.length - 1 }) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(valid, 0, truncated, 0, length);
+            try {
+                view.reset(ByteString.from(truncated));
+                Assert.fail("Expected ParseException");
+            } catch (ParseException e) {
+                // Expected
+            }
+            try {
+                view.getId();
+                Assert.fail("Expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+        }
+
+        // Pointer loops and RDATA contents are only checked when decoded.
+        ByteStringBuilder loop = new ByteStringBuilder();
+        loop.putShort(1).putShort(0).putShort(1).putShort(0).putShort(0).putShort(0);
+        MessageDecoderTest.putPointer(loop, 12);
+        loop.putShort(1).putShort(1);
+        view.reset(loop.toByteString());
+        Assert.assertEquals(RecordType.A, view.getQuestionType(0));
+        try {
+            view.getQuestionName(0);
+            Assert.fail("Expected ParseException");
+        } catch (ParseException e) {
+            // Expected
+        }
+
+        ByteStringBuilder b = new ByteStringBuilder();
+        b.putShort(1).putShort(0).putShort(0).putShort(1).putShort(0).putShort(0);
+        MessageDecoderTest.putLabels(b, "a", "");
+        b.putShort(1).putShort(1).putInt(0).putShort(5).putInt(0).putByte(0);
+        MessageView.Cursor cursor = view.reset(b.toByteString()).cursor(Section.ANSWER);
+        Assert.assertTrue(cursor.next());
+        Assert.assertEquals(5, cursor.getDataLength());
+        try {
+            cursor.getRecord();
+            Assert.fail("Expected ParseException");
+        } catch (ParseException e) {
+            // Expected
+        }
+
+    }
+
+}